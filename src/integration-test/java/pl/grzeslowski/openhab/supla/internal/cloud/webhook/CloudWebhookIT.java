@@ -0,0 +1,115 @@
+package pl.grzeslowski.openhab.supla.internal.cloud.webhook;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Posts webhooks the way Supla Cloud does to a local HTTP server that stands in for openHAB HTTP service and passes
+ * requests to {@link CloudWebhookReceiver}, like {@link CloudWebhookServlet} does.
+ */
+class CloudWebhookIT {
+    private static final String TOKEN = "webhook-token";
+    private static final int CHANNELS = 200;
+
+    private final Map<Integer, CloudWebhookPayload> received = new ConcurrentHashMap<>();
+    private final CountDownLatch allReceived = new CountDownLatch(CHANNELS);
+    private ExecutorService serverExecutor;
+    private HttpServer server;
+    private HttpClient httpClient;
+    private URI webhookUri;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        var receiver = new CloudWebhookReceiver(TOKEN, payload -> {
+            received.put(payload.channelId(), payload);
+            allReceived.countDown();
+        });
+        serverExecutor = Executors.newFixedThreadPool(8);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), CHANNELS);
+        server.createContext(CloudWebhookServlet.PATH + "/my-cloud", exchange -> handle(exchange, receiver));
+        server.setExecutor(serverExecutor);
+        server.start();
+        webhookUri = URI.create(
+                "http://localhost:" + server.getAddress().getPort() + CloudWebhookServlet.PATH + "/my-cloud");
+        httpClient =
+                HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("should receive state changes posted concurrently for many channels")
+    void receiveStates() throws Exception {
+        // when
+        var statuses = IntStream.range(0, CHANNELS)
+                .mapToObj(channelId -> httpClient.sendAsync(
+                        post(TOKEN, """
+                            {"userShortUniqueId": "abc", "channelId": %d, "channelFunction": "DIMMER",
+                             "timestamp": 1570437553, "state": {"brightness": %d, "connected": true}}
+                            """.formatted(channelId, channelId % 101)), BodyHandlers.discarding()))
+                .toList()
+                .stream()
+                .map(future -> future.join().statusCode())
+                .toList();
+
+        // then
+        assertThat(statuses).containsOnly(204);
+        assertThat(allReceived.await(10, SECONDS)).isTrue();
+        assertThat(received).hasSize(CHANNELS);
+        assertThat(received.get(42).state().getBrightness()).isEqualTo(42);
+        assertThat(received.get(150).channelFunction()).isEqualTo("DIMMER");
+    }
+
+    @Test
+    @DisplayName("should reject state changes with wrong token")
+    void rejectWrongToken() throws Exception {
+        // when
+        var response = httpClient.send(
+                post("other-token", "{\"channelId\": 1, \"state\": {\"on\": true}}"), BodyHandlers.discarding());
+
+        // then
+        assertThat(response.statusCode()).isEqualTo(401);
+        assertThat(received).isEmpty();
+    }
+
+    private HttpRequest post(String token, String body) {
+        return HttpRequest.newBuilder(webhookUri)
+                .header("Authorization", "Bearer " + token)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private static void handle(HttpExchange exchange, CloudWebhookReceiver receiver) throws IOException {
+        try (exchange) {
+            var body = new String(exchange.getRequestBody().readAllBytes(), UTF_8);
+            var response = receiver.receive(exchange.getRequestHeaders().getFirst("Authorization"), body);
+            exchange.sendResponseHeaders(response.getStatus(), -1);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package pl.grzeslowski.openhab.supla.internal.updates;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+class SuplaUpdatesClientIT {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SuplaUpdatesClientIT.class);
+    private static final int CONCURRENT_CHECKS = 500;
+    private static final String LIST_UPDATES_BODY = """
+            [
+              {
+                "id": 1,
+                "version": "2.8.61",
+                "releasedAt": "2024-07-23T09:52:50+00:00",
+                "platform": 1,
+                "description": {"en": "Older release", "pl": "Starsza wersja"},
+                "updateUrl": "https://updates.example/older"
+              },
+              {
+                "id": 2,
+                "version": "2.8.62",
+                "releasedAt": "2025-03-03T16:35:59+00:00",
+                "platform": 1,
+                "description": {"en": "Newer release", "pl": "Nowsza wersja"},
+                "updateUrl": "https://updates.example/newer"
+              }
+            ]
+            """;
+    private static final String CHECK_UPDATES_BODY = """
+            {"status": "Update available", "latestUpdate": {"version": "2.8.62", "updateUrl": "https://updates.example/newer"}}
+            """;
+
+    private final AtomicInteger served = new AtomicInteger();
+    private ExecutorService serverExecutor;
+    private HttpServer server;
+    private SuplaUpdatesClient client;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        serverExecutor = Executors.newFixedThreadPool(16);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), CONCURRENT_CHECKS);
+        server.createContext("/list-updates", exchange -> respond(exchange, LIST_UPDATES_BODY));
+        server.createContext("/check-updates", exchange -> respond(exchange, CHECK_UPDATES_BODY));
+        server.setExecutor(serverExecutor);
+        server.start();
+
+        var baseUri = "http://localhost:" + server.getAddress().getPort();
+        var httpClient =
+                HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        client = new SuplaUpdatesClient(
+                httpClient, URI.create(baseUri + "/check-updates"), URI.create(baseUri + "/list-updates"));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("should complete hundreds of concurrent update checks")
+    void concurrentChecks() {
+        // given
+        var requests = IntStream.range(0, CONCURRENT_CHECKS)
+                .mapToObj(i -> new SuplaUpdatesClient.Request(4, 6000 + i, "ZAMEL THW-01", "2.8.61"))
+                .toList();
+
+        // when
+        var started = System.nanoTime();
+        var futures = requests.stream().map(client::checkUpdates).toList();
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+                .orTimeout(60, SECONDS)
+                .join();
+        var elapsedNanos = System.nanoTime() - started;
+
+        // then
+        assertThat(futures).allSatisfy(future -> assertThat(future.join().status())
+                .isEqualTo(SuplaUpdatesClient.Status.UPDATE_AVAILABLE));
+        assertThat(served.get()).isEqualTo(CONCURRENT_CHECKS * 2);
+        var checksPerSecond = CONCURRENT_CHECKS / (elapsedNanos / 1_000_000_000.0);
+        LOGGER.info(
+                "Finished {} concurrent update checks in {} ms ({} checks/s)",
+                CONCURRENT_CHECKS,
+                elapsedNanos / 1_000_000,
+                String.format("%.1f", checksPerSecond));
+    }
+
+    private void respond(HttpExchange exchange, String body) throws IOException {
+        served.incrementAndGet();
+        var bytes = body.getBytes(UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (var responseBody = exchange.getResponseBody()) {
+            responseBody.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package pl.grzeslowski.openhab.supla.actions;
+
+import static pl.grzeslowski.openhab.supla.actions.SuplaServerActionsSupport.runAction;
+import static pl.grzeslowski.openhab.supla.actions.SuplaServerActionsSupport.unavailableActionService;
+import static pl.grzeslowski.openhab.supla.internal.Localization.text;
+import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.ACTION_SCOPE_CLOUD_DIAGNOSTICS;
+
+import java.util.Optional;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.automation.annotation.RuleAction;
+import org.openhab.core.thing.binding.ThingActions;
+import org.openhab.core.thing.binding.ThingActionsScope;
+import org.openhab.core.thing.binding.ThingHandler;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ServiceScope;
+import pl.grzeslowski.openhab.supla.internal.cloud.handler.CloudBridgeHandler;
+
+@Component(scope = ServiceScope.PROTOTYPE, service = SuplaCloudDiagnosticsActions.class)
+@ThingActionsScope(name = ACTION_SCOPE_CLOUD_DIAGNOSTICS)
+@NonNullByDefault
+@Slf4j
+public class SuplaCloudDiagnosticsActions implements ThingActions {
+    private static final int MAX_TARGETS = 20;
+
+    @Getter
+    @Nullable
+    private CloudBridgeHandler thingHandler;
+
+    @Override
+    public void setThingHandler(ThingHandler handler) {
+        if (!(handler instanceof CloudBridgeHandler bridgeHandler)) {
+            var handlerClass = Optional.of(handler)
+                    .map(ThingHandler::getClass)
+                    .map(Class::getSimpleName)
+                    .orElse("<null>");
+            log.warn(
+                    "Handler {} has wrong class, actualClass={}, expectedClass={}",
+                    handler,
+                    handlerClass,
+                    CloudBridgeHandler.class.getSimpleName());
+            return;
+        }
+        this.thingHandler = bridgeHandler;
+    }
+
+    @RuleAction(
+            label = "@text/action.get-api-diagnostics.label",
+            description = "@text/action.get-api-diagnostics.description")
+    public String getApiDiagnostics() {
+        return runAction("getApiDiagnostics", () -> {
+            var handler = requireHandler();
+            var report = handler.getApiMetrics().report(MAX_TARGETS);
+            return text("action.get-api-diagnostics.result.success", report, handler.getMergedLedCommands());
+        });
+    }
+
+    public static String getApiDiagnostics(@Nullable ThingActions actions) {
+        if (actions instanceof SuplaCloudDiagnosticsActions diagnosticsActions) {
+            return diagnosticsActions.getApiDiagnostics();
+        }
+        return unavailableActionService("getApiDiagnostics", actions, SuplaCloudDiagnosticsActions.class);
+    }
+
+    private CloudBridgeHandler requireHandler() {
+        var localHandler = thingHandler;
+        if (localHandler == null) {
+            throw new IllegalStateException("Thing handler is null");
+        }
+        return localHandler;
+    }
+}
@@ -49,7 +49,7 @@ abstract class SuplaServerActionsSupport implements ThingActions {
         return localHandler;
     }
 
-    protected String runAction(String actionName, Action action) {
+    protected static String runAction(String actionName, Action action) {
         try {
             return action.run();
         } catch (InterruptedException e) {
@@ -0,0 +1,95 @@
+package pl.grzeslowski.openhab.supla.actions;
+
+import static pl.grzeslowski.openhab.supla.actions.SuplaServerActionsSupport.runAction;
+import static pl.grzeslowski.openhab.supla.actions.SuplaServerActionsSupport.unavailableActionService;
+import static pl.grzeslowski.openhab.supla.internal.Localization.text;
+import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.ACTION_SCOPE_FIRMWARE_ROLLOUT;
+
+import java.util.Arrays;
+import java.util.Optional;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.automation.annotation.ActionInput;
+import org.openhab.core.automation.annotation.RuleAction;
+import org.openhab.core.thing.binding.ThingActions;
+import org.openhab.core.thing.binding.ThingActionsScope;
+import org.openhab.core.thing.binding.ThingHandler;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ServiceScope;
+import pl.grzeslowski.openhab.supla.internal.server.handler.ServerBridgeHandler;
+
+@Component(scope = ServiceScope.PROTOTYPE, service = SuplaServerFirmwareRolloutActions.class)
+@ThingActionsScope(name = ACTION_SCOPE_FIRMWARE_ROLLOUT)
+@NonNullByDefault
+@Slf4j
+public class SuplaServerFirmwareRolloutActions implements ThingActions {
+    @Getter
+    @Nullable
+    private ServerBridgeHandler thingHandler;
+
+    @Override
+    public void setThingHandler(ThingHandler handler) {
+        if (!(handler instanceof ServerBridgeHandler bridgeHandler)) {
+            var handlerClass = Optional.of(handler)
+                    .map(ThingHandler::getClass)
+                    .map(Class::getSimpleName)
+                    .orElse("<null>");
+            log.warn(
+                    "Handler {} has wrong class, actualClass={}, expectedClass={}",
+                    handler,
+                    handlerClass,
+                    ServerBridgeHandler.class.getSimpleName());
+            return;
+        }
+        this.thingHandler = bridgeHandler;
+    }
+
+    @RuleAction(
+            label = "@text/action.start-firmware-rollout.label",
+            description = "@text/action.start-firmware-rollout.description")
+    public synchronized String startFirmwareRollout(
+            @ActionInput(
+                            name = "guids",
+                            label = "@text/action.input.guids.label",
+                            description = "@text/action.input.guids.description")
+                    String guids) {
+        return runAction("startFirmwareRollout", () -> {
+            var progress = requireHandler().startFirmwareRollout(Arrays.asList(guids.split(",")));
+            return text("action.start-firmware-rollout.result.success", progress.pending() + progress.inProgress());
+        });
+    }
+
+    @RuleAction(
+            label = "@text/action.abort-firmware-rollout.label",
+            description = "@text/action.abort-firmware-rollout.description")
+    public synchronized String abortFirmwareRollout() {
+        return runAction("abortFirmwareRollout", () -> {
+            var progress = requireHandler().abortFirmwareRollout();
+            return text("action.abort-firmware-rollout.result.success", progress.status());
+        });
+    }
+
+    public static String startFirmwareRollout(@Nullable ThingActions actions, String guids) {
+        if (actions instanceof SuplaServerFirmwareRolloutActions rolloutActions) {
+            return rolloutActions.startFirmwareRollout(guids);
+        }
+        return unavailableActionService("startFirmwareRollout", actions, SuplaServerFirmwareRolloutActions.class);
+    }
+
+    public static String abortFirmwareRollout(@Nullable ThingActions actions) {
+        if (actions instanceof SuplaServerFirmwareRolloutActions rolloutActions) {
+            return rolloutActions.abortFirmwareRollout();
+        }
+        return unavailableActionService("abortFirmwareRollout", actions, SuplaServerFirmwareRolloutActions.class);
+    }
+
+    private ServerBridgeHandler requireHandler() {
+        var localHandler = thingHandler;
+        if (localHandler == null) {
+            throw new IllegalStateException("Thing handler is null");
+        }
+        return localHandler;
+    }
+}
@@ -6,7 +6,6 @@ import static pl.grzeslowski.jsupla.protocol.api.CalCfgCommand.SUPLA_CALCFG_CMD_
 import static pl.grzeslowski.jsupla.protocol.api.CalCfgCommand.SUPLA_CALCFG_CMD_START_FIRMWARE_UPDATE;
 import static pl.grzeslowski.jsupla.protocol.api.CalCfgCommand.SUPLA_CALCFG_CMD_START_SECURITY_UPDATE;
 import static pl.grzeslowski.jsupla.protocol.api.CalCfgResult.SUPLA_CALCFG_RESULT_DONE;
-import static pl.grzeslowski.jsupla.protocol.api.DeviceFlag.SUPLA_DEVICE_FLAG_AUTOMATIC_FIRMWARE_UPDATE_SUPPORTED;
 import static pl.grzeslowski.openhab.supla.internal.Localization.text;
 import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.ACTION_SCOPE_FIRMWARE_UPDATE;
 import static pl.grzeslowski.openhab.supla.internal.server.handler.trait.ServerDevice.SENDER_ID;
@@ -15,7 +14,6 @@ import java.util.concurrent.TimeoutException;
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
 import org.openhab.core.automation.annotation.RuleAction;
-import org.openhab.core.thing.ThingStatus;
 import org.openhab.core.thing.binding.ThingActions;
 import org.openhab.core.thing.binding.ThingActionsScope;
 import org.osgi.service.component.annotations.Component;
@@ -23,6 +21,7 @@ import org.osgi.service.component.annotations.ServiceScope;
 import pl.grzeslowski.jsupla.protocol.api.CalCfgCommand;
 import pl.grzeslowski.jsupla.protocol.api.structs.ds.DeviceCalCfgResult;
 import pl.grzeslowski.jsupla.protocol.api.structs.sd.DeviceCalCfgRequest;
+import pl.grzeslowski.openhab.supla.internal.server.handler.DeviceCalCfgCommands;
 import pl.grzeslowski.openhab.supla.internal.server.handler.ServerSuplaDeviceHandler;
 
 @Component(scope = ServiceScope.PROTOTYPE, service = SuplaServerFirmwareUpdateActions.class)
@@ -160,45 +159,7 @@ public class SuplaServerFirmwareUpdateActions extends SuplaServerActionsSupport
 
     private String sendWholeDeviceCalCfgCommandOrThrow(CalCfgCommand command, String actionName)
             throws InterruptedException, TimeoutException {
-        var localHandler = requireOtaReadyHandler();
-        var timeout =
-                switch (command) {
-                    case SUPLA_CALCFG_CMD_START_FIRMWARE_UPDATE ->
-                        localHandler.getConfiguration().getStartFirmwareUpdateActionTimeout();
-                    case SUPLA_CALCFG_CMD_START_SECURITY_UPDATE ->
-                        localHandler.getConfiguration().getStartSecurityUpdateActionTimeout();
-                    default -> localHandler.getConfiguration().getActionTimeout();
-                };
-        var writer = localHandler.getWriter().get();
-        if (writer == null) {
-            throw new IllegalStateException("There is no socket writer!");
-        }
-
-        var message = new DeviceCalCfgRequest(
-                SENDER_ID,
-                NOT_BOUND_TO_CHANNEL,
-                command.getValue(),
-                SUPER_USER_AUTHORIZED,
-                NO_DATA_TYPE,
-                EMPTY_DATA.length,
-                EMPTY_DATA);
-        localHandler.clearDeviceCalCfgResult();
-        writer.write(message).await(timeout.toMillis(), MILLISECONDS);
-
-        var result = localHandler.listenForDeviceCalCfgResult(timeout.toMillis(), MILLISECONDS);
-        if (result.channelNumber() != NOT_BOUND_TO_CHANNEL) {
-            throw new RuntimeException("%s returned a different channel number! request=%s, result=%s"
-                    .formatted(actionName, message, result));
-        }
-        if (result.command() != command.getValue()) {
-            throw new RuntimeException(
-                    "%s returned a different command! request=%s, result=%s".formatted(actionName, message, result));
-        }
-        if (result.result() != SUPLA_CALCFG_RESULT_DONE.getValue()) {
-            throw new RuntimeException(
-                    "%s did not succeed! request=%s, result=%s".formatted(actionName, message, result));
-        }
-        localHandler.markOtaUpdateTriggered();
+        DeviceCalCfgCommands.send(requireOtaReadyHandler(), command, actionName);
         return switch (command) {
             case SUPLA_CALCFG_CMD_START_FIRMWARE_UPDATE -> text("action.start-firmware-update.result.success");
             case SUPLA_CALCFG_CMD_START_SECURITY_UPDATE -> text("action.start-security-update.result.success");
@@ -207,23 +168,6 @@ public class SuplaServerFirmwareUpdateActions extends SuplaServerActionsSupport
     }
 
     private ServerSuplaDeviceHandler requireOtaReadyHandler() {
-        var localHandler = getThingHandlerOrWarn();
-        if (localHandler == null) {
-            throw new IllegalStateException("Thing handler is null");
-        }
-        if (localHandler.getThing().getStatus() == ThingStatus.OFFLINE
-                || localHandler.getWriter().get() == null) {
-            throw new IllegalStateException("Device is offline");
-        }
-
-        var suplaDevice = localHandler.getSuplaDevice();
-        if (suplaDevice == null) {
-            throw new IllegalStateException("There is no registered device!");
-        }
-        if (!suplaDevice.flags().contains(SUPLA_DEVICE_FLAG_AUTOMATIC_FIRMWARE_UPDATE_SUPPORTED)
-                || !localHandler.supportsAutomaticFirmwareUpdates()) {
-            throw new IllegalArgumentException("Device does not support automatic firmware updates");
-        }
-        return localHandler;
+        return DeviceCalCfgCommands.requireOtaReady(getThingHandlerOrWarn());
     }
 }
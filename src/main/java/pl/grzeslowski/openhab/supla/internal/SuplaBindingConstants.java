@@ -17,6 +17,8 @@ public class SuplaBindingConstants {
     public static final String ACTION_SCOPE_ELECTRICITY_METER = BINDING_ID + "-electricity-meter";
     public static final String ACTION_SCOPE_CONFIG_MODE = BINDING_ID + "-config-mode";
     public static final String ACTION_SCOPE_FIRMWARE_UPDATE = BINDING_ID + "-firmware-update";
+    public static final String ACTION_SCOPE_FIRMWARE_ROLLOUT = BINDING_ID + "-firmware-rollout";
+    public static final String ACTION_SCOPE_CLOUD_DIAGNOSTICS = BINDING_ID + "-cloud-diagnostics";
     public static final int DEVICE_REGISTER_MAX_DELAY = (int) MINUTES.toSeconds(1);
 
     // List of all Thing Type IDs
@@ -57,6 +59,12 @@ public class SuplaBindingConstants {
     public static final String CONFIG_EMAIL = "email";
     public static final String CONFIG_PORT = "port";
     public static final String CONNECTED_DEVICES_CHANNEL_ID = "server-devices";
+    public static final String FIRMWARE_ROLLOUT_STATUS_CHANNEL_ID = "firmware-rollout-status";
+    public static final String FIRMWARE_ROLLOUT_WAVE_CHANNEL_ID = "firmware-rollout-wave";
+    public static final String FIRMWARE_ROLLOUT_PENDING_CHANNEL_ID = "firmware-rollout-pending";
+    public static final String FIRMWARE_ROLLOUT_IN_PROGRESS_CHANNEL_ID = "firmware-rollout-in-progress";
+    public static final String FIRMWARE_ROLLOUT_UPDATED_CHANNEL_ID = "firmware-rollout-updated";
+    public static final String FIRMWARE_ROLLOUT_FAILED_CHANNEL_ID = "firmware-rollout-failed";
 
     // Thing Bridge constants
     public static final String GATEWAY_CONNECTED_DEVICES_CHANNEL_ID = "gateway-connected-devices";
@@ -105,6 +113,11 @@ public class SuplaBindingConstants {
         public static final String REQ_PER_S_CHANNEL_ID = "req-per-s";
         public static final String REQ_PER_M_CHANNEL_ID = "req-per-m";
         public static final String REQ_PER_H_CHANNEL_ID = "req-per-h";
+        public static final String EFFECTIVE_REFRESH_INTERVAL_CHANNEL_ID = "effective-refresh-interval";
+        public static final String API_CALLS_BY_ENDPOINT_CHANNEL_ID = "api-calls-by-endpoint";
+        public static final String CACHE_HITS_CHANNEL_ID = "cache-hits";
+        public static final String CACHE_MISSES_CHANNEL_ID = "cache-misses";
+        public static final String CACHE_STALE_SERVES_CHANNEL_ID = "cache-stale-serves";
     }
 
     public static class Channels {
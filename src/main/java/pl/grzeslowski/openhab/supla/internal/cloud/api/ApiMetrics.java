@@ -0,0 +1,256 @@
+package pl.grzeslowski.openhab.supla.internal.cloud.api;
+
+import static java.util.Comparator.comparingLong;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.stream.Collectors.joining;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Counts Supla Cloud API calls per endpoint (e.g. {@code getChannels}) and per target IO device, with a latency
+ * histogram for each of them, and hits/misses/background refreshes of caches in {@link CacheApi}.
+ *
+ * <p>Calls to channels are attributed to the IO device of the channel, once it is known from a response with
+ * {@code channels} of devices (see {@link #recordDeviceChannels}); until then they are counted as {@code channel #id}.
+ *
+ * <p>All methods are thread-safe and cheap enough to be called for every request.
+ */
+@NonNullByDefault
+public final class ApiMetrics {
+    /** Upper bounds of latency buckets (inclusive); the last bucket takes everything above the last bound. */
+    static final long[] LATENCY_BUCKETS_MS = {50, 100, 250, 500, 1_000, 2_500, 5_000};
+
+    private final Map<String, CallCounter> endpoints = new ConcurrentHashMap<>();
+    private final Map<String, CallCounter> targets = new ConcurrentHashMap<>();
+    private final Map<String, CacheCounter> caches = new ConcurrentHashMap<>();
+    private final Map<Integer, Integer> channelToDevice = new ConcurrentHashMap<>();
+
+    static String ioDeviceTarget(int id) {
+        return "device #" + id;
+    }
+
+    /**
+     * @return target of the IO device that has given channel or {@code channel #id} if the device is not known yet
+     */
+    String channelTarget(int channelId) {
+        var deviceId = channelToDevice.get(channelId);
+        return deviceId != null ? ioDeviceTarget(deviceId) : "channel #" + channelId;
+    }
+
+    void recordDeviceChannels(int deviceId, Collection<Integer> channelIds) {
+        channelIds.forEach(channelId -> channelToDevice.put(channelId, deviceId));
+    }
+
+    void recordCall(String endpoint, @Nullable String target, long latencyNanos, boolean success) {
+        var latencyMs = NANOSECONDS.toMillis(latencyNanos);
+        endpoints.computeIfAbsent(endpoint, __ -> new CallCounter()).record(latencyMs, success);
+        if (target != null) {
+            targets.computeIfAbsent(target, __ -> new CallCounter()).record(latencyMs, success);
+        }
+    }
+
+    void recordCacheRequest(String cache) {
+        caches.computeIfAbsent(cache, __ -> new CacheCounter()).requests.increment();
+    }
+
+    void recordCacheMiss(String cache) {
+        caches.computeIfAbsent(cache, __ -> new CacheCounter()).misses.increment();
+    }
+
+    /** Cache reloaded a value in the background, because it was older than its refresh time. */
+    void recordCacheRefresh(String cache) {
+        caches.computeIfAbsent(cache, __ -> new CacheCounter()).refreshes.increment();
+    }
+
+    /** Cache returned value older than its refresh time, while reloading it in the background. */
+    void recordCacheStaleServe(String cache) {
+        caches.computeIfAbsent(cache, __ -> new CacheCounter()).staleServes.increment();
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(
+                snapshot(endpoints, CallCounter::snapshot),
+                snapshot(targets, CallCounter::snapshot),
+                snapshot(caches, CacheCounter::snapshot));
+    }
+
+    private static <T, R> Map<String, R> snapshot(Map<String, T> counters, Function<T, R> mapper) {
+        return counters.entrySet().stream()
+                .collect(Collectors.toUnmodifiableMap(Map.Entry::getKey, entry -> mapper.apply(entry.getValue())));
+    }
+
+    private static final class CallCounter {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalLatencyMs = new LongAdder();
+        private final AtomicLongArray histogram = new AtomicLongArray(LATENCY_BUCKETS_MS.length + 1);
+
+        void record(long latencyMs, boolean success) {
+            calls.increment();
+            if (!success) {
+                errors.increment();
+            }
+            totalLatencyMs.add(latencyMs);
+            histogram.incrementAndGet(bucket(latencyMs));
+        }
+
+        private static int bucket(long latencyMs) {
+            for (int i = 0; i < LATENCY_BUCKETS_MS.length; i++) {
+                if (latencyMs <= LATENCY_BUCKETS_MS[i]) {
+                    return i;
+                }
+            }
+            return LATENCY_BUCKETS_MS.length;
+        }
+
+        CallSnapshot snapshot() {
+            var buckets = new long[histogram.length()];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = histogram.get(i);
+            }
+            return new CallSnapshot(calls.sum(), errors.sum(), totalLatencyMs.sum(), buckets);
+        }
+    }
+
+    private static final class CacheCounter {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder staleServes = new LongAdder();
+        private final LongAdder refreshes = new LongAdder();
+
+        CacheSnapshot snapshot() {
+            var missesSum = misses.sum();
+            // misses are recorded after requests, so requests can be behind for a moment
+            return new CacheSnapshot(
+                    Math.max(requests.sum(), missesSum), missesSum, staleServes.sum(), refreshes.sum());
+        }
+    }
+
+    /**
+     * @param histogram number of calls in each of {@link #LATENCY_BUCKETS_MS}, plus one bucket for slower calls
+     */
+    public record CallSnapshot(long calls, long errors, long totalLatencyMs, long[] histogram) {
+        public long averageLatencyMs() {
+            return calls > 0 ? totalLatencyMs / calls : 0;
+        }
+
+        /**
+         * @return upper bound of the bucket that contains given percentile or {@code -1} if it is above the last bound
+         */
+        public long percentileMs(double percentile) {
+            var total = Arrays.stream(histogram).sum();
+            if (total == 0) {
+                return 0;
+            }
+            var threshold = (long) Math.ceil(total * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < LATENCY_BUCKETS_MS.length; i++) {
+                seen += histogram[i];
+                if (seen >= threshold) {
+                    return LATENCY_BUCKETS_MS[i];
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public String toString() {
+            var p95 = percentileMs(95);
+            return "calls=%d, errors=%d, avg=%d ms, p95%s"
+                    .formatted(
+                            calls,
+                            errors,
+                            averageLatencyMs(),
+                            p95 >= 0
+                                    ? "<=" + p95 + " ms"
+                                    : ">" + LATENCY_BUCKETS_MS[LATENCY_BUCKETS_MS.length - 1] + " ms");
+        }
+    }
+
+    /**
+     * @param misses requests that had to wait for Supla Cloud, because there was no value in the cache
+     * @param staleServes hits that returned value older than refresh time (while it was reloaded in the background)
+     * @param refreshes background reloads; they are not counted as misses, because no caller waited for them
+     */
+    public record CacheSnapshot(long requests, long misses, long staleServes, long refreshes) {
+        public long hits() {
+            return requests - misses;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=%d, misses=%d, stale=%d, refreshes=%d".formatted(hits(), misses, staleServes, refreshes);
+        }
+    }
+
+    public record Snapshot(
+            Map<String, CallSnapshot> endpoints, Map<String, CallSnapshot> targets, Map<String, CacheSnapshot> caches) {
+        private static final Comparator<Map.Entry<String, CallSnapshot>> MOST_CALLS_FIRST =
+                Map.Entry.comparingByValue(comparingLong(CallSnapshot::calls).reversed());
+
+        public long cacheHits() {
+            return caches.values().stream().mapToLong(CacheSnapshot::hits).sum();
+        }
+
+        public long cacheMisses() {
+            return caches.values().stream().mapToLong(CacheSnapshot::misses).sum();
+        }
+
+        public long cacheStaleServes() {
+            return caches.values().stream()
+                    .mapToLong(CacheSnapshot::staleServes)
+                    .sum();
+        }
+
+        public long cacheRefreshes() {
+            return caches.values().stream().mapToLong(CacheSnapshot::refreshes).sum();
+        }
+
+        /**
+         * @return endpoints with their call counts, most used first, i.e. {@code getChannels=120, executeAction=3}
+         */
+        public String callsByEndpoint() {
+            return endpoints.entrySet().stream()
+                    .sorted(MOST_CALLS_FIRST)
+                    .map(entry -> entry.getKey() + "=" + entry.getValue().calls())
+                    .collect(joining(", "));
+        }
+
+        /**
+         * @param maxTargets how many of the most used targets should be listed
+         * @return multi-line report with all endpoints, caches and the most used targets
+         */
+        public String report(int maxTargets) {
+            var report = new StringBuilder();
+            report.append("Endpoints:\n");
+            appendCalls(report, endpoints, Integer.MAX_VALUE);
+            report.append("Targets:\n");
+            appendCalls(report, targets, maxTargets);
+            report.append("Caches:\n");
+            caches.entrySet().stream().sorted(Map.Entry.comparingByKey()).forEach(entry -> report.append("  ")
+                    .append(entry.getKey())
+                    .append(": ")
+                    .append(entry.getValue())
+                    .append('\n'));
+            return report.toString();
+        }
+
+        private static void appendCalls(StringBuilder report, Map<String, CallSnapshot> calls, int limit) {
+            calls.entrySet().stream().sorted(MOST_CALLS_FIRST).limit(limit).forEach(entry -> report.append("  ")
+                    .append(entry.getKey())
+                    .append(": ")
+                    .append(entry.getValue())
+                    .append('\n'));
+        }
+    }
+}
@@ -1,180 +1,295 @@
 package pl.grzeslowski.openhab.supla.internal.cloud.api;
 
 import static java.lang.String.join;
-import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableMap;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
+import com.github.benmanes.caffeine.cache.CacheLoader;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.Ticker;
 import io.swagger.client.ApiException;
 import io.swagger.client.model.Channel;
 import io.swagger.client.model.ChannelExecuteActionRequest;
 import io.swagger.client.model.Device;
 import io.swagger.client.model.ServerInfo;
-import java.util.*;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
 import org.eclipse.jdt.annotation.NonNullByDefault;
-import org.eclipse.jdt.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Caches responses from Supla Cloud.
+ *
+ * <p>Entries are refreshed in the background once they are older than {@code cacheEvictTime}: callers get the last known
+ * value immediately and only one request per key goes to Supla Cloud. {@link #fetchIoDevices} and {@link #fetchChannels}
+ * (used by periodic polling) always load a fresh value and store it. Entries expire {@link #HARD_EXPIRY_MULTIPLIER}
+ * times {@code cacheEvictTime} after they were written; reloads are triggered only by reads, so this happens to entries
+ * that nobody read for that long (or whose reloads failed) and the next caller waits for a fresh value.
+ *
+ * <p>Includes are normalized (sorted, without duplicates), so the same request is cached once regardless of the include
+ * order. Lists are indexed by ID when they are loaded. Executing an action invalidates only state of that channel: its
+ * own entry is loaded again on the next read and lists loaded before the action are not used to answer for it. Single
+ * channel entry is preferred over a list when it was loaded later.
+ */
 @NonNullByDefault
 final class CacheApi implements ChannelsCloudApi, IoDevicesCloudApi, ServerCloudApi {
+    static final int HARD_EXPIRY_MULTIPLIER = 4;
     private static final TimeUnit cacheEvictUnit = SECONDS;
+    private static final String STATE_INCLUDE = "state";
+    private static final String GET_CHANNELS = "getChannels";
+    private static final String GET_CHANNEL = "getChannel";
+    private static final String GET_IO_DEVICE = "getIoDevice";
+    private static final String GET_IO_DEVICES = "getIoDevices";
+    private static final String GET_SERVER_INFO = "getServerInfo";
+
     private final Logger logger = LoggerFactory.getLogger(CacheApi.class);
     private final ChannelsCloudApi channelsCloudApi;
-    private final LoadingCache<List<String>, List<Channel>> getChannelsCache;
-    private final LoadingCache<GetChannelKey, Channel> getChannelCache;
-    private final LoadingCache<GetIoDeviceKey, Device> getIoDeviceCache;
-    private final LoadingCache<List<String>, List<Device>> getIoDevicesCache;
-    private final LoadingCache<String, ServerInfo> getServerInfoCache;
+    private final IoDevicesCloudApi ioDevicesCloudApi;
+    private final LoadingCache<List<String>, Entry<Indexed<Channel>>> getChannelsCache;
+    private final LoadingCache<IdKey, Entry<Channel>> getChannelCache;
+    private final LoadingCache<IdKey, Entry<Device>> getIoDeviceCache;
+    private final LoadingCache<List<String>, Entry<Indexed<Device>>> getIoDevicesCache;
+    private final LoadingCache<String, Entry<ServerInfo>> getServerInfoCache;
     private final ServerCloudApi serverCloudApi;
-    private final Set<Set<String>> channlesIncludePermutations;
+    private final ApiMetrics apiMetrics;
+    private final Ticker ticker;
+    private final long refreshAfterNanos;
+    /** Sequence number of the last executed action. */
+    private final AtomicLong actions = new AtomicLong();
+    /** Channel ID to sequence number of the last action executed on it. */
+    private final Map<Integer, Long> lastActions = new ConcurrentHashMap<>();
 
     CacheApi(
             int cacheEvictTime,
             ChannelsCloudApi channelsCloudApi,
             IoDevicesCloudApi ioDevicesCloudApi,
-            ServerCloudApi serverCloudApi) {
+            ServerCloudApi serverCloudApi,
+            Executor refreshExecutor) {
+        this(
+                cacheEvictTime,
+                channelsCloudApi,
+                ioDevicesCloudApi,
+                serverCloudApi,
+                refreshExecutor,
+                Ticker.systemTicker());
+    }
+
+    CacheApi(
+            int cacheEvictTime,
+            ChannelsCloudApi channelsCloudApi,
+            IoDevicesCloudApi ioDevicesCloudApi,
+            ServerCloudApi serverCloudApi,
+            Executor refreshExecutor,
+            Ticker ticker) {
         this.channelsCloudApi = channelsCloudApi;
-        getChannelsCache = Caffeine.newBuilder()
-                .expireAfterWrite(cacheEvictTime, cacheEvictUnit)
-                .build(key -> {
-                    logger.trace("Missed cache for `getChannels({})`", join(", ", key));
-                    return channelsCloudApi.getChannels(key);
-                });
-        getChannelCache = Caffeine.newBuilder()
-                .expireAfterWrite(cacheEvictTime, cacheEvictUnit)
-                .build(key -> {
-                    logger.trace("Missed cache for `getChannel({})`", key);
-                    return channelsCloudApi.getChannel(key.id, key.include);
-                });
-        getIoDeviceCache = Caffeine.newBuilder()
-                .expireAfterWrite(cacheEvictTime, cacheEvictUnit)
-                .build(key -> {
-                    logger.trace("Missed cache for `getIoDevice({})`", key);
-                    return ioDevicesCloudApi.getIoDevice(key.id, key.include);
-                });
-        getIoDevicesCache = Caffeine.newBuilder()
-                .expireAfterWrite(cacheEvictTime, cacheEvictUnit)
-                .build(key -> {
-                    logger.trace("Missed cache for `getIoDevices({})`", join(", ", key));
-                    return ioDevicesCloudApi.getIoDevices(key);
-                });
-        getServerInfoCache = Caffeine.newBuilder()
-                .expireAfterWrite(cacheEvictTime, cacheEvictUnit)
-                .build(__ -> {
-                    logger.trace("Missed cache for `getServerInfo`");
-                    return serverCloudApi.getServerInfo();
-                });
+        this.ioDevicesCloudApi = ioDevicesCloudApi;
+        this.apiMetrics = serverCloudApi.getApiMetrics();
+        this.ticker = ticker;
+        this.refreshAfterNanos = cacheEvictUnit.toNanos(cacheEvictTime);
+        getChannelsCache =
+                newCacheBuilder(cacheEvictTime, refreshExecutor).build(loader(GET_CHANNELS, this::loadChannels));
+        getChannelCache = newCacheBuilder(cacheEvictTime, refreshExecutor)
+                .build(loader(GET_CHANNEL, key -> channelsCloudApi.getChannel(key.id(), key.include())));
+        getIoDeviceCache = newCacheBuilder(cacheEvictTime, refreshExecutor)
+                .build(loader(GET_IO_DEVICE, key -> ioDevicesCloudApi.getIoDevice(key.id(), key.include())));
+        getIoDevicesCache =
+                newCacheBuilder(cacheEvictTime, refreshExecutor).build(loader(GET_IO_DEVICES, this::loadIoDevices));
+        getServerInfoCache = newCacheBuilder(cacheEvictTime, refreshExecutor)
+                .build(loader(GET_SERVER_INFO, __ -> serverCloudApi.getServerInfo()));
         this.serverCloudApi = serverCloudApi;
-        channlesIncludePermutations = generateCombinations(List.of(
-                "iodevice",
-                "location",
-                "connected",
-                "state",
-                "supportedFunctions",
-                "measurementLogsCount",
-                "relationsCount"));
+    }
+
+    private Caffeine<Object, Object> newCacheBuilder(int cacheEvictTime, Executor refreshExecutor) {
+        return Caffeine.newBuilder()
+                .refreshAfterWrite(cacheEvictTime, cacheEvictUnit)
+                .expireAfterWrite((long) cacheEvictTime * HARD_EXPIRY_MULTIPLIER, cacheEvictUnit)
+                .executor(refreshExecutor)
+                .ticker(ticker);
+    }
+
+    /** Records a miss when a caller waits for the value and a refresh when Caffeine reloads it in the background. */
+    private <K, V> CacheLoader<K, Entry<V>> loader(String name, CacheLoader<K, V> load) {
+        return new CacheLoader<>() {
+            @Override
+            public Entry<V> load(K key) throws Exception {
+                logger.trace("Missed cache for `{}({})`", name, key);
+                apiMetrics.recordCacheMiss(name);
+                return entry(load, key);
+            }
+
+            @Override
+            public Entry<V> reload(K key, Entry<V> oldValue) throws Exception {
+                logger.trace("Refreshing cache for `{}({})`", name, key);
+                apiMetrics.recordCacheRefresh(name);
+                return entry(load, key);
+            }
+        };
+    }
+
+    private Indexed<Channel> loadChannels(List<String> include) throws Exception {
+        return Indexed.of(channelsCloudApi.getChannels(include), Channel::getId);
+    }
+
+    private Indexed<Device> loadIoDevices(List<String> include) throws Exception {
+        return Indexed.of(ioDevicesCloudApi.getIoDevices(include), Device::getId);
+    }
+
+    private <K, V> Entry<V> entry(CacheLoader<K, V> load, K key) throws Exception {
+        // taken before the request, so an action that runs while the value is loaded marks it as changed
+        var lastAction = actions.get();
+        return new Entry<>(load.load(key), ticker.read(), lastAction);
+    }
+
+    /**
+     * @return {@code true} if an action was executed on the channel after {@code entry} started loading and the entry
+     *     contains state
+     */
+    private boolean changedByAction(int channelId, List<String> include, Entry<?> entry) {
+        if (!include.contains(STATE_INCLUDE)) {
+            return false;
+        }
+        var lastAction = lastActions.get(channelId);
+        return lastAction != null && lastAction > entry.lastAction();
+    }
+
+    private boolean changedByAction(IdKey key, Entry<Channel> entry) {
+        return changedByAction(key.id(), key.include(), entry);
+    }
+
+    /**
+     * Returns cached value, even if it is older than refresh time; in such case Caffeine already scheduled a reload.
+     */
+    private <K, V> Entry<V> get(String name, LoadingCache<K, Entry<V>> cache, K key) {
+        return get(name, cache, key, (__, ___) -> false);
+    }
+
+    /**
+     * Same as {@link #get(String, LoadingCache, Object)}, but values loaded before an action changed them are loaded
+     * again.
+     */
+    private <K, V> Entry<V> get(
+            String name, LoadingCache<K, Entry<V>> cache, K key, BiPredicate<K, Entry<V>> changedByAction) {
+        apiMetrics.recordCacheRequest(name);
+        var entry = cache.get(key);
+        if (changedByAction.test(key, entry)) {
+            logger.trace("Value for `{}({})` was changed by an action, loading it again", name, key);
+            cache.invalidate(key);
+            entry = cache.get(key);
+        } else if (ticker.read() - entry.loadedAtNanos() >= refreshAfterNanos) {
+            logger.trace("Serving stale value for `{}({})`", name, key);
+            apiMetrics.recordCacheStaleServe(name);
+        }
+        return entry;
+    }
+
+    /**
+     * Loads value from Supla Cloud while the caller waits and puts it into the cache, so the next {@link #get} (and
+     * lookups by ID) see it too. Used for periodic polling, which would always be one refresh interval behind if it got
+     * stale values.
+     */
+    private <K, V> V fetch(String name, LoadingCache<K, Entry<V>> cache, K key, CacheLoader<K, V> load)
+            throws Exception {
+        logger.trace("Fetching `{}({})` bypassing cache", name, key);
+        apiMetrics.recordCacheRequest(name);
+        apiMetrics.recordCacheMiss(name);
+        var entry = entry(load, key);
+        cache.put(key, entry);
+        return entry.value();
+    }
+
+    static List<String> normalize(List<String> include) {
+        return List.copyOf(new TreeSet<>(include));
     }
 
     @Override
     public void executeAction(final ChannelExecuteActionRequest body, final Integer id) throws ApiException {
         channelsCloudApi.executeAction(body, id);
-        channlesIncludePermutations.stream() //
-                .filter(include -> include.contains("state")) //
-                .map(ArrayList::new) //
-                .forEach(include -> {
-                    getChannelCache.invalidate(new GetChannelKey(id, include));
-                    getChannelsCache.invalidate(include);
-                });
+        lastActions.merge(id, actions.incrementAndGet(), Math::max);
     }
 
     @Override
     public List<Channel> getChannels(List<String> include) {
-        return getChannelsCache.get(include);
+        return findChannels(normalize(include)).value().values();
     }
 
     @Override
-    public Channel getChannel(final int id, final List<String> include) {
-        var channel = getChannels(include) //
-                .stream() //
-                .filter(c -> c.getId() == id) //
-                .findFirst();
-        return channel.orElseGet(() -> getChannelCache.get(new GetChannelKey(id, include)));
+    public List<Channel> fetchChannels(List<String> include) throws Exception {
+        return fetch(GET_CHANNELS, getChannelsCache, normalize(include), this::loadChannels)
+                .values();
     }
 
-    private static final class GetChannelKey {
-        final int id;
-        final List<String> include;
-
-        private GetChannelKey(final int id, final List<String> include) {
-            this.id = id;
-            this.include = unmodifiableList(include);
-        }
+    private Entry<Indexed<Channel>> findChannels(List<String> include) {
+        return get(GET_CHANNELS, getChannelsCache, include);
+    }
 
-        @Override
-        public boolean equals(@Nullable final Object o) {
-            if (this == o) return true;
-            if (!(o instanceof GetChannelKey that)) return false;
-            return id == that.id && Objects.equals(include, that.include);
+    @Override
+    public Channel getChannel(final int id, final List<String> include) {
+        var normalized = normalize(include);
+        var key = new IdKey(id, normalized);
+        var channels = findChannels(normalized);
+        var listed = changedByAction(id, normalized, channels)
+                ? null
+                : channels.value().byId().get(id);
+        var single = getChannelCache.getIfPresent(key);
+        if (single != null
+                && !changedByAction(key, single)
+                && (listed == null || single.loadedAtNanos() > channels.loadedAtNanos())) {
+            apiMetrics.recordCacheRequest(GET_CHANNEL);
+            return single.value();
         }
-
-        @Override
-        public int hashCode() {
-            return Objects.hash(id);
+        if (listed != null) {
+            return listed;
         }
+        return get(GET_CHANNEL, getChannelCache, key, this::changedByAction).value();
+    }
 
-        @Override
-        public String toString() {
-            return id + ", [" + join(", ", include) + "]";
-        }
+    @Override
+    public Channel fetchChannel(int id, List<String> include) throws Exception {
+        return fetch(
+                GET_CHANNEL,
+                getChannelCache,
+                new IdKey(id, normalize(include)),
+                key -> channelsCloudApi.getChannel(key.id(), key.include()));
     }
 
     @Override
     public Device getIoDevice(final int id, final List<String> include) {
-        var device = getIoDevices(include) //
-                .stream() //
-                .filter(d -> d.getId() == id) //
-                .findAny();
-        return device.orElseGet(() -> getIoDeviceCache.get(new GetIoDeviceKey(id, include)));
+        var normalized = normalize(include);
+        var device = findIoDevices(normalized).byId().get(id);
+        if (device != null) {
+            return device;
+        }
+        return get(GET_IO_DEVICE, getIoDeviceCache, new IdKey(id, normalized)).value();
     }
 
     @Override
     public List<Device> getIoDevices(final List<String> include) {
-        return getIoDevicesCache.get(include);
+        return findIoDevices(normalize(include)).values();
     }
 
-    private static final class GetIoDeviceKey {
-        final int id;
-        final List<String> include;
-
-        private GetIoDeviceKey(final int id, final List<String> include) {
-            this.id = id;
-            this.include = unmodifiableList(include);
-        }
-
-        @Override
-        public boolean equals(@Nullable final Object o) {
-            if (this == o) return true;
-            if (!(o instanceof GetIoDeviceKey that)) return false;
-            return id == that.id && Objects.equals(include, that.include);
-        }
-
-        @Override
-        public int hashCode() {
-            return Objects.hash(id);
-        }
+    @Override
+    public List<Device> fetchIoDevices(List<String> include) throws Exception {
+        return fetch(GET_IO_DEVICES, getIoDevicesCache, normalize(include), this::loadIoDevices)
+                .values();
+    }
 
-        @Override
-        public String toString() {
-            return id + ", [" + join(", ", include) + "]";
-        }
+    private Indexed<Device> findIoDevices(List<String> include) {
+        return get(GET_IO_DEVICES, getIoDevicesCache, include).value();
     }
 
     @Override
     public ServerInfo getServerInfo() {
-        return getServerInfoCache.get("getServerInfo()");
+        return get(GET_SERVER_INFO, getServerInfoCache, "getServerInfo()").value();
     }
 
     @Override
@@ -182,21 +297,31 @@ final class CacheApi implements ChannelsCloudApi, IoDevicesCloudApi, ServerCloud
         return serverCloudApi.getApiCalls();
     }
 
-    private static Set<Set<String>> generateCombinations(List<String> values) {
-        Set<Set<String>> result = new HashSet<>();
-        generateCombinations(values, 0, new LinkedHashSet<>(), result);
-        return result;
+    @Override
+    public ApiMetrics getApiMetrics() {
+        return apiMetrics;
     }
 
-    private static void generateCombinations(
-            List<String> values, int start, Set<String> current, Set<Set<String>> result) {
-        if (!current.isEmpty()) {
-            result.add(new HashSet<>(current));
+    /**
+     * @param lastAction sequence number of the last action executed before the value started loading
+     */
+    private record Entry<T>(T value, long loadedAtNanos, long lastAction) {}
+
+    /**
+     * @param include normalized include
+     */
+    private record IdKey(int id, List<String> include) {
+        @Override
+        public String toString() {
+            return id + ", [" + join(", ", include) + "]";
         }
-        for (int i = start; i < values.size(); i++) {
-            current.add(values.get(i));
-            generateCombinations(values, i + 1, current, result);
-            current.remove(values.get(i));
+    }
+
+    private record Indexed<T>(List<T> values, Map<Integer, T> byId) {
+        static <T> Indexed<T> of(List<T> values, Function<T, Integer> id) {
+            var byId = new HashMap<Integer, T>(values.size() * 2);
+            values.forEach(value -> byId.putIfAbsent(id.apply(value), value));
+            return new Indexed<>(values, unmodifiableMap(byId));
         }
     }
 }
@@ -1,11 +1,14 @@
 package pl.grzeslowski.openhab.supla.internal.cloud.api;
 
 import static java.util.Objects.requireNonNull;
+import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.BINDING_ID;
 
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.core.common.ThreadPoolManager;
 
 @NonNullByDefault
 public class CacheApiFactory implements ChannelsCloudApiFactory, IoDevicesCloudApiFactory, ServerCloudApiFactory {
@@ -14,6 +17,7 @@ public class CacheApiFactory implements ChannelsCloudApiFactory, IoDevicesCloudA
     private final IoDevicesCloudApiFactory ioDevicesCloudApiFactory;
     private final ServerCloudApiFactory serverCloudApiFactory;
     private final int cacheEvictTime;
+    private final Executor refreshExecutor = ThreadPoolManager.getPool(BINDING_ID + "-cloud-cache");
 
     public CacheApiFactory(
             ChannelsCloudApiFactory channelsCloudApiFactory,
@@ -38,7 +42,8 @@ public class CacheApiFactory implements ChannelsCloudApiFactory, IoDevicesCloudA
                         cacheEvictTime,
                         channelsCloudApiFactory.newChannelsCloudApi(t),
                         ioDevicesCloudApiFactory.newIoDevicesCloudApi(t),
-                        serverCloudApiFactory.newServerCloudApi(t))));
+                        serverCloudApiFactory.newServerCloudApi(t),
+                        refreshExecutor)));
     }
 
     @Override
@@ -49,7 +54,8 @@ public class CacheApiFactory implements ChannelsCloudApiFactory, IoDevicesCloudA
                         cacheEvictTime,
                         channelsCloudApiFactory.newChannelsCloudApi(t),
                         ioDevicesCloudApiFactory.newIoDevicesCloudApi(t),
-                        serverCloudApiFactory.newServerCloudApi(t))));
+                        serverCloudApiFactory.newServerCloudApi(t),
+                        refreshExecutor)));
     }
 
     @Override
@@ -60,6 +66,7 @@ public class CacheApiFactory implements ChannelsCloudApiFactory, IoDevicesCloudA
                         cacheEvictTime,
                         channelsCloudApiFactory.newChannelsCloudApi(t),
                         ioDevicesCloudApiFactory.newIoDevicesCloudApi(t),
-                        serverCloudApiFactory.newServerCloudApi(t))));
+                        serverCloudApiFactory.newServerCloudApi(t),
+                        refreshExecutor)));
     }
 }
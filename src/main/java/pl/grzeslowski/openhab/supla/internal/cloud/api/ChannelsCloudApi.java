@@ -11,5 +11,21 @@ public interface ChannelsCloudApi {
 
     io.swagger.client.model.Channel getChannel(int id, List<String> include) throws Exception;
 
+    /**
+     * Same as {@link #getChannel}, but the channel is always loaded from Supla Cloud, even if a cache has it (alone or
+     * in a list); the cache keeps the loaded value.
+     */
+    default io.swagger.client.model.Channel fetchChannel(int id, List<String> include) throws Exception {
+        return getChannel(id, include);
+    }
+
     List<io.swagger.client.model.Channel> getChannels(List<String> include) throws Exception;
+
+    /**
+     * Same as {@link #getChannels}, but the value is always loaded from Supla Cloud, even if a cache has one that is
+     * still being served; the cache keeps the loaded value.
+     */
+    default List<io.swagger.client.model.Channel> fetchChannels(List<String> include) throws Exception {
+        return getChannels(include);
+    }
 }
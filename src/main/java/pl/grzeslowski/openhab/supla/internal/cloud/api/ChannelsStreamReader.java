@@ -0,0 +1,136 @@
+package pl.grzeslowski.openhab.supla.internal.cloud.api;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import io.swagger.client.model.Channel;
+import io.swagger.client.model.ChannelFunction;
+import io.swagger.client.model.ChannelFunctionEnumNames;
+import io.swagger.client.model.ChannelState;
+import io.swagger.client.model.ChannelType;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Reads {@code GET /channels} response as a stream and keeps only fields that cloud handlers use: {@code id},
+ * {@code caption}, {@code hidden}, {@code param2}, {@code param3}, name of {@code function}, {@code output} of
+ * {@code type} and {@code state}.
+ *
+ * <p>Everything else (i.e. supported functions, config, included IO device or location) is skipped without being
+ * parsed, so big accounts do not build (and cache) whole {@link Channel} graphs on every refresh. Requests that include
+ * anything besides {@code state} need those fields, so they must not be read by this class (see {@link #canRead}).
+ */
+@NonNullByDefault
+final class ChannelsStreamReader {
+    /** Includes whose data is kept by this reader. */
+    private static final Set<String> KEPT_INCLUDES = Set.of("state");
+
+    /** Gson of Swagger client, it knows how to read enums and dates of the models */
+    private final Gson gson;
+
+    ChannelsStreamReader(Gson gson) {
+        this.gson = gson;
+    }
+
+    /**
+     * @return {@code true} if response for {@code include} has no included data that this reader would skip
+     */
+    static boolean canRead(List<String> include) {
+        return KEPT_INCLUDES.containsAll(include);
+    }
+
+    List<Channel> read(Reader body) throws IOException {
+        var json = new JsonReader(body);
+        var channels = new ArrayList<Channel>();
+        json.beginArray();
+        while (json.hasNext()) {
+            channels.add(readChannel(json));
+        }
+        json.endArray();
+        return channels;
+    }
+
+    private Channel readChannel(JsonReader json) throws IOException {
+        var channel = new Channel();
+        json.beginObject();
+        while (json.hasNext()) {
+            switch (json.nextName()) {
+                case "id" -> channel.setId(nextInteger(json));
+                case "caption" -> channel.setCaption(nextString(json));
+                case "hidden" -> channel.setHidden(nextBoolean(json));
+                case "param2" -> channel.setParam2(nextInteger(json));
+                case "param3" -> channel.setParam3(nextInteger(json));
+                case "function" -> channel.setFunction(readFunction(json));
+                case "type" -> channel.setType(readType(json));
+                case "state" -> channel.setState(gson.fromJson(json, ChannelState.class));
+                default -> json.skipValue();
+            }
+        }
+        json.endObject();
+        return channel;
+    }
+
+    @Nullable
+    private ChannelFunction readFunction(JsonReader json) throws IOException {
+        if (skipNull(json)) {
+            return null;
+        }
+        var function = new ChannelFunction();
+        json.beginObject();
+        while (json.hasNext()) {
+            if ("name".equals(json.nextName())) {
+                function.setName(gson.fromJson(json, ChannelFunctionEnumNames.class));
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+        return function;
+    }
+
+    @Nullable
+    private ChannelType readType(JsonReader json) throws IOException {
+        if (skipNull(json)) {
+            return null;
+        }
+        var type = new ChannelType();
+        json.beginObject();
+        while (json.hasNext()) {
+            if ("output".equals(json.nextName())) {
+                type.setOutput(nextBoolean(json));
+            } else {
+                json.skipValue();
+            }
+        }
+        json.endObject();
+        return type;
+    }
+
+    @Nullable
+    private static Integer nextInteger(JsonReader json) throws IOException {
+        return skipNull(json) ? null : json.nextInt();
+    }
+
+    @Nullable
+    private static String nextString(JsonReader json) throws IOException {
+        return skipNull(json) ? null : json.nextString();
+    }
+
+    @Nullable
+    private static Boolean nextBoolean(JsonReader json) throws IOException {
+        return skipNull(json) ? null : json.nextBoolean();
+    }
+
+    private static boolean skipNull(JsonReader json) throws IOException {
+        if (json.peek() == JsonToken.NULL) {
+            json.nextNull();
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,126 @@
+package pl.grzeslowski.openhab.supla.internal.cloud.api;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.DoubleSupplier;
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stops calling Supla Cloud after consecutive failures of one class of endpoints (i.e. reads or actions).
+ *
+ * <ul>
+ *   <li>{@link State#CLOSED} - calls go through; {@link #FAILURE_THRESHOLD} failures in a row open the circuit.
+ *   <li>{@link State#OPEN} - calls fail right away with {@link CircuitOpenException} until the backoff passes. Backoff
+ *       grows exponentially with every opening (with jitter, so bridges do not come back at the same moment), unless
+ *       Supla Cloud told when to come back ({@code Retry-After} or rate limit reset).
+ *   <li>{@link State#HALF_OPEN} - one probe call goes through; success closes the circuit, failure opens it again.
+ * </ul>
+ */
+@NonNullByDefault
+final class CircuitBreaker {
+    static final int FAILURE_THRESHOLD = 3;
+    static final Duration BASE_BACKOFF = Duration.ofSeconds(5);
+    static final Duration MAX_BACKOFF = Duration.ofMinutes(10);
+
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+    private final String endpointClass;
+    private final Clock clock;
+    /** Returns random number from {@code [0, 1)}. */
+    private final DoubleSupplier random;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private int openings;
+    private Instant retryAt = Instant.MIN;
+    private boolean probeInFlight;
+
+    CircuitBreaker(String endpointClass, Clock clock, DoubleSupplier random) {
+        this.endpointClass = endpointClass;
+        this.clock = clock;
+        this.random = random;
+    }
+
+    /**
+     * @throws CircuitOpenException if the call should not be made
+     */
+    synchronized void acquire() throws CircuitOpenException {
+        switch (state) {
+            case CLOSED -> {}
+            case OPEN -> {
+                if (clock.instant().isBefore(retryAt)) {
+                    throw new CircuitOpenException(endpointClass, retryAt);
+                }
+                logger.debug("Circuit for {} calls is half-open, probing Supla Cloud", endpointClass);
+                state = State.HALF_OPEN;
+                probeInFlight = true;
+            }
+            case HALF_OPEN -> {
+                if (probeInFlight) {
+                    throw new CircuitOpenException(endpointClass, retryAt);
+                }
+                probeInFlight = true;
+            }
+        }
+    }
+
+    synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            logger.info("Supla Cloud is available again for {} calls, closing circuit", endpointClass);
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        openings = 0;
+        probeInFlight = false;
+    }
+
+    /**
+     * @param serverRetryAt time when Supla Cloud asked to come back; opens the circuit right away
+     */
+    synchronized void onFailure(@Nullable Instant serverRetryAt) {
+        probeInFlight = false;
+        consecutiveFailures++;
+        if (state == State.CLOSED && consecutiveFailures < FAILURE_THRESHOLD && serverRetryAt == null) {
+            return;
+        }
+        openings++;
+        var now = clock.instant();
+        var backoff = now.plus(jitter(backoff(openings)));
+        retryAt = serverRetryAt != null && serverRetryAt.isAfter(backoff) ? serverRetryAt : backoff;
+        state = State.OPEN;
+        logger.warn(
+                "Opening circuit for {} calls after {} failure(s), next try at {}",
+                endpointClass,
+                consecutiveFailures,
+                retryAt);
+    }
+
+    static Duration backoff(int openings) {
+        var shift = Math.min(openings - 1, 30);
+        var backoff = BASE_BACKOFF.multipliedBy(1L << shift);
+        return backoff.compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : backoff;
+    }
+
+    /** Random duration from {@code [backoff / 2, backoff)}. */
+    private Duration jitter(Duration backoff) {
+        var half = backoff.toMillis() / 2;
+        return Duration.ofMillis(half + (long) (half * random.getAsDouble()));
+    }
+
+    synchronized State state() {
+        return state;
+    }
+
+    synchronized Instant retryAt() {
+        return retryAt;
+    }
+}
@@ -0,0 +1,30 @@
+package pl.grzeslowski.openhab.supla.internal.cloud.api;
+
+import io.swagger.client.ApiException;
+import java.io.Serial;
+import java.time.Instant;
+import lombok.Getter;
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * Thrown without calling Supla Cloud, because the last calls to the same class of endpoints failed.
+ */
+@NonNullByDefault
+@Getter
+public final class CircuitOpenException extends ApiException {
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private static final int SERVICE_UNAVAILABLE = 503;
+
+    private final String endpointClass;
+    private final Instant retryAt;
+
+    CircuitOpenException(String endpointClass, Instant retryAt) {
+        super(
+                SERVICE_UNAVAILABLE,
+                "Supla Cloud is not available for " + endpointClass + " calls, next try at " + retryAt);
+        this.endpointClass = endpointClass;
+        this.retryAt = retryAt;
+    }
+}
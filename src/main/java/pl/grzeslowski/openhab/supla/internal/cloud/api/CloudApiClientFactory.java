@@ -12,10 +12,10 @@ public final class CloudApiClientFactory implements ApiClientFactory {
     @Override
     public ApiClient newApiClient(String token, @Nullable Logger logger) {
         final ApiClient apiClient = pl.grzeslowski.jsupla.api.internal.ApiClientFactory.INSTANCE.newApiClient(token);
-        if (logger != null) {
-            if (logger.isDebugEnabled()) {
-                apiClient.getHttpClient().interceptors().add(new OneLineHttpLoggingInterceptor(logger::trace, BODY));
-            }
+        SharedHttpClient.share(apiClient.getHttpClient());
+        // bodies are logged on trace, so there is no need to intercept requests when it is disabled
+        if (logger != null && logger.isTraceEnabled()) {
+            apiClient.getHttpClient().interceptors().add(new OneLineHttpLoggingInterceptor(logger::trace, BODY));
         }
         return apiClient;
     }
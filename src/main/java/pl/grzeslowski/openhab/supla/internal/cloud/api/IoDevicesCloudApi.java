@@ -9,4 +9,12 @@ public interface IoDevicesCloudApi {
     Device getIoDevice(int id, List<String> include) throws Exception;
 
     List<Device> getIoDevices(List<String> include) throws Exception;
+
+    /**
+     * Same as {@link #getIoDevices}, but the value is always loaded from Supla Cloud, even if a cache has one that is
+     * still being served; the cache keeps the loaded value.
+     */
+    default List<Device> fetchIoDevices(List<String> include) throws Exception {
+        return getIoDevices(include);
+    }
 }
@@ -1,5 +1,6 @@
 package pl.grzeslowski.openhab.supla.internal.cloud.api;
 
+import static com.squareup.okhttp.logging.HttpLoggingInterceptor.Level.NONE;
 import static java.util.Objects.requireNonNull;
 
 import com.squareup.okhttp.Interceptor;
@@ -9,6 +10,11 @@ import java.io.IOException;
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
 
+/**
+ * Logs whole request and response as one message, so lines of parallel requests are not interleaved.
+ *
+ * <p>With level {@link HttpLoggingInterceptor.Level#NONE} requests are passed through without any allocation.
+ */
 @NonNullByDefault
 final class OneLineHttpLoggingInterceptor implements Interceptor {
     private final HttpLoggingInterceptor.Logger logger;
@@ -21,6 +27,10 @@ final class OneLineHttpLoggingInterceptor implements Interceptor {
 
     @Override
     public Response intercept(@Nullable final Chain chain) throws IOException {
+        if (level == NONE) {
+            final Chain nonNullChain = requireNonNull(chain);
+            return nonNullChain.proceed(nonNullChain.request());
+        }
         final StringBuilderLogger stringBuilderLogger = new StringBuilderLogger();
         final HttpLoggingInterceptor interceptor = new HttpLoggingInterceptor(stringBuilderLogger);
         interceptor.setLevel(level);
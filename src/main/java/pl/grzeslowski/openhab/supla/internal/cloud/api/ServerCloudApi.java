@@ -11,6 +11,9 @@ public interface ServerCloudApi {
 
     ApiCalls getApiCalls();
 
+    /** Counters of calls made to Supla Cloud. Live object, use {@link ApiMetrics#snapshot()} to read them. */
+    ApiMetrics getApiMetrics();
+
     public record ApiCalls(
             ZonedDateTime resetDateTime,
             int limit,
@@ -0,0 +1,33 @@
+package pl.grzeslowski.openhab.supla.internal.cloud.api;
+
+import com.squareup.okhttp.ConnectionPool;
+import com.squareup.okhttp.OkHttpClient;
+import java.time.Duration;
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * HTTP transport shared by all cloud bridges.
+ *
+ * <p>Every bridge keeps the client configured by jSupla (timeouts, interceptors), but all clients share one connection
+ * pool, so connections to Supla Cloud are kept alive and reused between refreshes. Responses are compressed with gzip,
+ * OkHttp asks for it and decompresses them transparently.
+ */
+@NonNullByDefault
+final class SharedHttpClient {
+    static final int MAX_IDLE_CONNECTIONS = 5;
+    /** Longer than the default refresh interval, so connections survive between refreshes. */
+    static final Duration KEEP_ALIVE = Duration.ofMinutes(5);
+
+    private static final ConnectionPool CONNECTION_POOL =
+            new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE.toMillis());
+
+    private SharedHttpClient() {}
+
+    /**
+     * @return given client that shares connection pool with all other clients passed to this method
+     */
+    static OkHttpClient share(OkHttpClient client) {
+        client.setConnectionPool(CONNECTION_POOL);
+        return client;
+    }
+}
@@ -3,10 +3,15 @@ package pl.grzeslowski.openhab.supla.internal.cloud.api;
 import static java.lang.Integer.parseInt;
 import static java.lang.Long.parseLong;
 import static java.lang.System.currentTimeMillis;
+import static java.time.format.DateTimeFormatter.RFC_1123_DATE_TIME;
 import static java.time.temporal.ChronoUnit.MILLIS;
 import static java.util.Collections.emptyMap;
+import static java.util.Locale.ROOT;
+import static java.util.Objects.requireNonNull;
 import static java.util.concurrent.TimeUnit.SECONDS;
+import static pl.grzeslowski.openhab.supla.internal.cloud.api.SwaggerApi.EndpointClass.*;
 
+import com.google.gson.JsonParseException;
 import io.swagger.client.ApiClient;
 import io.swagger.client.ApiException;
 import io.swagger.client.ApiResponse;
@@ -17,11 +22,17 @@ import io.swagger.client.model.Channel;
 import io.swagger.client.model.ChannelExecuteActionRequest;
 import io.swagger.client.model.Device;
 import io.swagger.client.model.ServerInfo;
+import java.io.IOException;
+import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -33,9 +44,11 @@ import org.slf4j.LoggerFactory;
 @NonNullByDefault
 class SwaggerApi implements ChannelsCloudApi, IoDevicesCloudApi, ServerCloudApi {
     private static final long ONE_HOUR_MS = TimeUnit.HOURS.toMillis(1);
+    private static final int TOO_MANY_REQUESTS = 429;
 
     private final Logger logger = LoggerFactory.getLogger(SwaggerApi.class);
     private final ChannelsApi channelsApi;
+    private final ChannelsStreamReader channelsStreamReader;
     private final IoDevicesApi ioDevicesApi;
     private final ServerApi serverApi;
     private final long startTimeMs = currentTimeMillis();
@@ -43,16 +56,23 @@ class SwaggerApi implements ChannelsCloudApi, IoDevicesCloudApi, ServerCloudApi
     private final AtomicInteger rateLimitLimit = new AtomicInteger();
     private final AtomicInteger rateLimitRemaining = new AtomicInteger();
     private final AtomicLong rateLimitResetTimestamp = new AtomicLong();
+    private final ApiMetrics apiMetrics = new ApiMetrics();
+    private final Map<EndpointClass, CircuitBreaker> circuitBreakers = new EnumMap<>(EndpointClass.class);
 
     SwaggerApi(final ApiClient apiClient) {
         channelsApi = new ChannelsApi(apiClient);
+        channelsStreamReader = new ChannelsStreamReader(apiClient.getJSON().getGson());
         ioDevicesApi = new IoDevicesApi(apiClient);
         serverApi = new ServerApi(apiClient);
+        for (var endpointClass : EndpointClass.values()) {
+            var name = endpointClass.name().toLowerCase(ROOT);
+            circuitBreakers.put(endpointClass, new CircuitBreaker(name, Clock.systemUTC(), Math::random));
+        }
     }
 
     @Override
     public void executeAction(final ChannelExecuteActionRequest body, final Integer id) throws ApiException {
-        apiCall().apply(() -> {
+        apiCall("executeAction", ACTION, channelTarget(id)).apply(() -> {
             channelsApi.executeAction(body, id);
             return new ApiResponse<>(200, emptyMap());
         });
@@ -60,29 +80,72 @@ class SwaggerApi implements ChannelsCloudApi, IoDevicesCloudApi, ServerCloudApi
 
     @Override
     public List<Channel> getChannels(List<String> include) throws ApiException {
-        return this.<List<Channel>>apiCall()
-                .apply(() -> channelsApi.getChannelsWithHttpInfo(include, null, null, null));
+        if (!ChannelsStreamReader.canRead(include)) {
+            // included objects (i.e. IO device or location) would be skipped by the stream reader
+            return this.<List<Channel>>apiCall("getChannels", READ, null)
+                    .apply(() -> channelsApi.getChannelsWithHttpInfo(include, null, null, null));
+        }
+        return this.<List<Channel>>apiCall("getChannels", READ, null).apply(() -> streamChannels(include));
+    }
+
+    /**
+     * Same request as {@link ChannelsApi#getChannelsWithHttpInfo}, but the response is read by
+     * {@link ChannelsStreamReader}, which keeps only fields that handlers use.
+     */
+    private ApiResponse<List<Channel>> streamChannels(List<String> include) throws ApiException {
+        var call = channelsApi.getChannelsCall(include, null, null, null, null, null);
+        try {
+            var response = call.execute();
+            var headers = response.headers().toMultimap();
+            try (var body = response.body()) {
+                if (!response.isSuccessful()) {
+                    throw new ApiException(response.message(), response.code(), headers, body.string());
+                }
+                return new ApiResponse<>(response.code(), headers, channelsStreamReader.read(body.charStream()));
+            }
+        } catch (IOException | JsonParseException | IllegalStateException e) {
+            throw new ApiException(e);
+        }
     }
 
     @Override
     public Channel getChannel(final int id, final List<String> include) throws ApiException {
-        return this.<Channel>apiCall().apply(() -> channelsApi.getChannelWithHttpInfo(id, include));
+        return this.<Channel>apiCall("getChannel", READ, channelTarget(id))
+                .apply(() -> channelsApi.getChannelWithHttpInfo(id, include));
     }
 
     @Override
     public Device getIoDevice(final int id, final List<String> include) throws Exception {
-        return this.<Device>apiCall().apply(() -> ioDevicesApi.getIoDeviceWithHttpInfo(id, include));
+        var device = this.<Device>apiCall("getIoDevice", READ, ioDeviceTarget(id))
+                .apply(() -> ioDevicesApi.getIoDeviceWithHttpInfo(id, include));
+        recordDeviceChannels(device);
+        return device;
     }
 
     @Override
     public List<Device> getIoDevices(final List<String> include) throws Exception {
-        return this.<List<Device>>apiCall().apply(() -> ioDevicesApi.getIoDevicesWithHttpInfo(include));
+        var devices = this.<List<Device>>apiCall("getIoDevices", READ, null)
+                .apply(() -> ioDevicesApi.getIoDevicesWithHttpInfo(include));
+        devices.forEach(this::recordDeviceChannels);
+        return devices;
     }
 
     @Override
     public ServerInfo getServerInfo() throws ApiException {
         // FYI: server info does not count in API rate limit
-        return serverApi.getServerInfo();
+        var circuitBreaker = requireNonNull(circuitBreakers.get(SERVER));
+        circuitBreaker.acquire();
+        try {
+            var serverInfo = serverApi.getServerInfo();
+            circuitBreaker.onSuccess();
+            return serverInfo;
+        } catch (ApiException e) {
+            onFailure(circuitBreaker, e);
+            throw e;
+        } catch (RuntimeException e) {
+            circuitBreaker.onFailure(null);
+            throw e;
+        }
     }
 
     @Override
@@ -105,7 +168,35 @@ class SwaggerApi implements ChannelsCloudApi, IoDevicesCloudApi, ServerCloudApi
         return new ApiCalls(resetDateTime, limit, calls, remaining, reqPerSec, reqPerMin, reqPerHour);
     }
 
-    private <OutT> ApiFunction<ApiSupplier<OutT>, OutT> apiCall() {
+    @Override
+    public ApiMetrics getApiMetrics() {
+        return apiMetrics;
+    }
+
+    private String channelTarget(int id) {
+        return apiMetrics.channelTarget(id);
+    }
+
+    private static String ioDeviceTarget(int id) {
+        return ApiMetrics.ioDeviceTarget(id);
+    }
+
+    /** Remembers channels of the device (if they were included), so calls to channels are attributed to it. */
+    private void recordDeviceChannels(@Nullable Device device) {
+        if (device == null || device.getId() == null || device.getChannels() == null) {
+            return;
+        }
+        apiMetrics.recordDeviceChannels(
+                device.getId(),
+                device.getChannels().stream()
+                        .map(Channel::getId)
+                        .filter(Objects::nonNull)
+                        .toList());
+    }
+
+    private <OutT> ApiFunction<ApiSupplier<OutT>, OutT> apiCall(
+            String endpoint, EndpointClass endpointClass, @Nullable String target) {
+        var circuitBreaker = requireNonNull(circuitBreakers.get(endpointClass));
         return (f) -> {
             var now = currentTimeMillis();
             var resetTime = rateLimitResetTimestamp.get();
@@ -121,19 +212,85 @@ class SwaggerApi implements ChannelsCloudApi, IoDevicesCloudApi, ServerCloudApi
                         duration.toMillisPart());
                 throw new ApiException(429, "Rate limit reached! Waiting till " + dateTime + " / " + formatted);
             }
+            circuitBreaker.acquire();
+            var start = System.nanoTime();
             try {
                 var apiResponse = f.get();
+                apiMetrics.recordCall(endpoint, target, System.nanoTime() - start, true);
+                circuitBreaker.onSuccess();
                 saveRateLimits(apiResponse.getHeaders());
                 var data = apiResponse.getData();
                 numberOfRequests.incrementAndGet();
                 return data;
             } catch (ApiException e) {
+                apiMetrics.recordCall(endpoint, target, System.nanoTime() - start, false);
                 saveRateLimits(e.getResponseHeaders());
+                onFailure(circuitBreaker, e);
+                throw e;
+            } catch (RuntimeException e) {
+                apiMetrics.recordCall(endpoint, target, System.nanoTime() - start, false);
+                circuitBreaker.onFailure(null);
                 throw e;
             }
         };
     }
 
+    /**
+     * Only failures that say Supla Cloud is not available count; i.e. 404 for removed channel does not open the
+     * circuit.
+     */
+    private void onFailure(CircuitBreaker circuitBreaker, ApiException e) {
+        var code = e.getCode();
+        // code 0 means that there was no response (timeout, connection refused, ...)
+        if (code == 0 || code == TOO_MANY_REQUESTS || code >= 500) {
+            circuitBreaker.onFailure(findRetryAt(e.getResponseHeaders(), code));
+        } else {
+            circuitBreaker.onSuccess();
+        }
+    }
+
+    @Nullable
+    private Instant findRetryAt(@Nullable Map<String, List<String>> headers, int code) {
+        if (headers == null) {
+            return null;
+        }
+        var retryAfter = findHeader(headers, "Retry-After");
+        if (retryAfter != null) {
+            try {
+                return Instant.now().plusSeconds(parseLong(retryAfter.trim()));
+            } catch (NumberFormatException e) {
+                try {
+                    return ZonedDateTime.parse(retryAfter.trim(), RFC_1123_DATE_TIME)
+                            .toInstant();
+                } catch (DateTimeParseException ex) {
+                    logger.warn("Cannot parse Retry-After header: {}", retryAfter);
+                }
+            }
+        }
+        if (code == TOO_MANY_REQUESTS) {
+            var reset = findHeader(headers, "X-RateLimit-Reset");
+            if (reset != null) {
+                try {
+                    return Instant.ofEpochSecond(parseLong(reset.trim()));
+                } catch (NumberFormatException e) {
+                    logger.warn("Cannot parse X-RateLimit-Reset header: {}", reset);
+                }
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    private static String findHeader(Map<String, List<String>> headers, String header) {
+        return headers.entrySet().stream()
+                .filter(entry -> header.equalsIgnoreCase(entry.getKey()))
+                .map(Map.Entry::getValue)
+                .filter(values -> values != null && !values.isEmpty())
+                .map(values -> values.get(0))
+                .findAny()
+                .orElse(null);
+    }
+
     private void saveRateLimits(@Nullable Map<String, List<String>> headers) {
         if (headers == null || headers.isEmpty()) {
             return;
@@ -159,7 +316,7 @@ class SwaggerApi implements ChannelsCloudApi, IoDevicesCloudApi, ServerCloudApi
     @SuppressWarnings("SameParameterValue")
     private void parseLongFromHeader(Map<String, List<String>> headers, String header, AtomicLong along) {
         var limit = headers.get(header);
-        if (limit.isEmpty()) {
+        if (limit == null || limit.isEmpty()) {
             return;
         }
         var value = limit.get(0);
@@ -170,6 +327,13 @@ class SwaggerApi implements ChannelsCloudApi, IoDevicesCloudApi, ServerCloudApi
         }
     }
 
+    /** Each class has its own {@link CircuitBreaker}, so i.e. failing actions do not stop reads. */
+    enum EndpointClass {
+        READ,
+        ACTION,
+        SERVER
+    }
+
     private interface ApiFunction<T, R> {
         R apply(T t) throws ApiException;
     }
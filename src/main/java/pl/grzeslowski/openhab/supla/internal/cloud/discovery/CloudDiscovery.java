@@ -1,9 +1,15 @@
 package pl.grzeslowski.openhab.supla.internal.cloud.discovery;
 
-import static java.util.Collections.singletonList;
+import static java.util.Collections.emptyList;
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toMap;
 import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.*;
 
 import io.swagger.client.model.Device;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
@@ -15,11 +21,24 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import pl.grzeslowski.openhab.supla.internal.cloud.handler.CloudBridgeHandler;
 
-/** @author Martin Grzeslowski - Initial contribution */
+/**
+ * Discovers IO devices from Supla Cloud.
+ *
+ * <p>Scans reuse the last snapshot of bridge if it is younger than {@link #SNAPSHOT_MAX_AGE}; otherwise devices are
+ * fetched without any includes, because discovery needs only name, comment, GUID and ID. Every scan publishes all
+ * current devices, so entries deleted from the inbox come back, and removes devices that disappeared since the
+ * previous scan.
+ *
+ * @author Martin Grzeslowski - Initial contribution
+ */
 @NonNullByDefault
 public final class CloudDiscovery extends AbstractDiscoveryService {
+    static final Duration SNAPSHOT_MAX_AGE = Duration.ofMinutes(2);
+
     private final Logger logger;
     private final CloudBridgeHandler bridgeHandler;
+    /** Things published in previous scan by GUID. Guarded by itself. */
+    private final Map<String, ThingUID> discoveredThings = new HashMap<>();
 
     public CloudDiscovery(CloudBridgeHandler bridgeHandler) {
         super(SUPPORTED_THING_TYPES_UIDS, 10, true);
@@ -30,19 +49,44 @@ public final class CloudDiscovery extends AbstractDiscoveryService {
 
     @Override
     protected void startScan() {
+        Collection<Device> devices;
         try {
-            bridgeHandler.getIoDevices(singletonList("channels")).forEach(this::addThing);
+            devices = findDevices();
         } catch (Exception e) {
             logger.error("Cannot get IO devices from Supla Cloud!", e);
             stopScan();
+            return;
+        }
+        var current = devices.stream()
+                .map(this::buildDiscoveryResult)
+                .collect(toMap(result -> result.getThingUID().getId(), identity(), (first, __) -> first));
+        var removed = new ArrayList<ThingUID>();
+        synchronized (discoveredThings) {
+            discoveredThings.forEach((guid, thingUID) -> {
+                if (!current.containsKey(guid)) {
+                    removed.add(thingUID);
+                }
+            });
+            discoveredThings.clear();
+            current.forEach((guid, result) -> discoveredThings.put(guid, result.getThingUID()));
+        }
+        logger.debug("Scanned {} devices, {} removed", current.size(), removed.size());
+        current.values().forEach(this::thingDiscovered);
+        removed.forEach(this::thingRemoved);
+    }
+
+    private Collection<Device> findDevices() throws Exception {
+        var snapshotDevices = bridgeHandler.findFreshSnapshotDevices(SNAPSHOT_MAX_AGE);
+        if (snapshotDevices != null) {
+            logger.trace("Using devices from snapshot of bridge");
+            return snapshotDevices;
         }
+        return bridgeHandler.getIoDevices(emptyList());
     }
 
-    private void addThing(Device device) {
+    private DiscoveryResult buildDiscoveryResult(Device device) {
         final ThingUID thingUID = new ThingUID(SUPLA_CLOUD_DEVICE_TYPE, findBridgeUID(), device.getGUIDString());
-        final DiscoveryResult discoveryResult =
-                createDiscoveryResult(thingUID, buildThingLabel(device), buildThingProperties(device));
-        thingDiscovered(discoveryResult);
+        return createDiscoveryResult(thingUID, buildThingLabel(device), buildThingProperties(device));
     }
 
     private ThingUID findBridgeUID() {
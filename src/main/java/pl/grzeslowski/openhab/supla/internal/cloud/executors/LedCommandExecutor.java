@@ -16,4 +16,7 @@ public interface LedCommandExecutor {
     void changeColorBrightness(final int channelId, final PercentType command) throws ApiException;
 
     void changeBrightness(final int channelId, final PercentType command) throws ApiException;
+
+    /** @return how many changes were merged into a later command instead of being sent to Supla Cloud */
+    long getMergedCommands();
 }
@@ -1,15 +1,17 @@
 package pl.grzeslowski.openhab.supla.internal.cloud.executors;
 
 import static io.swagger.client.model.ChannelFunctionActionEnum.SET_RGBW_PARAMETERS;
-import static java.util.Optional.ofNullable;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.openhab.core.library.types.DecimalType.ZERO;
 
 import io.swagger.client.ApiException;
 import io.swagger.client.model.ChannelExecuteActionRequest;
-import java.util.HashMap;
+import java.time.Duration;
 import java.util.Map;
-import java.util.Objects;
-import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
 import org.openhab.core.library.types.HSBType;
@@ -19,73 +21,158 @@ import org.slf4j.LoggerFactory;
 import pl.grzeslowski.openhab.supla.internal.cloud.HsbTypeConverter;
 import pl.grzeslowski.openhab.supla.internal.cloud.api.ChannelsCloudApi;
 
+/**
+ * Sends colour and brightness of LED channels with {@code SET_RGBW_PARAMETERS}.
+ *
+ * <p>The first change of a channel is sent right away and, once it is sent, opens a merge window. Changes that come
+ * while it is being sent or during the window (i.e. while moving the colour wheel) are merged into the state of the
+ * channel and only the last one is sent when the window ends, so a burst of commands costs two API calls instead of one
+ * call per command. Only one command per channel is sent at a time, so commands cannot overtake each other.
+ */
 @NonNullByDefault
 @SuppressWarnings("PackageAccessibility")
 final class SuplaLedCommandExecutor implements LedCommandExecutor {
+    static final Duration DEFAULT_MERGE_WINDOW = Duration.ofMillis(250);
+
     private final Logger logger = LoggerFactory.getLogger(SuplaLedCommandExecutor.class);
-    private final Map<Integer, LedState> ledStates = new HashMap<>();
+    private final Map<Integer, ChannelLed> leds = new ConcurrentHashMap<>();
+    private final LongAdder mergedCommands = new LongAdder();
     private final ChannelsCloudApi channelsApi;
+    private final ScheduledExecutorService scheduler;
+    private final long mergeWindowMs;
 
-    SuplaLedCommandExecutor(final ChannelsCloudApi channelsApi) {
+    SuplaLedCommandExecutor(
+            final ChannelsCloudApi channelsApi, final ScheduledExecutorService scheduler, final Duration mergeWindow) {
         this.channelsApi = channelsApi;
+        this.scheduler = scheduler;
+        this.mergeWindowMs = mergeWindow.toMillis();
     }
 
     @Override
     public void setLedState(int channelId, PercentType brightness) {
-        final Optional<LedState> ledState = findLedState(channelId);
-        if (ledState.isPresent()) {
-            ledStates.put(channelId, new LedState(ledState.get().hsb, brightness));
-        } else {
-            ledStates.put(channelId, new LedState(null, brightness));
-        }
+        updateKnownState(channelId, state -> new LedState(state.hsb(), brightness));
     }
 
     @Override
     public void setLedState(int channelId, HSBType hsb) {
-        final Optional<LedState> ledState = findLedState(channelId);
-        if (ledState.isPresent()) {
-            ledStates.put(channelId, new LedState(hsb, ledState.get().brightness));
-        } else {
-            ledStates.put(channelId, new LedState(hsb, null));
+        updateKnownState(channelId, state -> new LedState(hsb, state.brightness()));
+    }
+
+    private void updateKnownState(int channelId, UnaryOperator<LedState> update) {
+        var led = leds.computeIfAbsent(channelId, __ -> new ChannelLed());
+        synchronized (led) {
+            if (led.busy()) {
+                // state read from Supla Cloud is older than the commands that are being sent
+                logger.trace("Ignoring LED state of channel `{}` because commands are being merged", channelId);
+                return;
+            }
+            led.state = update.apply(led.state);
         }
     }
 
     @Override
     public void changeColor(final int channelId, final HSBType command) throws ApiException {
-        final Optional<LedState> state = findLedState(channelId);
-        if (state.isPresent()) {
-            sendNewLedValue(channelId, command, state.get().brightness);
-        }
+        change(channelId, state -> new LedState(command, state.brightness()));
     }
 
     @Override
     public void changeColorBrightness(final int channelId, final PercentType command) throws ApiException {
-        final Optional<LedState> state = findLedState(channelId);
-        if (state.isPresent()) {
-            final LedState ledState = state.get();
-            @Nullable HSBType hsb = ledState.hsb;
+        change(channelId, state -> {
+            @Nullable HSBType hsb = state.hsb();
             final HSBType newHsbType;
             if (hsb == null) {
                 newHsbType = new HSBType(ZERO, PercentType.ZERO, command);
             } else {
                 newHsbType = new HSBType(hsb.getHue(), hsb.getSaturation(), command);
             }
-            sendNewLedValue(channelId, newHsbType, ledState.brightness);
-        }
+            return new LedState(newHsbType, state.brightness());
+        });
     }
 
     @Override
     public void changeBrightness(final int channelId, final PercentType command) throws ApiException {
-        final Optional<LedState> state = findLedState(channelId);
-        if (state.isPresent()) {
-            sendNewLedValue(channelId, state.get().hsb, command);
+        change(channelId, state -> new LedState(state.hsb(), command));
+    }
+
+    @Override
+    public long getMergedCommands() {
+        return mergedCommands.sum();
+    }
+
+    private void change(final int channelId, final UnaryOperator<LedState> change) throws ApiException {
+        final ChannelLed led = leds.get(channelId);
+        if (led == null) {
+            logger.warn("There is no LED state for channel `{}`!", channelId);
+            return;
+        }
+        final LedState previous;
+        final LedState newState;
+        synchronized (led) {
+            previous = led.state;
+            newState = change.apply(previous);
+            led.state = newState;
+            if (led.busy()) {
+                if (led.queued != null) {
+                    mergedCommands.increment();
+                }
+                led.queued = newState;
+                logger.trace("Merging {} into pending command of channel `{}`", newState, channelId);
+                return;
+            }
+            led.sending = true;
+        }
+        try {
+            sendNewLedValue(channelId, newState);
+        } catch (ApiException | RuntimeException e) {
+            synchronized (led) {
+                if (led.state == newState) {
+                    led.state = previous;
+                }
+            }
+            throw e;
+        } finally {
+            sent(channelId, led);
+        }
+    }
+
+    /** Opens the merge window when the command was sent, so it is measured from the answer of Supla Cloud. */
+    private void sent(final int channelId, final ChannelLed led) {
+        synchronized (led) {
+            led.sending = false;
+            led.windowOpen = true;
+        }
+        scheduler.schedule(() -> flush(channelId, led), mergeWindowMs, MILLISECONDS);
+    }
+
+    private void flush(final int channelId, final ChannelLed led) {
+        final LedState queued;
+        synchronized (led) {
+            led.windowOpen = false;
+            queued = led.queued;
+            led.queued = null;
+            if (queued == null) {
+                return;
+            }
+            led.sending = true;
+        }
+        try {
+            sendNewLedValue(channelId, queued);
+            logger.debug(
+                    "Sent merged LED command {} to channel `{}`, merged commands so far: {}",
+                    queued,
+                    channelId,
+                    mergedCommands.sum());
+        } catch (ApiException | RuntimeException e) {
+            logger.warn("Cannot send merged LED command {} to channel `{}`", queued, channelId, e);
+        } finally {
+            // keep merging changes that came while the last value was being sent
+            sent(channelId, led);
         }
     }
 
-    private void sendNewLedValue(
-            final int channelId, @Nullable final HSBType hsbType, @Nullable final PercentType brightness)
-            throws ApiException {
+    private void sendNewLedValue(final int channelId, final LedState state) throws ApiException {
         ChannelExecuteActionRequest action = new ChannelExecuteActionRequest().action(SET_RGBW_PARAMETERS);
+        @Nullable HSBType hsbType = state.hsb();
         if (hsbType != null) {
             final int colorBrightness = hsbType.getBrightness().intValue();
             final HSBType hsbToConvertToRgb =
@@ -94,52 +181,30 @@ final class SuplaLedCommandExecutor implements LedCommandExecutor {
             logger.trace("Changing RGB to {}, color brightness {}%", rgb, colorBrightness);
             action = action.color(rgb).colorBrightness(colorBrightness);
         }
+        @Nullable PercentType brightness = state.brightness();
         if (brightness != null) {
             logger.trace("Changing brightness {}%", brightness);
             action = action.brightness(brightness.intValue());
         }
 
         channelsApi.executeAction(action, channelId);
-        ledStates.put(channelId, new LedState(hsbType, brightness));
-    }
-
-    private Optional<LedState> findLedState(final int channelId) {
-        final Optional<LedState> ledState = ofNullable(ledStates.get(channelId));
-        if (ledState.isEmpty()) {
-            logger.warn("There is no LED state for channel `{}`!", channelId);
-        }
-        return ledState;
     }
 
-    @NonNullByDefault
-    private static class LedState {
+    /** Guarded by its own monitor. */
+    private static final class ChannelLed {
+        private LedState state = new LedState(null, null);
+        /** {@code true} while a command is being sent to Supla Cloud */
+        private boolean sending;
+        /** {@code true} from the end of sending a command until its merge window ends */
+        private boolean windowOpen;
+        /** Last change received while sending or during the window; it is sent when the window ends */
         @Nullable
-        private final HSBType hsb;
+        private LedState queued;
 
-        @Nullable
-        private final PercentType brightness;
-
-        private LedState(@Nullable final HSBType hsb, final @Nullable PercentType brightness) {
-            this.hsb = hsb;
-            this.brightness = brightness;
-        }
-
-        @Override
-        public boolean equals(@Nullable final Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-            final LedState ledState = (LedState) o;
-            return Objects.equals(hsb, ledState.hsb) && Objects.equals(brightness, ledState.brightness);
-        }
-
-        @Override
-        public int hashCode() {
-            return Objects.hash(hsb, brightness);
-        }
-
-        @Override
-        public String toString() {
-            return "LedState{" + "hsb=" + hsb + ", brightness=" + brightness + '}';
+        private boolean busy() {
+            return sending || windowOpen;
         }
     }
+
+    private record LedState(@Nullable HSBType hsb, @Nullable PercentType brightness) {}
 }
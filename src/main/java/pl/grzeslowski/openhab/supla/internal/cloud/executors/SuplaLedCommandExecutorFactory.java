@@ -1,6 +1,10 @@
 package pl.grzeslowski.openhab.supla.internal.cloud.executors;
 
+import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.THREAD_POOL_NAME;
+import static pl.grzeslowski.openhab.supla.internal.cloud.executors.SuplaLedCommandExecutor.DEFAULT_MERGE_WINDOW;
+
 import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.core.common.ThreadPoolManager;
 import pl.grzeslowski.openhab.supla.internal.cloud.api.ChannelsCloudApi;
 
 @NonNullByDefault
@@ -9,6 +13,7 @@ public final class SuplaLedCommandExecutorFactory implements LedCommandExecutorF
 
     @Override
     public LedCommandExecutor newLedCommandExecutor(final ChannelsCloudApi channelsCloudApi) {
-        return new SuplaLedCommandExecutor(channelsCloudApi);
+        return new SuplaLedCommandExecutor(
+                channelsCloudApi, ThreadPoolManager.getScheduledPool(THREAD_POOL_NAME), DEFAULT_MERGE_WINDOW);
     }
 }
@@ -0,0 +1,55 @@
+package pl.grzeslowski.openhab.supla.internal.cloud.handler;
+
+import java.time.Duration;
+import java.time.Instant;
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import pl.grzeslowski.openhab.supla.internal.cloud.api.ServerCloudApi.ApiCalls;
+
+/**
+ * Computes delay to the next refresh of cloud devices, so remaining API calls are spread evenly until the rate limit is
+ * reset.
+ *
+ * <p>Part of the limit ({@code reservePercentage}) is never used by refreshes, so user commands still work when the
+ * budget is low. The delay is never shorter than {@code minInterval} and never longer than the time left to the reset.
+ *
+ * @param minInterval configured refresh interval
+ * @param reservePercentage percentage of the rate limit kept for commands
+ * @param callsPerRefresh how many API calls one refresh costs
+ */
+@NonNullByDefault
+record AdaptiveRefreshInterval(Duration minInterval, int reservePercentage, int callsPerRefresh) {
+    AdaptiveRefreshInterval {
+        if (minInterval.isNegative() || minInterval.isZero()) {
+            throw new IllegalArgumentException("minInterval has to be positive! minInterval=" + minInterval);
+        }
+        if (reservePercentage < 0 || reservePercentage > 100) {
+            throw new IllegalArgumentException(
+                    "reservePercentage has to be in [0, 100]! reservePercentage=" + reservePercentage);
+        }
+        if (callsPerRefresh <= 0) {
+            throw new IllegalArgumentException(
+                    "callsPerRefresh has to be positive! callsPerRefresh=" + callsPerRefresh);
+        }
+    }
+
+    Duration next(ApiCalls apiCalls, Instant now) {
+        if (apiCalls.limit() <= 0) {
+            // no request was made yet, so limits are unknown
+            return minInterval;
+        }
+        var timeToReset = Duration.between(now, apiCalls.resetDateTime().toInstant());
+        if (timeToReset.compareTo(minInterval) <= 0) {
+            return minInterval;
+        }
+        var reserve = (long) Math.ceil(apiCalls.limit() * reservePercentage / 100.0);
+        var refreshes = (apiCalls.remainingApiCalls() - reserve) / callsPerRefresh;
+        if (refreshes <= 0) {
+            return timeToReset;
+        }
+        var interval = timeToReset.dividedBy(refreshes);
+        if (interval.compareTo(minInterval) < 0) {
+            return minInterval;
+        }
+        return interval;
+    }
+}
@@ -3,10 +3,13 @@ package pl.grzeslowski.openhab.supla.internal.cloud.handler;
 import static java.math.BigDecimal.ZERO;
 import static java.math.RoundingMode.HALF_UP;
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.openhab.core.library.unit.Units.SECOND;
 import static org.openhab.core.thing.ThingStatus.ONLINE;
 import static org.openhab.core.thing.ThingStatusDetail.COMMUNICATION_ERROR;
 import static org.openhab.core.thing.ThingStatusDetail.CONFIGURATION_ERROR;
+import static org.openhab.core.thing.ThingStatusDetail.NONE;
 import static org.openhab.core.types.RefreshType.REFRESH;
 import static pl.grzeslowski.openhab.supla.internal.Localization.text;
 import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.CloudBridgeHandlerConstants.*;
@@ -18,11 +21,15 @@ import io.swagger.client.model.ChannelExecuteActionRequest;
 import io.swagger.client.model.Device;
 import io.swagger.client.model.ServerInfo;
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Base64;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
 import lombok.Getter;
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
@@ -30,18 +37,23 @@ import org.openhab.core.common.ThreadPoolManager;
 import org.openhab.core.library.types.DateTimeType;
 import org.openhab.core.library.types.DecimalType;
 import org.openhab.core.library.types.PercentType;
+import org.openhab.core.library.types.QuantityType;
 import org.openhab.core.library.types.StringType;
 import org.openhab.core.thing.Bridge;
 import org.openhab.core.thing.ChannelUID;
 import org.openhab.core.thing.Thing;
 import org.openhab.core.thing.binding.ThingHandler;
+import org.openhab.core.thing.binding.ThingHandlerService;
 import org.openhab.core.types.Command;
 import org.openhab.core.types.RefreshType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import pl.grzeslowski.jsupla.api.internal.ApiClientFactory;
+import pl.grzeslowski.openhab.supla.actions.SuplaCloudDiagnosticsActions;
 import pl.grzeslowski.openhab.supla.internal.ReadWriteMonad;
 import pl.grzeslowski.openhab.supla.internal.cloud.api.*;
+import pl.grzeslowski.openhab.supla.internal.cloud.webhook.CloudWebhookPayload;
+import pl.grzeslowski.openhab.supla.internal.cloud.webhook.CloudWebhookReceiver;
 import pl.grzeslowski.openhab.supla.internal.handler.InitializationException;
 import pl.grzeslowski.openhab.supla.internal.handler.OfflineInitializationException;
 import pl.grzeslowski.openhab.supla.internal.handler.SuplaBridge;
@@ -51,10 +63,39 @@ public class CloudBridgeHandler extends SuplaBridge implements IoDevicesCloudApi
     @Getter
     private final Logger logger = LoggerFactory.getLogger(CloudBridgeHandler.class);
 
+    /** Snapshot is saved at most this often, so refreshes do not write to disk every few seconds. */
+    private static final Duration SNAPSHOT_SAVE_INTERVAL = Duration.ofMinutes(10);
+
     private final ReadWriteMonad<Set<CloudDevice>> cloudDeviceHandlers = new ReadWriteMonad<>(new HashSet<>());
 
+    /** Guards scheduling of refreshes, so a refresh that is running while disposing does not schedule the next one */
+    private final Object refreshScheduleLock = new Object();
+
+    @Nullable
+    private volatile ScheduledFuture<?> scheduledFuture;
+
+    private boolean disposed;
+
+    @Nullable
+    private volatile AdaptiveRefreshInterval refreshInterval;
+
+    /** The last snapshot of devices and channels; cloud devices initialize from it. */
+    @Nullable
+    private volatile CloudSnapshot snapshot;
+
+    @Nullable
+    private volatile CloudSnapshotStore snapshotStore;
+
+    @Nullable
+    private volatile Instant snapshotSavedAt;
+
+    /** Receives pushed states; {@code null} when there is no webhook token in the configuration. */
     @Nullable
-    private ScheduledFuture<?> scheduledFuture;
+    private volatile CloudWebhookReceiver webhookReceiver;
+
+    /** Slows refreshes down while Supla Cloud pushes states; {@code null} when webhooks are not configured. */
+    @Nullable
+    private volatile WebhookRefreshInterval webhookRefreshInterval;
 
     @Nullable
     private ScheduledFuture<?> scheduledFutureForHandler;
@@ -74,6 +115,9 @@ public class CloudBridgeHandler extends SuplaBridge implements IoDevicesCloudApi
 
     @Override
     protected void internalInitialize() throws InitializationException {
+        synchronized (refreshScheduleLock) {
+            disposed = false;
+        }
         // init bridge api client
         var config = this.getConfigAs(CloudBridgeHandlerConfig.class);
 
@@ -101,21 +145,56 @@ public class CloudBridgeHandler extends SuplaBridge implements IoDevicesCloudApi
         updateServerInfo();
         updateApiCalls();
 
-        // check if the current api is supported
-        var apiVersion = ApiClientFactory.getApiVersion();
-        var serverInfo = findServerInfo(localServerCloudApi);
-        var supportedApiVersions = serverInfo.getSupportedApiVersions();
-        if (!supportedApiVersions.contains(apiVersion)) {
-            throw new OfflineInitializationException(
-                    CONFIGURATION_ERROR,
-                    text("supla.offline.api-version-unsupported", apiVersion, String.join(", ", supportedApiVersions)));
+        snapshotStore =
+                new CloudSnapshotStore(CloudSnapshotStore.defaultFile(getThing().getUID()));
+        restoreSnapshot();
+
+        @Nullable ServerInfo serverInfo;
+        try {
+            serverInfo = findServerInfo(localServerCloudApi);
+        } catch (OfflineInitializationException e) {
+            var restored = snapshot;
+            if (restored == null) {
+                throw e;
+            }
+            // start with saved devices, refreshes will revalidate them once Supla Cloud responds
+            logger.warn(
+                    "Supla Cloud is not reachable, starting with devices saved at {}. {}",
+                    restored.fetchedAt(),
+                    e.getLocalizedMessage());
+            serverInfo = null;
+        }
+        if (serverInfo != null) {
+            // check if the current api is supported
+            var apiVersion = ApiClientFactory.getApiVersion();
+            var supportedApiVersions = serverInfo.getSupportedApiVersions();
+            if (!supportedApiVersions.contains(apiVersion)) {
+                throw new OfflineInitializationException(
+                        CONFIGURATION_ERROR,
+                        text(
+                                "supla.offline.api-version-unsupported",
+                                apiVersion,
+                                String.join(", ", supportedApiVersions)));
+            }
+
+            preloadSnapshot();
+        }
+        var restored = findRestoredSnapshot();
+
+        if (!config.getWebhookToken().isBlank()) {
+            webhookRefreshInterval = new WebhookRefreshInterval(
+                    Duration.ofSeconds(config.getWebhookRefreshInterval()),
+                    Duration.ofSeconds(config.getWebhookQuietPeriod()));
+            webhookReceiver = new CloudWebhookReceiver(config.getWebhookToken(), this::webhookStateChanged);
         }
 
         var scheduledPool = ThreadPoolManager.getScheduledPool(THREAD_POOL_NAME);
         {
-            var refreshInterval = config.getRefreshInterval();
-            this.scheduledFuture = scheduledPool.scheduleWithFixedDelay(
-                    this::refreshCloudDevices, refreshInterval * 2L, refreshInterval, SECONDS);
+            var minInterval = Duration.ofSeconds(config.getRefreshInterval());
+            this.refreshInterval = new AdaptiveRefreshInterval(
+                    minInterval, config.getApiCallsReserve(), CloudSnapshot.API_CALLS_PER_FETCH);
+            // saved snapshot is revalidated as soon as possible
+            scheduleRefreshCloudDevices(restored != null ? minInterval : minInterval.multipliedBy(2));
         }
         {
             var refreshHandlerInterval = config.getRefreshHandlerInterval();
@@ -124,7 +203,116 @@ public class CloudBridgeHandler extends SuplaBridge implements IoDevicesCloudApi
         }
 
         // done
-        updateStatus(ONLINE);
+        if (restored != null) {
+            updateStatus(ONLINE, NONE, restored.describeAge(Instant.now()));
+        } else {
+            updateStatus(ONLINE);
+        }
+    }
+
+    private void restoreSnapshot() {
+        try {
+            var restored = requireNonNull(snapshotStore).load();
+            if (restored != null) {
+                logger.debug(
+                        "Restored {} devices saved at {}", restored.devices().size(), restored.fetchedAt());
+                snapshot = restored;
+            }
+        } catch (Exception e) {
+            logger.warn("Cannot restore saved devices, they will be loaded from Supla Cloud", e);
+        }
+    }
+
+    private void preloadSnapshot() {
+        try {
+            var local = CloudSnapshot.fetch(requireNonNull(ioDevicesCloudApi), requireNonNull(channelsApi));
+            logger.debug(
+                    "Preloaded {} devices from Supla Cloud", local.devices().size());
+            snapshot = local;
+            saveSnapshot(local);
+        } catch (Exception e) {
+            var restored = snapshot;
+            if (restored != null) {
+                logger.warn(
+                        "Cannot preload devices from Supla Cloud, using devices saved at {}", restored.fetchedAt(), e);
+            } else {
+                logger.warn("Cannot preload devices from Supla Cloud, each device will load itself", e);
+            }
+        }
+    }
+
+    private void saveSnapshot(CloudSnapshot local) {
+        var store = snapshotStore;
+        var savedAt = snapshotSavedAt;
+        if (store == null
+                || (savedAt != null && savedAt.plus(SNAPSHOT_SAVE_INTERVAL).isAfter(Instant.now()))) {
+            return;
+        }
+        try {
+            store.save(local);
+            snapshotSavedAt = Instant.now();
+        } catch (Exception e) {
+            logger.warn("Cannot save devices from Supla Cloud", e);
+        }
+    }
+
+    /**
+     * @return snapshot read from disk when no snapshot was fetched from Supla Cloud since the bridge started, otherwise
+     *     {@code null}
+     */
+    @Nullable
+    CloudSnapshot findRestoredSnapshot() {
+        var local = snapshot;
+        return local != null && local.restored() ? local : null;
+    }
+
+    /**
+     * @return channel (with state) from the last snapshot or {@code null} if there is no snapshot yet or the channel is
+     *     not in it
+     */
+    @Nullable
+    Channel findSnapshotChannel(int channelId) {
+        var local = snapshot;
+        return local != null ? local.findChannel(channelId) : null;
+    }
+
+    /**
+     * @return device (with channels) from the last snapshot or {@code null} if there is no snapshot yet or the device is
+     *     not in it
+     */
+    @Nullable
+    Device findSnapshotDevice(int cloudId) {
+        var local = snapshot;
+        return local != null ? local.findDevice(cloudId) : null;
+    }
+
+    /**
+     * @return devices from the last snapshot if it was fetched within {@code maxAge}, otherwise {@code null}
+     */
+    @Nullable
+    public Collection<Device> findFreshSnapshotDevices(Duration maxAge) {
+        var local = snapshot;
+        if (local == null || local.fetchedAt().isBefore(Instant.now().minus(maxAge))) {
+            return null;
+        }
+        return local.devices().values();
+    }
+
+    /**
+     * @return receiver of state webhooks or {@code null} if this bridge does not accept them
+     */
+    @Nullable
+    public CloudWebhookReceiver findWebhookReceiver() {
+        return webhookReceiver;
+    }
+
+    private void webhookStateChanged(CloudWebhookPayload payload) {
+        var localWebhookRefreshInterval = webhookRefreshInterval;
+        if (localWebhookRefreshInterval != null) {
+            localWebhookRefreshInterval.webhookReceived(Instant.now());
+        }
+        cloudDeviceHandlers.doInReadLock(
+                cloudDeviceHandlers -> cloudDeviceHandlers.forEach(device -> device.webhookStateChanged(payload)));
     }
 
     private static ServerInfo findServerInfo(ServerCloudApi localServerCloudApi) throws InitializationException {
@@ -147,11 +335,28 @@ public class CloudBridgeHandler extends SuplaBridge implements IoDevicesCloudApi
         return new String(Base64.getDecoder().decode(urlBase64));
     }
 
+    @Override
+    public void handleRemoval() {
+        try {
+            new CloudSnapshotStore(CloudSnapshotStore.defaultFile(getThing().getUID())).delete();
+        } catch (Exception e) {
+            logger.warn("Cannot delete devices from Supla Cloud saved on disk", e);
+        }
+        super.handleRemoval();
+    }
+
     @Override
     public void dispose() {
         logger.debug("Disposing CloudBridgeHandler");
         super.dispose();
-        {
+        refreshInterval = null;
+        snapshot = null;
+        snapshotStore = null;
+        snapshotSavedAt = null;
+        webhookReceiver = null;
+        webhookRefreshInterval = null;
+        synchronized (refreshScheduleLock) {
+            disposed = true;
             var local = scheduledFuture;
             if (local != null) {
                 local.cancel(true);
@@ -181,7 +386,11 @@ public class CloudBridgeHandler extends SuplaBridge implements IoDevicesCloudApi
                         RATE_LIMIT_RESET_DATE_TIME_CHANNEL_ID,
                         REQ_PER_S_CHANNEL_ID,
                         REQ_PER_M_CHANNEL_ID,
-                        REQ_PER_H_CHANNEL_ID -> updateApiCalls();
+                        REQ_PER_H_CHANNEL_ID,
+                        API_CALLS_BY_ENDPOINT_CHANNEL_ID,
+                        CACHE_HITS_CHANNEL_ID,
+                        CACHE_MISSES_CHANNEL_ID,
+                        CACHE_STALE_SERVES_CHANNEL_ID -> updateApiCalls();
             }
         }
     }
@@ -244,9 +453,33 @@ public class CloudBridgeHandler extends SuplaBridge implements IoDevicesCloudApi
             updateState(REQ_PER_S_CHANNEL_ID, new DecimalType(apiCalls.requestPerSecond()));
             updateState(REQ_PER_M_CHANNEL_ID, new DecimalType(apiCalls.requestPerMinute()));
             updateState(REQ_PER_H_CHANNEL_ID, new DecimalType(apiCalls.requestPerHour()));
+
+            var metrics = api.getApiMetrics().snapshot();
+            updateState(API_CALLS_BY_ENDPOINT_CHANNEL_ID, new StringType(metrics.callsByEndpoint()));
+            updateState(CACHE_HITS_CHANNEL_ID, new DecimalType(metrics.cacheHits()));
+            updateState(CACHE_MISSES_CHANNEL_ID, new DecimalType(metrics.cacheMisses()));
+            updateState(CACHE_STALE_SERVES_CHANNEL_ID, new DecimalType(metrics.cacheStaleServes()));
         }
     }
 
+    public ApiMetrics.Snapshot getApiMetrics() {
+        return requireNonNull(serverCloudApi).getApiMetrics().snapshot();
+    }
+
+    /** @return sum of LED changes merged by all cloud devices of this bridge */
+    public long getMergedLedCommands() {
+        var merged = new AtomicLong();
+        cloudDeviceHandlers.doInReadLock(cloudDeviceHandlers -> merged.set(cloudDeviceHandlers.stream()
+                .mapToLong(CloudDevice::getMergedLedCommands)
+                .sum()));
+        return merged.get();
+    }
+
+    @Override
+    public Collection<Class<? extends ThingHandlerService>> getServices() {
+        return List.of(SuplaCloudDiagnosticsActions.class);
+    }
+
     @Override
     public void childHandlerInitialized(ThingHandler childHandler, Thing childThing) {
         super.childHandlerInitialized(childHandler, childThing);
@@ -269,12 +502,79 @@ public class CloudBridgeHandler extends SuplaBridge implements IoDevicesCloudApi
         }
     }
 
-    private void refreshCloudDevices() {
+    private void scheduleRefreshCloudDevices(Duration delay) {
+        synchronized (refreshScheduleLock) {
+            if (disposed) {
+                logger.debug("Not scheduling refresh of cloud devices, bridge is disposed");
+                return;
+            }
+            logger.debug("Next refresh of cloud devices in {}", delay);
+            scheduledFuture = ThreadPoolManager.getScheduledPool(THREAD_POOL_NAME)
+                    .schedule(this::refreshCloudDevicesAndReschedule, delay.toMillis(), MILLISECONDS);
+        }
+        updateState(EFFECTIVE_REFRESH_INTERVAL_CHANNEL_ID, new QuantityType<>(delay.toSeconds(), SECOND));
+    }
+
+    private void refreshCloudDevicesAndReschedule() {
+        @Nullable Instant retryAt = null;
         try {
-            cloudDeviceHandlers.doInReadLock(cloudDeviceHandlers -> cloudDeviceHandlers.forEach(CloudDevice::refresh));
+            retryAt = refreshCloudDevices();
+        } finally {
+            var interval = refreshInterval;
+            var api = serverCloudApi;
+            // interval is null after dispose
+            if (interval != null && api != null) {
+                var now = Instant.now();
+                var delay = interval.next(api.getApiCalls(), now);
+                var localWebhookRefreshInterval = webhookRefreshInterval;
+                if (localWebhookRefreshInterval != null) {
+                    delay = localWebhookRefreshInterval.next(delay, now);
+                }
+                if (retryAt != null && retryAt.isAfter(now.plus(delay))) {
+                    delay = Duration.between(now, retryAt);
+                }
+                scheduleRefreshCloudDevices(delay);
+            }
+        }
+    }
+
+    /**
+     * @return time when Supla Cloud can be called again, if it is not available now
+     */
+    @Nullable
+    private Instant refreshCloudDevices() {
+        CloudSnapshot snapshot;
+        var restored = findRestoredSnapshot();
+        try {
+            snapshot = CloudSnapshot.fetch(requireNonNull(ioDevicesCloudApi), requireNonNull(channelsApi));
+        } catch (CircuitOpenException e) {
+            logger.debug("Not refreshing cloud devices, {}", e.getLocalizedMessage());
+            cloudDeviceHandlers.doInReadLock(
+                    cloudDeviceHandlers -> cloudDeviceHandlers.forEach(device -> device.refreshFailed(e, restored)));
+            return e.getRetryAt();
+        } catch (Exception e) {
+            logger.warn("Cannot fetch devices and channels from Supla Cloud", e);
+            cloudDeviceHandlers.doInReadLock(
+                    cloudDeviceHandlers -> cloudDeviceHandlers.forEach(device -> device.refreshFailed(e, restored)));
+            return null;
+        }
+        this.snapshot = snapshot;
+        saveSnapshot(snapshot);
+        if (restored != null) {
+            logger.info("Supla Cloud is reachable again, devices saved at {} are revalidated", restored.fetchedAt());
+            updateStatus(ONLINE);
+        }
+        try {
+            logger.trace(
+                    "Fetched {} devices and {} channels",
+                    snapshot.devices().size(),
+                    snapshot.channels().size());
+            cloudDeviceHandlers.doInReadLock(
+                    cloudDeviceHandlers -> cloudDeviceHandlers.forEach(device -> device.refresh(snapshot)));
         } catch (Exception e) {
             logger.error("Cannot refresh cloud devices!", e);
         }
+        return null;
     }
 
     private void refreshHandler() {
@@ -295,6 +595,11 @@ public class CloudBridgeHandler extends SuplaBridge implements IoDevicesCloudApi
         return requireNonNull(channelsApi).getChannel(id, include);
     }
 
+    @Override
+    public Channel fetchChannel(int id, List<String> include) throws Exception {
+        return requireNonNull(channelsApi).fetchChannel(id, include);
+    }
+
     @Override
     public List<Channel> getChannels(List<String> include) throws Exception {
         return requireNonNull(channelsApi).getChannels(include);
@@ -1,6 +1,7 @@
 package pl.grzeslowski.openhab.supla.internal.cloud.handler;
 
 import static java.lang.Math.max;
+import static java.lang.Math.min;
 import static java.util.concurrent.TimeUnit.MINUTES;
 
 import java.math.BigDecimal;
@@ -13,6 +14,10 @@ public class CloudBridgeHandlerConfig {
     private BigDecimal refreshInterval = BigDecimal.valueOf(30);
     private BigDecimal refreshHandlerInterval = BigDecimal.valueOf(MINUTES.toSeconds(10));
     private int cacheEvict = 30;
+    private BigDecimal apiCallsReserve = BigDecimal.valueOf(20);
+    private String webhookToken = "";
+    private BigDecimal webhookRefreshInterval = BigDecimal.valueOf(MINUTES.toSeconds(10));
+    private BigDecimal webhookQuietPeriod = BigDecimal.valueOf(MINUTES.toSeconds(30));
 
     public String getOAuthToken() {
         return oAuthToken;
@@ -45,4 +50,36 @@ public class CloudBridgeHandlerConfig {
     public void setRefreshHandlerInterval(BigDecimal refreshHandlerInterval) {
         this.refreshHandlerInterval = refreshHandlerInterval;
     }
+
+    public int getApiCallsReserve() {
+        return min(max(apiCallsReserve.intValue(), 0), 100);
+    }
+
+    public void setApiCallsReserve(BigDecimal apiCallsReserve) {
+        this.apiCallsReserve = apiCallsReserve;
+    }
+
+    public String getWebhookToken() {
+        return webhookToken;
+    }
+
+    public void setWebhookToken(String webhookToken) {
+        this.webhookToken = webhookToken;
+    }
+
+    public long getWebhookRefreshInterval() {
+        return max(webhookRefreshInterval.longValue(), 1);
+    }
+
+    public void setWebhookRefreshInterval(BigDecimal webhookRefreshInterval) {
+        this.webhookRefreshInterval = webhookRefreshInterval;
+    }
+
+    public long getWebhookQuietPeriod() {
+        return max(webhookQuietPeriod.longValue(), 1);
+    }
+
+    public void setWebhookQuietPeriod(BigDecimal webhookQuietPeriod) {
+        this.webhookQuietPeriod = webhookQuietPeriod;
+    }
 }
@@ -5,25 +5,39 @@ import static java.lang.Integer.parseInt;
 import static java.util.Collections.emptyList;
 import static java.util.Collections.singletonList;
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.openhab.core.library.types.OnOffType.ON;
 import static org.openhab.core.library.types.UpDownType.UP;
 import static org.openhab.core.thing.ThingStatus.OFFLINE;
 import static org.openhab.core.thing.ThingStatus.ONLINE;
+import static org.openhab.core.thing.ThingStatus.UNKNOWN;
 import static org.openhab.core.thing.ThingStatusDetail.*;
 import static org.openhab.core.types.RefreshType.REFRESH;
 import static pl.grzeslowski.openhab.supla.internal.Localization.text;
 import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.SUPLA_DEVICE_CLOUD_ID;
+import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.THREAD_POOL_NAME;
 
 import io.swagger.client.model.ChannelExecuteActionRequest;
 import io.swagger.client.model.ChannelFunctionActionEnum;
+import io.swagger.client.model.ChannelState;
 import io.swagger.client.model.Device;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.stream.Collectors;
 import lombok.Getter;
 import lombok.SneakyThrows;
 import org.eclipse.jdt.annotation.NonNull;
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.common.ThreadPoolManager;
 import org.openhab.core.library.types.*;
 import org.openhab.core.thing.*;
 import org.openhab.core.thing.binding.BridgeHandler;
@@ -36,12 +50,14 @@ import pl.grzeslowski.openhab.supla.internal.cloud.ChannelFunctionDispatcher;
 import pl.grzeslowski.openhab.supla.internal.cloud.ChannelInfo;
 import pl.grzeslowski.openhab.supla.internal.cloud.ChannelInfoParser;
 import pl.grzeslowski.openhab.supla.internal.cloud.api.ChannelsCloudApi;
+import pl.grzeslowski.openhab.supla.internal.cloud.api.CircuitOpenException;
 import pl.grzeslowski.openhab.supla.internal.cloud.api.IoDevicesCloudApi;
 import pl.grzeslowski.openhab.supla.internal.cloud.executors.LedCommandExecutor;
 import pl.grzeslowski.openhab.supla.internal.cloud.executors.LedCommandExecutorFactory;
 import pl.grzeslowski.openhab.supla.internal.cloud.executors.SuplaLedCommandExecutorFactory;
 import pl.grzeslowski.openhab.supla.internal.cloud.functionswitch.CreateChannelFunctionSwitch;
 import pl.grzeslowski.openhab.supla.internal.cloud.functionswitch.FindStateFunctionSwitch;
+import pl.grzeslowski.openhab.supla.internal.cloud.webhook.CloudWebhookPayload;
 import pl.grzeslowski.openhab.supla.internal.handler.InitializationException;
 import pl.grzeslowski.openhab.supla.internal.handler.OfflineInitializationException;
 import pl.grzeslowski.openhab.supla.internal.handler.SuplaDeviceHandler;
@@ -51,10 +67,19 @@ import pl.grzeslowski.openhab.supla.internal.handler.SuplaDeviceHandler;
  *
  * <p>Channels are created at runtime after connecting to Supla Cloud
  *
+ * <p>After an action is executed the expected state is published right away and one read of that channel is scheduled
+ * to confirm it. If Supla Cloud reports something else, the reported state replaces the optimistic one.
+ *
  * @author Martin Grześlowski - initial contributor
  */
 @NonNullByDefault
 public final class CloudDevice extends SuplaDeviceHandler {
+    static final Duration CONFIRMATION_DELAY = Duration.ofSeconds(3);
+    /** Roller shutters need time to move, earlier read would report position in the middle of the way. */
+    static final Duration ROLLER_SHUTTER_CONFIRMATION_DELAY = Duration.ofSeconds(30);
+
+    private static final List<String> STATE_INCLUDE = List.of("state");
+
     @Getter
     private Logger logger = LoggerFactory.getLogger(CloudDevice.class);
 
@@ -68,21 +93,50 @@ public final class CloudDevice extends SuplaDeviceHandler {
     @Nullable
     private IoDevicesCloudApi ioDevicesApi;
 
+    /**
+     * Static part of channels (ID, function, type), so commands do not need to query Supla Cloud before executing an
+     * action. Rebuilt in {@link #initChannels()} and kept up to date from snapshots that bridge fetches.
+     */
+    private final Map<Integer, io.swagger.client.model.Channel> channelMetadata = new ConcurrentHashMap<>();
+
+    /** Confirms optimistic states and initializes devices that are not in snapshot of bridge. */
+    private final ScheduledExecutorService cloudScheduler;
+
+    @Nullable
+    private volatile Future<?> initialization;
+
+    /**
+     * Refreshes are ignored while set: configuration was not read yet (or it is invalid) or device is being loaded from
+     * Supla Cloud. A device that was offline or disabled during initialization is initialized by the first refresh
+     * that finds it connected and enabled.
+     */
+    private volatile boolean initializing = true;
+
+    /**
+     * Channels with optimistic state that waits for confirmation; snapshots fetched by bridge in the meantime can be
+     * older than the action, so they do not update these channels.
+     */
+    private final Map<ChannelUID, PendingConfirmation> pendingConfirmations = new ConcurrentHashMap<>();
+
     // CommandExecutors
     @Nullable
-    private LedCommandExecutor ledCommandExecutor;
+    private volatile LedCommandExecutor ledCommandExecutor;
 
-    CloudDevice(Thing thing, LedCommandExecutorFactory ledCommandExecutorFactory) {
+    CloudDevice(
+            Thing thing, LedCommandExecutorFactory ledCommandExecutorFactory, ScheduledExecutorService cloudScheduler) {
         super(thing);
         this.ledCommandExecutorFactory = ledCommandExecutorFactory;
+        this.cloudScheduler = cloudScheduler;
     }
 
     public CloudDevice(final Thing thing) {
-        this(thing, SuplaLedCommandExecutorFactory.FACTORY);
+        this(thing, SuplaLedCommandExecutorFactory.FACTORY, ThreadPoolManager.getScheduledPool(THREAD_POOL_NAME));
     }
 
     @Override
     protected void internalInitialize() throws Exception {
+        initializing = true;
+        ledCommandExecutor = null;
         @Nullable final Bridge bridge = getBridge();
         if (bridge == null) {
             logger.debug("No bridge for thing with UID {}", thing.getUID());
@@ -102,9 +156,68 @@ public final class CloudDevice extends SuplaDeviceHandler {
         var cloudIdString = String.valueOf(getConfig().get(SUPLA_DEVICE_CLOUD_ID));
         logger = LoggerFactory.getLogger(CloudDevice.class.getName() + "." + cloudIdString);
         initCloudApi(cloudIdString);
-        checkIfIsOnline();
-        checkIfIsEnabled();
-        initChannels();
+
+        var device = handler.findSnapshotDevice(cloudId);
+        if (device != null) {
+            logger.trace("Initializing from snapshot of bridge");
+            try {
+                checkIfIsOnline(device);
+                checkIfIsEnabled(device);
+                initChannels(device.getChannels());
+                finishInitialization();
+                updateStatesFromSnapshot(handler);
+                var restored = handler.findRestoredSnapshot();
+                if (restored != null) {
+                    updateStatus(ONLINE, NONE, restored.describeAge(Instant.now()));
+                }
+            } finally {
+                // if the device is offline or disabled now, refresh initializes it once it comes back
+                initializing = false;
+            }
+            return;
+        }
+        // device is not in snapshot (i.e. bridge could not fetch it or device was just added),
+        // query Supla Cloud without blocking initialization of other things
+        logger.debug("There is no device {} in snapshot of bridge, loading it from Supla Cloud", cloudId);
+        updateStatus(UNKNOWN);
+        initialization = cloudScheduler.submit(() -> {
+            try {
+                initializeFromCloud();
+            } finally {
+                initializing = false;
+            }
+        });
+    }
+
+    /** Publishes states from the snapshot right away, so channels do not wait for the first refresh. */
+    private void updateStatesFromSnapshot(CloudBridgeHandler handler) {
+        for (var thingChannel : thing.getChannels()) {
+            var channelUID = thingChannel.getUID();
+            var channel = handler.findSnapshotChannel(
+                    ChannelInfoParser.PARSER.parse(channelUID).getChannelId());
+            if (channel != null) {
+                updateChannelState(channelUID, channel);
+            }
+        }
+    }
+
+    private void initializeFromCloud() {
+        try {
+            checkIfIsOnline();
+            checkIfIsEnabled();
+            initChannels();
+            finishInitialization();
+        } catch (InitializationException e) {
+            logger.debug("InitializationException", e);
+            updateStatus(e.getStatus(), e.getStatusDetail(), e.getLocalizedMessage());
+        } catch (Exception e) {
+            logger.error("Error occurred while initializing Supla device!", e);
+            updateStatus(
+                    OFFLINE, COMMUNICATION_ERROR, text("supla.offline.communication-error", e.getLocalizedMessage()));
+        }
+    }
+
+    private void finishInitialization() {
         initCommandExecutors();
 
         // done
@@ -135,10 +248,7 @@ public final class CloudDevice extends SuplaDeviceHandler {
 
     private void checkIfIsOnline() throws InitializationException {
         try {
-            var device = findDevice(singletonList("connected"));
-            if (device.isConnected() == null || !device.isConnected()) {
-                throw new OfflineInitializationException(NONE, text("supla.offline.not-connected"));
-            }
+            checkIfIsOnline(findDevice(singletonList("connected")));
         } catch (Exception e) {
             if (e instanceof InitializationException iex) {
                 throw iex;
@@ -149,23 +259,46 @@ public final class CloudDevice extends SuplaDeviceHandler {
         }
     }
 
+    private static void checkIfIsOnline(Device device) throws InitializationException {
+        if (device.isConnected() == null || !device.isConnected()) {
+            throw new OfflineInitializationException(NONE, text("supla.offline.not-connected"));
+        }
+    }
+
     private Device findDevice(List<String> include) throws Exception {
         return requireNonNull(ioDevicesApi).getIoDevice(cloudId, include);
     }
 
     private void checkIfIsEnabled() throws Exception {
-        final Device device = findDevice(emptyList());
+        checkIfIsEnabled(findDevice(emptyList()));
+    }
+
+    private static void checkIfIsEnabled(Device device) throws InitializationException {
         if (device.isEnabled() == null || !device.isEnabled()) {
             throw new OfflineInitializationException(NONE, text("supla.offline.device-turned-off"));
         }
     }
 
     private void initChannels() throws OfflineInitializationException {
+        List<io.swagger.client.model.Channel> channels;
+        try {
+            channels = findDevice(singletonList("channels")).getChannels();
+        } catch (Exception e) {
+            throw new OfflineInitializationException(
+                    COMMUNICATION_ERROR, text("supla.offline.communication-error", e.getLocalizedMessage()));
+        }
+        initChannels(channels);
+    }
+
+    private void initChannels(List<io.swagger.client.model.Channel> allCloudChannels)
+            throws OfflineInitializationException {
         try {
-            final List<Channel> channels = findDevice(singletonList("channels")) //
-                    .getChannels() //
-                    .stream() //
+            var cloudChannels = allCloudChannels.stream() //
                     .filter(channel -> !channel.isHidden()) //
+                    .toList();
+            channelMetadata.clear();
+            cloudChannels.forEach(channel -> channelMetadata.put(channel.getId(), channel));
+            final List<Channel> channels = cloudChannels.stream() //
                     .map(channel -> ChannelFunctionDispatcher.DISPATCHER.dispatch(
                             channel, new CreateChannelFunctionSwitch(thing.getUID()))) //
                     .flatMap(List::stream) //
@@ -193,20 +326,90 @@ public final class CloudDevice extends SuplaDeviceHandler {
         var channelInfo = ChannelInfoParser.PARSER.parse(channelUID);
         var channelId = channelInfo.getChannelId();
         logger.trace("Refreshing channel `{}`", channelUID);
-        var channel = queryForChannel(channelId);
-        var findStateFunctionSwitch = new FindStateFunctionSwitch(requireNonNull(ledCommandExecutor), channelUID);
-        var foundState = ChannelFunctionDispatcher.DISPATCHER.dispatch(channel, findStateFunctionSwitch);
-        if (foundState.isPresent()) {
-            final State state = foundState.get();
+        updateChannelState(channelUID, queryForChannel(channelId));
+    }
+
+    private void updateChannelState(ChannelUID channelUID, io.swagger.client.model.Channel channel) {
+        findState(channelUID, channel).ifPresent(state -> {
             logger.trace("Updating state `{}` to `{}`", channelUID, state);
             updateState(channelUID, state);
-        } else {
+        });
+    }
+
+    private Optional<? extends State> findState(ChannelUID channelUID, io.swagger.client.model.Channel channel) {
+        var findStateFunctionSwitch = new FindStateFunctionSwitch(requireNonNull(ledCommandExecutor), channelUID);
+        var foundState = ChannelFunctionDispatcher.DISPATCHER.dispatch(channel, findStateFunctionSwitch);
+        if (foundState.isEmpty()) {
             logger.warn(
                     "There was no found state for channel `{}` channelState={}, function={}",
                     channelUID,
                     channel.getState(),
                     channel.getFunction());
         }
+        return foundState;
+    }
+
+    /**
+     * Publishes state that the action should result in and schedules a read of the channel to confirm it.
+     *
+     * @param expectedState state to publish right away or {@code null} if it cannot be predicted (i.e. toggle)
+     */
+    private void actionExecuted(ChannelUID channelUID, @Nullable State expectedState, Duration confirmationDelay) {
+        if (expectedState != null) {
+            logger.trace("Optimistically updating state `{}` to `{}`", channelUID, expectedState);
+            updateState(channelUID, expectedState);
+        }
+        var pending = new PendingConfirmation(expectedState);
+        var previous = pendingConfirmations.put(channelUID, pending);
+        if (previous != null) {
+            previous.cancel();
+        }
+        pending.future = cloudScheduler.schedule(
+                () -> confirmState(channelUID, pending), confirmationDelay.toMillis(), MILLISECONDS);
+    }
+
+    private void actionExecuted(ChannelUID channelUID, @Nullable State expectedState) {
+        actionExecuted(channelUID, expectedState, CONFIRMATION_DELAY);
+    }
+
+    /**
+     * Reads the channel from Supla Cloud (not from a cached list, that can be older than the action) and publishes its
+     * state. The confirmation stays pending while the channel is read, so refreshes do not overwrite the optimistic
+     * state in the meantime.
+     */
+    private void confirmState(ChannelUID channelUID, PendingConfirmation pending) {
+        if (pendingConfirmations.get(channelUID) != pending) {
+            // newer action replaced this one
+            return;
+        }
+        try {
+            var channelId = ChannelInfoParser.PARSER.parse(channelUID).getChannelId();
+            var channel = requireNonNull(channelsApi).fetchChannel(channelId, STATE_INCLUDE);
+            findState(channelUID, channel).ifPresent(state -> applyConfirmedState(channelUID, pending, state));
+        } catch (Exception e) {
+            logger.debug("Cannot confirm state of `{}`, waiting for the next refresh", channelUID, e);
+        } finally {
+            pendingConfirmations.remove(channelUID, pending);
+        }
+    }
+
+    private void applyConfirmedState(ChannelUID channelUID, PendingConfirmation pending, State state) {
+        // applied and removed atomically; a newer action or pushed state replaced the read value in the meantime
+        pendingConfirmations.computeIfPresent(channelUID, (__, current) -> {
+            if (current != pending) {
+                return current;
+            }
+            var expectedState = pending.expectedState;
+            if (expectedState != null && !expectedState.equals(state)) {
+                logger.debug(
+                        "Supla Cloud reported `{}` for `{}` instead of `{}`, rolling back optimistic state",
+                        state,
+                        channelUID,
+                        expectedState);
+            }
+            updateState(channelUID, state);
+            return null;
+        });
     }
 
     @Override
@@ -214,15 +417,18 @@ public final class CloudDevice extends SuplaDeviceHandler {
     public void handleOnOffCommand(final ChannelUID channelUID, final OnOffType command) {
         final ChannelInfo channelInfo = ChannelInfoParser.PARSER.parse(channelUID);
         final int channelId = channelInfo.getChannelId();
-        final io.swagger.client.model.Channel channel = queryForChannel(channelId);
+        final io.swagger.client.model.Channel channel = findChannelMetadata(channelId);
         switch (channel.getFunction().getName()) {
             case CONTROLLINGTHEGATE:
             case CONTROLLINGTHEGARAGEDOOR:
                 var action = new ChannelExecuteActionRequest().action(OPEN_CLOSE);
                 requireNonNull(channelsApi).executeAction(action, channelId);
+                actionExecuted(channelUID, null);
                 break;
             default:
-                handleOneZeroCommand(channelId, command == ON, TURN_ON, TURN_OFF);
+                if (handleOneZeroCommand(channelId, command == ON, TURN_ON, TURN_OFF)) {
+                    actionExecuted(channelUID, command);
+                }
         }
     }
 
@@ -231,13 +437,14 @@ public final class CloudDevice extends SuplaDeviceHandler {
     public void handleUpDownCommand(final ChannelUID channelUID, final UpDownType command) {
         final ChannelInfo channelInfo = ChannelInfoParser.PARSER.parse(channelUID);
         final int channelId = channelInfo.getChannelId();
-        final io.swagger.client.model.Channel channel = queryForChannel(channelId);
+        final io.swagger.client.model.Channel channel = findChannelMetadata(channelId);
         //noinspection SwitchStatementWithTooFewBranches
         switch (channel.getFunction().getName()) {
             case CONTROLLINGTHEROLLERSHUTTER:
-                handleOneZeroCommand(channelId, command == UP, REVEAL, SHUT);
-                final int value = command == UP ? 100 : 0;
-                updateState(channelUID, new PercentType(value));
+                if (handleOneZeroCommand(channelId, command == UP, REVEAL, SHUT)) {
+                    final int value = command == UP ? 100 : 0;
+                    actionExecuted(channelUID, new PercentType(value), ROLLER_SHUTTER_CONFIRMATION_DELAY);
+                }
                 break;
         }
     }
@@ -247,7 +454,7 @@ public final class CloudDevice extends SuplaDeviceHandler {
     public void handleHsbCommand(final ChannelUID channelUID, final HSBType command) {
         final ChannelInfo channelInfo = ChannelInfoParser.PARSER.parse(channelUID);
         final int channelId = channelInfo.getChannelId();
-        final io.swagger.client.model.Channel channel = queryForChannel(channelId);
+        final io.swagger.client.model.Channel channel = findChannelMetadata(channelId);
         handleHsbCommand(channel, channelUID, command);
     }
 
@@ -258,6 +465,7 @@ public final class CloudDevice extends SuplaDeviceHandler {
             case RGBLIGHTING:
             case DIMMERANDRGBLIGHTING:
                 requireNonNull(ledCommandExecutor).changeColor(channel.getId(), command);
+                actionExecuted(channelUID, command);
                 return;
             default:
                 logger.warn(
@@ -273,11 +481,13 @@ public final class CloudDevice extends SuplaDeviceHandler {
     public void handleOpenClosedCommand(final ChannelUID channelUID, final OpenClosedType command) {
         final ChannelInfo channelInfo = ChannelInfoParser.PARSER.parse(channelUID);
         final int channelId = channelInfo.getChannelId();
-        final io.swagger.client.model.Channel channel = queryForChannel(channelId);
+        final io.swagger.client.model.Channel channel = findChannelMetadata(channelId);
         switch (channel.getFunction().getName()) {
             case CONTROLLINGTHEGATE:
             case CONTROLLINGTHEGARAGEDOOR:
-                handleOneZeroCommand(channelId, command == OpenClosedType.OPEN, OPEN, CLOSE);
+                if (handleOneZeroCommand(channelId, command == OpenClosedType.OPEN, OPEN, CLOSE)) {
+                    actionExecuted(channelUID, null);
+                }
         }
     }
 
@@ -294,7 +504,7 @@ public final class CloudDevice extends SuplaDeviceHandler {
         }
         final ChannelInfo channelInfo = ChannelInfoParser.PARSER.parse(channelUID);
         final int channelId = channelInfo.getChannelId();
-        final io.swagger.client.model.Channel channel = queryForChannel(channelId);
+        final io.swagger.client.model.Channel channel = findChannelMetadata(channelId);
         switch (channel.getFunction().getName()) {
             case CONTROLLINGTHEROLLERSHUTTER:
                 final int shut = 100 - command.intValue();
@@ -303,17 +513,22 @@ public final class CloudDevice extends SuplaDeviceHandler {
                         .action(REVEAL_PARTIALLY)
                         .percentage(shut);
                 channelsApi.executeAction(action, channelId);
+                actionExecuted(channelUID, command, ROLLER_SHUTTER_CONFIRMATION_DELAY);
                 return;
             case RGBLIGHTING:
             case DIMMERANDRGBLIGHTING:
                 if (channelInfo.getAdditionalChannelType() == null) {
                     ledCommandExecutor.changeColorBrightness(channelId, command);
+                    // hue and saturation are known only to LED executor
+                    actionExecuted(channelUID, null);
                 } else if (channelInfo.getAdditionalChannelType() == AdditionalChannelType.LED_BRIGHTNESS) {
                     ledCommandExecutor.changeBrightness(channelId, command);
+                    actionExecuted(channelUID, command);
                 }
                 return;
             case DIMMER:
                 ledCommandExecutor.changeBrightness(channelId, command);
+                actionExecuted(channelUID, command);
                 break;
             default:
                 logger.warn(
@@ -324,7 +539,10 @@ public final class CloudDevice extends SuplaDeviceHandler {
         }
     }
 
-    private void handleOneZeroCommand(
+    /**
+     * @return {@code true} if action was executed
+     */
+    private boolean handleOneZeroCommand(
             final int channelId,
             final boolean firstOrSecond,
             final ChannelFunctionActionEnum first,
@@ -332,11 +550,12 @@ public final class CloudDevice extends SuplaDeviceHandler {
             throws Exception {
         if (channelsApi == null) {
             logger.debug("Cannot handle `{}` on channel `{}` because channelsApi is null", firstOrSecond, channelId);
-            return;
+            return false;
         }
         final ChannelFunctionActionEnum action = firstOrSecond ? first : second;
         logger.trace("Executing 0/1 command `{}`", action);
         channelsApi.executeAction(new ChannelExecuteActionRequest().action(action), channelId);
+        return true;
     }
 
     @SuppressWarnings("SwitchStatementWithTooFewBranches")
@@ -345,7 +564,7 @@ public final class CloudDevice extends SuplaDeviceHandler {
     public void handleStopMoveTypeCommand(final @NonNull ChannelUID channelUID, final @NonNull StopMoveType command) {
         final ChannelInfo channelInfo = ChannelInfoParser.PARSER.parse(channelUID);
         final int channelId = channelInfo.getChannelId();
-        final io.swagger.client.model.Channel channel = queryForChannel(channelId);
+        final io.swagger.client.model.Channel channel = findChannelMetadata(channelId);
         switch (channel.getFunction().getName()) {
             case CONTROLLINGTHEROLLERSHUTTER:
                 handleStopMoveTypeCommandOnRollerShutter(channelUID, channel, command);
@@ -375,6 +594,7 @@ public final class CloudDevice extends SuplaDeviceHandler {
                 final ChannelFunctionActionEnum action = STOP;
                 logger.trace("Sending stop action `{}` to channel with UUID `{}`", action, channelUID);
                 channelsApi.executeAction(new ChannelExecuteActionRequest().action(action), channel.getId());
+                actionExecuted(channelUID, null, ROLLER_SHUTTER_CONFIRMATION_DELAY);
         }
     }
 
@@ -404,14 +624,46 @@ public final class CloudDevice extends SuplaDeviceHandler {
         updateState(rgbChannelUid, hsbType);
     }
 
-    void refresh() {
+    /**
+     * Updates status and all channels from the snapshot that bridge fetched for all devices. Only channels that are
+     * missing in the snapshot are queried one by one.
+     */
+    void refresh(CloudSnapshot snapshot) {
+        if (initializing) {
+            logger.trace("Not refreshing `{}`, it is still initializing", thing.getUID());
+            return;
+        }
         logger.trace("Refreshing `{}`", thing.getUID());
         try {
-            checkIfIsOnline();
-            checkIfIsEnabled();
+            var device = snapshot.findDevice(cloudId);
+            if (device == null) {
+                throw new OfflineInitializationException(
+                        COMMUNICATION_ERROR, text("supla.offline.device-check", thing.getUID()));
+            }
+            checkIfIsOnline(device);
+            checkIfIsEnabled(device);
+            if (ledCommandExecutor == null) {
+                logger.debug("Thing `{}` is connected & enabled now, initializing it from snapshot", thing.getUID());
+                initChannels(device.getChannels());
+                finishInitialization();
+            }
             updateStatus(ONLINE);
             logger.trace("Thing `{}` is connected & enabled. Refreshing channels", thing.getUID());
-            thing.getChannels().stream().map(Channel::getUID).forEach(channelUID -> handleCommand(channelUID, REFRESH));
+            for (var thingChannel : thing.getChannels()) {
+                var channelUID = thingChannel.getUID();
+                if (pendingConfirmations.containsKey(channelUID)) {
+                    logger.trace("Skipping `{}`, it waits for confirmation of the last action", channelUID);
+                    continue;
+                }
+                var channel = snapshot.findChannel(
+                        ChannelInfoParser.PARSER.parse(channelUID).getChannelId());
+                if (channel != null) {
+                    updateChannelMetadata(channel);
+                    updateChannelState(channelUID, channel);
+                } else {
+                    handleCommand(channelUID, REFRESH);
+                }
+            }
         } catch (Exception e) {
             if (e instanceof InitializationException iex) {
                 updateStatus(iex.getStatus(), iex.getStatusDetail(), iex.getLocalizedMessage());
@@ -422,13 +674,126 @@ public final class CloudDevice extends SuplaDeviceHandler {
         }
     }
 
+    /**
+     * Updates channels with the state that Supla Cloud pushed. Channels that do not belong to this device are ignored.
+     */
+    void webhookStateChanged(CloudWebhookPayload payload) {
+        var metadata = channelMetadata.get(payload.channelId());
+        if (metadata == null || ledCommandExecutor == null) {
+            return;
+        }
+        var channel = withState(metadata, payload.state());
+        for (var thingChannel : thing.getChannels()) {
+            var channelUID = thingChannel.getUID();
+            if (ChannelInfoParser.PARSER.parse(channelUID).getChannelId() != payload.channelId()) {
+                continue;
+            }
+            // pushed state is the result of the last action, there is nothing left to confirm
+            var pending = pendingConfirmations.remove(channelUID);
+            if (pending != null) {
+                pending.cancel();
+            }
+            updateChannelState(channelUID, channel);
+        }
+    }
+
+    /**
+     * Copy of the channel with the new state, so metadata shared with the cache of the bridge is not modified. It has
+     * the same fields that {@code ChannelsStreamReader} keeps.
+     */
+    private static io.swagger.client.model.Channel withState(
+            io.swagger.client.model.Channel metadata, ChannelState state) {
+        return new io.swagger.client.model.Channel()
+                .id(metadata.getId())
+                .caption(metadata.getCaption())
+                .hidden(metadata.isHidden())
+                .param2(metadata.getParam2())
+                .param3(metadata.getParam3())
+                .function(metadata.getFunction())
+                .type(metadata.getType())
+                .state(state);
+    }
+
+    /**
+     * @param restored snapshot read from disk, if Supla Cloud did not respond since the bridge started
+     */
+    void refreshFailed(Exception e, @Nullable CloudSnapshot restored) {
+        if (restored != null && thing.getStatus() == ONLINE) {
+            // keep showing saved data, instead of failing, till Supla Cloud responds for the first time
+            updateStatus(ONLINE, NONE, restored.describeAge(Instant.now()));
+            return;
+        }
+        if (e instanceof CircuitOpenException circuitOpen) {
+            updateStatus(
+                    OFFLINE, COMMUNICATION_ERROR, text("supla.offline.cloud-unavailable", circuitOpen.getRetryAt()));
+            return;
+        }
+        updateStatus(OFFLINE, COMMUNICATION_ERROR, text("supla.offline.communication-error", e.getLocalizedMessage()));
+    }
+
+    /** @return LED changes that were merged into a later command instead of being sent to Supla Cloud */
+    long getMergedLedCommands() {
+        var local = ledCommandExecutor;
+        return local != null ? local.getMergedCommands() : 0;
+    }
+
+    private io.swagger.client.model.Channel findChannelMetadata(final int channelId) throws Exception {
+        var channel = channelMetadata.get(channelId);
+        if (channel != null) {
+            return channel;
+        }
+        logger.debug("There is no metadata for channel {}, querying Supla Cloud", channelId);
+        channel = queryForChannel(channelId);
+        channelMetadata.put(channelId, channel);
+        return channel;
+    }
+
+    private void updateChannelMetadata(io.swagger.client.model.Channel channel) {
+        var previous = channelMetadata.put(channel.getId(), channel);
+        if (previous != null && !Objects.equals(previous.getFunction(), channel.getFunction())) {
+            logger.debug(
+                    "Function of channel {} changed from {} to {}",
+                    channel.getId(),
+                    previous.getFunction(),
+                    channel.getFunction());
+        }
+    }
+
     private io.swagger.client.model.Channel queryForChannel(final int channelId) throws Exception {
-        return requireNonNull(channelsApi).getChannel(channelId, List.of("state"));
+        return requireNonNull(channelsApi).getChannel(channelId, STATE_INCLUDE);
     }
 
     @Override
     public void dispose() {
+        initializing = true;
         logger = LoggerFactory.getLogger(CloudDevice.class);
+        var local = initialization;
+        if (local != null) {
+            local.cancel(true);
+            initialization = null;
+        }
+        channelMetadata.clear();
+        pendingConfirmations.values().forEach(PendingConfirmation::cancel);
+        pendingConfirmations.clear();
         super.dispose();
     }
+
+    private static final class PendingConfirmation {
+        @Nullable
+        private final State expectedState;
+
+        @Nullable
+        private volatile ScheduledFuture<?> future;
+
+        private PendingConfirmation(@Nullable State expectedState) {
+            this.expectedState = expectedState;
+        }
+
+        private void cancel() {
+            var future = this.future;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
 }
@@ -0,0 +1,63 @@
+package pl.grzeslowski.openhab.supla.internal.cloud.handler;
+
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toUnmodifiableMap;
+import static pl.grzeslowski.openhab.supla.internal.Localization.text;
+
+import io.swagger.client.model.Channel;
+import io.swagger.client.model.Device;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import pl.grzeslowski.openhab.supla.internal.cloud.api.ChannelsCloudApi;
+import pl.grzeslowski.openhab.supla.internal.cloud.api.IoDevicesCloudApi;
+
+/**
+ * State of all IO devices and channels from Supla Cloud, fetched with one {@code getIoDevices} and one
+ * {@code getChannels} call, indexed by ID.
+ *
+ * <p>Devices come with their channels, so {@link CloudDevice} can initialize from the snapshot without asking Supla Cloud
+ * about itself.
+ *
+ * @param restored {@code true} when the snapshot was read from {@link CloudSnapshotStore} and not fetched from Supla
+ *     Cloud since the bridge started
+ */
+@NonNullByDefault
+record CloudSnapshot(
+        Map<Integer, Device> devices, Map<Integer, Channel> channels, Instant fetchedAt, boolean restored) {
+    static final List<String> DEVICES_INCLUDE = List.of("channels", "connected");
+    static final List<String> CHANNELS_INCLUDE = List.of("state");
+    /** {@code getIoDevices} and {@code getChannels} */
+    static final int API_CALLS_PER_FETCH = 2;
+
+    static CloudSnapshot fetch(IoDevicesCloudApi ioDevicesCloudApi, ChannelsCloudApi channelsCloudApi)
+            throws Exception {
+        // fetch* bypass stale values of the cache; the snapshot is the polled state and it must be current
+        var devices = ioDevicesCloudApi.fetchIoDevices(DEVICES_INCLUDE);
+        var channels = channelsCloudApi.fetchChannels(CHANNELS_INCLUDE);
+        return new CloudSnapshot(
+                devices.stream().collect(toUnmodifiableMap(Device::getId, identity(), (first, __) -> first)),
+                channels.stream().collect(toUnmodifiableMap(Channel::getId, identity(), (first, __) -> first)),
+                Instant.now(),
+                false);
+    }
+
+    @Nullable
+    Device findDevice(int id) {
+        return devices.get(id);
+    }
+
+    @Nullable
+    Channel findChannel(int id) {
+        return channels.get(id);
+    }
+
+    /** @return status description telling how old the data is, for things that show this snapshot */
+    String describeAge(Instant now) {
+        var minutes = Math.max(Duration.between(fetchedAt, now).toMinutes(), 0);
+        return text("supla.online.snapshot-age", minutes, fetchedAt);
+    }
+}
@@ -0,0 +1,93 @@
+package pl.grzeslowski.openhab.supla.internal.cloud.handler;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.function.Function.identity;
+import static java.util.stream.Collectors.toUnmodifiableMap;
+import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.BINDING_ID;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import io.swagger.client.JSON;
+import io.swagger.client.model.Channel;
+import io.swagger.client.model.Device;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.OpenHAB;
+import org.openhab.core.thing.ThingUID;
+
+/**
+ * Keeps the last {@link CloudSnapshot} of a cloud bridge on disk, so cloud devices can start with their channels and
+ * last known states when Supla Cloud is slow or unreachable.
+ *
+ * <p>The snapshot is stored as gzipped JSON of the Supla Cloud models; it is written to a temporary file first and then
+ * moved, so a crash while writing never leaves a broken snapshot behind.
+ */
+@NonNullByDefault
+final class CloudSnapshotStore {
+    private final Gson gson = new JSON().getGson();
+    private final Path file;
+
+    CloudSnapshotStore(Path file) {
+        this.file = file;
+    }
+
+    /** @return {@code $OPENHAB_USERDATA/supla/cloud-snapshot-<bridge ID>.json.gz} */
+    static Path defaultFile(ThingUID bridgeUID) {
+        return Path.of(OpenHAB.getUserDataFolder(), BINDING_ID, "cloud-snapshot-" + bridgeUID.getId() + ".json.gz");
+    }
+
+    void save(CloudSnapshot snapshot) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        var stored = new StoredSnapshot(
+                snapshot.fetchedAt().toEpochMilli(),
+                List.copyOf(snapshot.devices().values()),
+                List.copyOf(snapshot.channels().values()));
+        var temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (var writer = new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(temporary)), UTF_8)) {
+            gson.toJson(stored, writer);
+        }
+        Files.move(temporary, file, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    /**
+     * @return snapshot marked as {@link CloudSnapshot#restored() restored} or {@code null} if none was saved yet
+     */
+    @Nullable
+    CloudSnapshot load() throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        StoredSnapshot stored;
+        try (var reader = new InputStreamReader(new GZIPInputStream(Files.newInputStream(file)), UTF_8)) {
+            stored = gson.fromJson(reader, StoredSnapshot.class);
+        } catch (JsonParseException e) {
+            throw new IOException("Cannot parse snapshot " + file, e);
+        }
+        if (stored == null || stored.devices() == null || stored.channels() == null) {
+            throw new IOException("Snapshot " + file + " is empty");
+        }
+        return new CloudSnapshot(
+                stored.devices().stream().collect(toUnmodifiableMap(Device::getId, identity(), (first, __) -> first)),
+                stored.channels().stream().collect(toUnmodifiableMap(Channel::getId, identity(), (first, __) -> first)),
+                Instant.ofEpochMilli(stored.fetchedAt()),
+                true);
+    }
+
+    /** Deletes saved snapshot, if there is any */
+    void delete() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private record StoredSnapshot(long fetchedAt, List<Device> devices, List<Channel> channels) {}
+}
@@ -0,0 +1,50 @@
+package pl.grzeslowski.openhab.supla.internal.cloud.handler;
+
+import java.time.Duration;
+import java.time.Instant;
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Slows refreshes of cloud devices down to {@code sweepInterval} while Supla Cloud pushes states to the webhook, so
+ * refreshes only sweep what webhooks missed.
+ *
+ * <p>When no webhook arrived for {@code quietPeriod} (i.e. the webhook was removed in Supla Cloud or openHAB is not
+ * reachable anymore), refreshes go back to the adaptive interval.
+ */
+@NonNullByDefault
+final class WebhookRefreshInterval {
+    private final Duration sweepInterval;
+    private final Duration quietPeriod;
+
+    @Nullable
+    private volatile Instant lastWebhookAt;
+
+    WebhookRefreshInterval(Duration sweepInterval, Duration quietPeriod) {
+        if (sweepInterval.isNegative() || sweepInterval.isZero()) {
+            throw new IllegalArgumentException("sweepInterval has to be positive! sweepInterval=" + sweepInterval);
+        }
+        if (quietPeriod.isNegative() || quietPeriod.isZero()) {
+            throw new IllegalArgumentException("quietPeriod has to be positive! quietPeriod=" + quietPeriod);
+        }
+        this.sweepInterval = sweepInterval;
+        this.quietPeriod = quietPeriod;
+    }
+
+    void webhookReceived(Instant now) {
+        lastWebhookAt = now;
+    }
+
+    /**
+     * @param adaptiveDelay delay computed from the API limits
+     * @return {@code sweepInterval} if webhooks are coming and it is longer than {@code adaptiveDelay}, otherwise
+     *     {@code adaptiveDelay}
+     */
+    Duration next(Duration adaptiveDelay, Instant now) {
+        var last = lastWebhookAt;
+        if (last == null || Duration.between(last, now).compareTo(quietPeriod) > 0) {
+            return adaptiveDelay;
+        }
+        return sweepInterval.compareTo(adaptiveDelay) > 0 ? sweepInterval : adaptiveDelay;
+    }
+}
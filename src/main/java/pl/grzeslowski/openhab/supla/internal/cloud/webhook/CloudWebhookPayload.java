@@ -0,0 +1,21 @@
+package pl.grzeslowski.openhab.supla.internal.cloud.webhook;
+
+import io.swagger.client.model.ChannelState;
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * State change of one channel that Supla Cloud pushed to the webhook, i.e.
+ *
+ * <pre>{@code
+ * {"userShortUniqueId": "abc", "channelId": 123, "channelFunction": "LIGHTSWITCH", "timestamp": 1570437553,
+ *  "state": {"on": true, "connected": true}}
+ * }</pre>
+ *
+ * @param channelFunction function of the channel as Supla Cloud sees it, only used for logging
+ * @param timestamp epoch seconds when the state changed
+ * @param state the same state that {@code GET /channels/{id}?include=state} returns
+ */
+@NonNullByDefault
+public record CloudWebhookPayload(
+        int channelId, @Nullable String channelFunction, long timestamp, ChannelState state) {}
@@ -0,0 +1,109 @@
+package pl.grzeslowski.openhab.supla.internal.cloud.webhook;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import io.swagger.client.model.ChannelState;
+import java.security.MessageDigest;
+import java.util.function.Consumer;
+import lombok.Getter;
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Checks and parses state webhooks that Supla Cloud sends for one cloud bridge.
+ *
+ * <p>Supla Cloud sends the access token that was given when the webhook was registered as {@code Authorization:
+ * Bearer <token>}, so only requests with the configured token are accepted. It does not depend on the servlet API, the
+ * servlet only passes the header and the body.
+ */
+@NonNullByDefault
+public final class CloudWebhookReceiver {
+    /** Payloads are a few hundred bytes; anything bigger is not a state webhook. */
+    public static final int MAX_PAYLOAD_LENGTH = 64 * 1024;
+
+    private static final String BEARER = "Bearer ";
+
+    private final Logger logger = LoggerFactory.getLogger(CloudWebhookReceiver.class);
+    private final Gson gson = new Gson();
+    private final byte[] token;
+    private final Consumer<CloudWebhookPayload> listener;
+
+    public CloudWebhookReceiver(String token, Consumer<CloudWebhookPayload> listener) {
+        if (token.isBlank()) {
+            throw new IllegalArgumentException("token cannot be blank!");
+        }
+        this.token = token.getBytes(UTF_8);
+        this.listener = listener;
+    }
+
+    public Response receive(@Nullable String authorization, String body) {
+        if (!authorized(authorization)) {
+            logger.debug("Rejecting webhook with wrong token");
+            return Response.UNAUTHORIZED;
+        }
+        if (body.length() > MAX_PAYLOAD_LENGTH) {
+            logger.debug("Rejecting webhook with {} characters", body.length());
+            return Response.PAYLOAD_TOO_LARGE;
+        }
+        CloudWebhookPayload payload;
+        try {
+            payload = parse(body);
+        } catch (JsonParseException | IllegalArgumentException e) {
+            logger.debug("Rejecting webhook that cannot be parsed, body={}", body, e);
+            return Response.BAD_REQUEST;
+        }
+        logger.trace("Received webhook {}", payload);
+        listener.accept(payload);
+        return Response.ACCEPTED;
+    }
+
+    private boolean authorized(@Nullable String authorization) {
+        if (authorization == null || !authorization.startsWith(BEARER)) {
+            return false;
+        }
+        var given = authorization.substring(BEARER.length()).trim().getBytes(UTF_8);
+        // constant time, so the token cannot be guessed byte by byte
+        return MessageDigest.isEqual(token, given);
+    }
+
+    private CloudWebhookPayload parse(String body) {
+        var json = gson.fromJson(body, JsonObject.class);
+        if (json == null) {
+            throw new IllegalArgumentException("Body is empty");
+        }
+        var channelId = json.get("channelId");
+        if (channelId == null || !channelId.isJsonPrimitive()) {
+            throw new IllegalArgumentException("There is no channelId");
+        }
+        var state = json.get("state");
+        if (state == null || !state.isJsonObject()) {
+            throw new IllegalArgumentException("There is no state");
+        }
+        var channelFunction = json.get("channelFunction");
+        var timestamp = json.get("timestamp");
+        return new CloudWebhookPayload(
+                channelId.getAsInt(),
+                channelFunction != null && channelFunction.isJsonPrimitive() ? channelFunction.getAsString() : null,
+                timestamp != null && timestamp.isJsonPrimitive() ? timestamp.getAsLong() : 0,
+                gson.fromJson(state, ChannelState.class));
+    }
+
+    @Getter
+    public enum Response {
+        ACCEPTED(204),
+        BAD_REQUEST(400),
+        UNAUTHORIZED(401),
+        PAYLOAD_TOO_LARGE(413);
+
+        private final int status;
+
+        Response(int status) {
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package pl.grzeslowski.openhab.supla.internal.cloud.webhook;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
+import static javax.servlet.http.HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE;
+import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.BINDING_ID;
+import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.SUPLA_CLOUD_SERVER_TYPE;
+
+import java.io.IOException;
+import java.io.Serial;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.thing.ThingRegistry;
+import org.openhab.core.thing.ThingUID;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.http.HttpService;
+import org.osgi.service.http.NamespaceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.grzeslowski.openhab.supla.internal.cloud.handler.CloudBridgeHandler;
+
+/**
+ * Receives state webhooks from Supla Cloud at {@code /supla/cloud-webhook/<bridge ID>} and passes them to the
+ * {@link CloudWebhookReceiver} of that cloud bridge.
+ */
+@NonNullByDefault
+@Component(immediate = true)
+public class CloudWebhookServlet extends HttpServlet {
+    public static final String PATH = "/" + BINDING_ID + "/cloud-webhook";
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private final transient Logger logger = LoggerFactory.getLogger(CloudWebhookServlet.class);
+    private final transient HttpService httpService;
+    private final transient ThingRegistry thingRegistry;
+
+    @Activate
+    public CloudWebhookServlet(@Reference HttpService httpService, @Reference ThingRegistry thingRegistry) {
+        this.httpService = httpService;
+        this.thingRegistry = thingRegistry;
+        try {
+            httpService.registerServlet(PATH, this, null, httpService.createDefaultHttpContext());
+            logger.debug("Registered Supla Cloud webhook at {}", PATH);
+        } catch (ServletException | NamespaceException e) {
+            logger.error("Cannot register Supla Cloud webhook at {}", PATH, e);
+        }
+    }
+
+    @Deactivate
+    public void deactivate() {
+        try {
+            httpService.unregister(PATH);
+        } catch (IllegalArgumentException e) {
+            logger.debug("Supla Cloud webhook was not registered", e);
+        }
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        var receiver = findReceiver(request.getPathInfo());
+        if (receiver == null) {
+            response.sendError(SC_NOT_FOUND);
+            return;
+        }
+        byte[] body;
+        try (var inputStream = request.getInputStream()) {
+            body = inputStream.readNBytes(CloudWebhookReceiver.MAX_PAYLOAD_LENGTH + 1);
+        }
+        if (body.length > CloudWebhookReceiver.MAX_PAYLOAD_LENGTH) {
+            response.sendError(SC_REQUEST_ENTITY_TOO_LARGE);
+            return;
+        }
+        var result = receiver.receive(request.getHeader("Authorization"), new String(body, UTF_8));
+        response.setStatus(result.getStatus());
+    }
+
+    @Nullable
+    private CloudWebhookReceiver findReceiver(@Nullable String pathInfo) {
+        if (pathInfo == null) {
+            return null;
+        }
+        var bridgeId = pathInfo.startsWith("/") ? pathInfo.substring(1) : pathInfo;
+        ThingUID thingUID;
+        try {
+            thingUID = new ThingUID(SUPLA_CLOUD_SERVER_TYPE, bridgeId);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        var thing = thingRegistry.get(thingUID);
+        if (thing == null || !(thing.getHandler() instanceof CloudBridgeHandler bridgeHandler)) {
+            return null;
+        }
+        // bridge without webhook token does not accept webhooks
+        return bridgeHandler.findWebhookReceiver();
+    }
+}
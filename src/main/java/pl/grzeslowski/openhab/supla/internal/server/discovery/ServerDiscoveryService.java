@@ -6,12 +6,13 @@ import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.Server
 import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.ServerDevicesProperties.SERVER_NAME_PROPERTY;
 import static pl.grzeslowski.openhab.supla.internal.server.ByteArrayToHex.bytesToHex;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.atomic.AtomicBoolean;
-import lombok.val;
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
 import org.openhab.core.config.discovery.AbstractDiscoveryService;
@@ -25,17 +26,36 @@ import pl.grzeslowski.openhab.supla.internal.GuidLogger;
 import pl.grzeslowski.openhab.supla.internal.server.traits.RegisterDeviceTrait;
 import pl.grzeslowski.openhab.supla.internal.server.traits.RegisterEmailDeviceTrait;
 
+/**
+ * Publishes devices that connect to the server, but do not have a thing yet.
+ *
+ * <p>Results are indexed by thing ID. A device that keeps reconnecting is published again only after
+ * {@link #DEBOUNCE}, results expire after {@link #RESULT_TTL} and at most {@link #MAX_RESULTS} are kept; the oldest one
+ * is removed from the inbox when the limit is reached.
+ */
 @NonNullByDefault
 public class ServerDiscoveryService extends AbstractDiscoveryService {
+    static final Duration DEBOUNCE = Duration.ofSeconds(DEVICE_REGISTER_MAX_DELAY);
+    static final Duration RESULT_TTL = Duration.ofHours(1);
+    static final int MAX_RESULTS = 256;
+
     private final Logger logger;
     private final ThingUID bridgeThingUID;
-    private final List<DiscoveryResult> discoveryResults = Collections.synchronizedList(new ArrayList<>());
+    private final Clock clock;
+    /** Insertion ordered, so the first entry is the oldest one. Guarded by itself. */
+    private final Map<String, Entry> discoveryResults = new LinkedHashMap<>();
+
     private final AtomicBoolean scanning = new AtomicBoolean();
 
     public ServerDiscoveryService(org.openhab.core.thing.ThingUID bridgeThingUID) {
+        this(bridgeThingUID, Clock.systemUTC());
+    }
+
+    ServerDiscoveryService(ThingUID bridgeThingUID, Clock clock) {
         super(SUPPORTED_THING_TYPES_UIDS, DEVICE_REGISTER_MAX_DELAY * 2, false);
         logger = LoggerFactory.getLogger(ServerDiscoveryService.class.getName() + "." + bridgeThingUID.getId());
         this.bridgeThingUID = bridgeThingUID;
+        this.clock = clock;
     }
 
     @Override
@@ -43,27 +63,70 @@ public class ServerDiscoveryService extends AbstractDiscoveryService {
 
     public void addDevice(RegisterDeviceTrait registerDeviceTrait) {
         logger.info("Registering device: {}", registerDeviceTrait);
-        var discoveryResult = buildDiscoveryResult(registerDeviceTrait);
-        discoveryResults.add(discoveryResult);
-        thingDiscovered(discoveryResult);
+        publish(buildDiscoveryResult(registerDeviceTrait));
     }
 
     public void addSubDevice(int id, String name) {
         logger.info("Registering sub device: {}/{}", name, id);
-        var discoveryResult = buildDiscoveryResult(id, name);
-        discoveryResults.add(discoveryResult);
+        publish(buildDiscoveryResult(id, name));
+    }
+
+    private void publish(DiscoveryResult discoveryResult) {
+        var id = discoveryResult.getThingUID().getId();
+        var now = clock.instant();
+        synchronized (discoveryResults) {
+            evictExpired(now);
+            var existing = discoveryResults.get(id);
+            if (existing != null
+                    && existing.sameAs(discoveryResult)
+                    && now.isBefore(existing.publishedAt().plus(DEBOUNCE))) {
+                logger.debug("Device {} was already discovered at {}, skipping", id, existing.publishedAt());
+                return;
+            }
+            // re-insert, so the entry moves to the end of eviction order
+            discoveryResults.remove(id);
+            discoveryResults.put(id, new Entry(discoveryResult, now));
+            evictOverLimit();
+        }
         thingDiscovered(discoveryResult);
     }
 
+    private void evictExpired(Instant now) {
+        var iterator = discoveryResults.values().iterator();
+        while (iterator.hasNext()) {
+            var entry = iterator.next();
+            if (now.isBefore(entry.publishedAt().plus(RESULT_TTL))) {
+                // entries are ordered by publish time
+                return;
+            }
+            logger.debug("Discovery result {} expired", entry.result().getThingUID());
+            iterator.remove();
+        }
+    }
+
+    private void evictOverLimit() {
+        var iterator = discoveryResults.values().iterator();
+        while (discoveryResults.size() > MAX_RESULTS && iterator.hasNext()) {
+            var eldest = iterator.next();
+            iterator.remove();
+            logger.warn(
+                    "There are more than {} discovered devices, removing the oldest one {}",
+                    MAX_RESULTS,
+                    eldest.result().getThingUID());
+            thingRemoved(eldest.result().getThingUID());
+        }
+    }
+
     @GuidLogger.GuidLogged
     public void removeDevice(String guid) {
         attachGuid(guid, () -> {
-            val result = discoveryResults.stream()
-                    .filter(r -> r.getThingUID().getId().equals(guid))
-                    .findAny();
-            if (result.isPresent()) {
+            Entry entry;
+            synchronized (discoveryResults) {
+                entry = discoveryResults.remove(guid);
+            }
+            if (entry != null) {
                 logger.info("Removing device: {}", guid);
-                thingRemoved(result.get().getThingUID());
+                thingRemoved(entry.result().getThingUID());
             } else {
                 logger.warn("Failed to remove device: {}", guid);
             }
@@ -88,11 +151,12 @@ public class ServerDiscoveryService extends AbstractDiscoveryService {
             builder.withProperty(CONFIG_AUTH_PROPERTY, bytesToHex(authKey));
             builder.withProperty(SERVER_NAME_PROPERTY, serverName);
         }
-        return builder.build();
+        return builder.withTTL(RESULT_TTL.toSeconds()).build();
     }
 
     private DiscoveryResult buildDiscoveryResult(int id, String name) {
         return buildDiscoveryResult(SUPLA_SUB_DEVICE_ID, String.valueOf(id), name + " #" + id, SUPLA_SUB_DEVICE_TYPE)
+                .withTTL(RESULT_TTL.toSeconds())
                 .build();
     }
 
@@ -113,4 +177,11 @@ public class ServerDiscoveryService extends AbstractDiscoveryService {
         }
         return name;
     }
+
+    private record Entry(DiscoveryResult result, Instant publishedAt) {
+        boolean sameAs(DiscoveryResult other) {
+            return Objects.equals(result.getLabel(), other.getLabel())
+                    && Objects.equals(result.getProperties(), other.getProperties());
+        }
+    }
 }
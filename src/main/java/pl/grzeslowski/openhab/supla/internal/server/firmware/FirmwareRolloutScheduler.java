@@ -0,0 +1,327 @@
+package pl.grzeslowski.openhab.supla.internal.server.firmware;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static pl.grzeslowski.openhab.supla.internal.server.firmware.FirmwareRolloutScheduler.DeviceState.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Consumer;
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+
+/**
+ * Rolls a firmware update out to a set of devices in waves.
+ *
+ * <p>Each wave triggers OTA on at most {@link Settings#maxConcurrentUpdates()} devices. A device counts as updated once
+ * it registers again with a {@code softVer} different from the one it had when the update was triggered. The next wave
+ * starts {@link Settings#waveDelay()} after every device from the previous one finished, so the whole fleet does not
+ * download and reboot at the same time. The rollout is aborted when the failure rate of finished devices exceeds
+ * {@link Settings#maxFailureRate()}.
+ */
+@NonNullByDefault
+public class FirmwareRolloutScheduler implements AutoCloseable {
+    private final Logger logger;
+    private final ScheduledExecutorService executor;
+    private final Devices devices;
+    private final Consumer<Progress> progressListener;
+
+    private final Map<String, DeviceRollout> rollouts = new LinkedHashMap<>();
+    private Settings settings = Settings.DEFAULT;
+    private Status status = Status.IDLE;
+    private int wave;
+    private boolean waveRunning;
+
+    @Nullable
+    private Instant nextWaveAt;
+
+    @Nullable
+    private ScheduledFuture<?> tickSchedule;
+
+    public FirmwareRolloutScheduler(
+            Logger logger, ScheduledExecutorService executor, Devices devices, Consumer<Progress> progressListener) {
+        this.logger = logger;
+        this.executor = executor;
+        this.devices = devices;
+        this.progressListener = progressListener;
+    }
+
+    public synchronized void start(Collection<String> guids, Settings settings) {
+        if (status == Status.RUNNING) {
+            throw new IllegalStateException("Firmware rollout is already running! " + progress());
+        }
+        var distinctGuids = guids.stream()
+                .map(String::trim)
+                .filter(guid -> !guid.isEmpty())
+                .distinct()
+                .toList();
+        if (distinctGuids.isEmpty()) {
+            throw new IllegalArgumentException("There are no devices to update!");
+        }
+        rollouts.clear();
+        distinctGuids.forEach(guid -> rollouts.put(guid, new DeviceRollout(guid)));
+        this.settings = settings;
+        status = Status.RUNNING;
+        wave = 0;
+        waveRunning = false;
+        nextWaveAt = Instant.now();
+        logger.info("Starting firmware rollout of {} devices with {}", rollouts.size(), settings);
+        tickSchedule = executor.scheduleWithFixedDelay(
+                this::tick, 0, settings.checkInterval().toMillis(), MILLISECONDS);
+        publish();
+    }
+
+    public synchronized void abort() {
+        if (status != Status.RUNNING) {
+            return;
+        }
+        logger.info("Aborting firmware rollout. {}", progress());
+        finish(Status.ABORTED);
+    }
+
+    public synchronized Progress progress() {
+        return new Progress(
+                status, wave, count(PENDING), count(IN_PROGRESS), count(UPDATED), count(FAILED), count(SKIPPED));
+    }
+
+    void tick() {
+        try {
+            List<DeviceRollout> nextWave;
+            synchronized (this) {
+                if (status != Status.RUNNING) {
+                    return;
+                }
+                var now = Instant.now();
+                checkInProgress(now);
+                if (failureRateExceeded()) {
+                    logger.warn(
+                            "Firmware rollout failure rate exceeded {}%. {}",
+                            Math.round(settings.maxFailureRate() * 100), progress());
+                    finish(Status.ABORTED);
+                    return;
+                }
+                if (count(PENDING) == 0 && count(IN_PROGRESS) == 0) {
+                    logger.info("Firmware rollout finished. {}", progress());
+                    finish(Status.COMPLETED);
+                    return;
+                }
+                nextWave = startNextWave(now);
+            }
+            nextWave.forEach(this::trigger);
+            synchronized (this) {
+                publish();
+            }
+        } catch (RuntimeException ex) {
+            logger.warn("Error occurred in firmware rollout", ex);
+        }
+    }
+
+    private void checkInProgress(Instant now) {
+        for (var rollout : rollouts.values()) {
+            if (rollout.state != IN_PROGRESS || rollout.startVersion == null) {
+                continue;
+            }
+            var version = devices.findSoftVersion(rollout.guid);
+            if (version != null && !version.equals(rollout.startVersion)) {
+                logger.info("Device {} updated from {} to {}", rollout.guid, rollout.startVersion, version);
+                rollout.state = UPDATED;
+            } else if (now.isAfter(requireNonNull(rollout.startedAt).plus(settings.registrationTimeout()))) {
+                logger.warn(
+                        "Device {} did not register with new firmware in {}. softVer={}",
+                        rollout.guid,
+                        settings.registrationTimeout(),
+                        version);
+                rollout.state = FAILED;
+            }
+        }
+        if (waveRunning && count(IN_PROGRESS) == 0) {
+            waveRunning = false;
+            nextWaveAt = now.plus(settings.waveDelay());
+        }
+    }
+
+    private boolean failureRateExceeded() {
+        var failed = count(FAILED);
+        if (failed == 0) {
+            return false;
+        }
+        var finished = failed + count(UPDATED);
+        // do not judge the rollout by the first device that failed, wait for at least one full wave
+        if (finished < Math.min(settings.maxConcurrentUpdates(), rollouts.size())) {
+            return false;
+        }
+        return (double) failed / finished > settings.maxFailureRate();
+    }
+
+    private List<DeviceRollout> startNextWave(Instant now) {
+        var localNextWaveAt = nextWaveAt;
+        if (waveRunning || localNextWaveAt == null || now.isBefore(localNextWaveAt)) {
+            return List.of();
+        }
+        var nextWave = new ArrayList<DeviceRollout>(settings.maxConcurrentUpdates());
+        for (var rollout : rollouts.values()) {
+            if (nextWave.size() >= settings.maxConcurrentUpdates()) {
+                break;
+            }
+            if (rollout.state == PENDING) {
+                rollout.state = IN_PROGRESS;
+                rollout.startedAt = now;
+                nextWave.add(rollout);
+            }
+        }
+        if (!nextWave.isEmpty()) {
+            wave++;
+            waveRunning = true;
+            nextWaveAt = null;
+            logger.info(
+                    "Starting firmware rollout wave {} for devices {}",
+                    wave,
+                    nextWave.stream().map(rollout -> rollout.guid).toList());
+        }
+        return nextWave;
+    }
+
+    private void trigger(DeviceRollout rollout) {
+        var version = devices.findSoftVersion(rollout.guid);
+        if (version == null) {
+            markFailed(rollout, "device is not connected", null);
+            return;
+        }
+        try {
+            devices.startFirmwareUpdate(rollout.guid);
+            synchronized (this) {
+                rollout.startVersion = version;
+                rollout.startedAt = Instant.now();
+            }
+            logger.debug("Triggered firmware update on device {} (softVer={})", rollout.guid, version);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            markFailed(rollout, "interrupted", ex);
+        } catch (Exception ex) {
+            markFailed(rollout, ex.getLocalizedMessage(), ex);
+        }
+    }
+
+    private synchronized void markFailed(DeviceRollout rollout, @Nullable String reason, @Nullable Exception ex) {
+        logger.warn("Could not start firmware update on device {}: {}", rollout.guid, reason, ex);
+        rollout.state = FAILED;
+    }
+
+    private void finish(Status finalStatus) {
+        status = finalStatus;
+        rollouts.values().stream()
+                .filter(rollout -> rollout.state == PENDING)
+                .forEach(rollout -> rollout.state = SKIPPED);
+        // nobody will check these devices anymore, so they did not finish the update within the rollout
+        rollouts.values().stream()
+                .filter(rollout -> rollout.state == IN_PROGRESS)
+                .forEach(rollout -> rollout.state = FAILED);
+        var localTickSchedule = tickSchedule;
+        tickSchedule = null;
+        if (localTickSchedule != null) {
+            localTickSchedule.cancel(false);
+        }
+        publish();
+    }
+
+    private int count(DeviceState state) {
+        return (int) rollouts.values().stream()
+                .filter(rollout -> rollout.state == state)
+                .count();
+    }
+
+    private void publish() {
+        var progress = progress();
+        try {
+            progressListener.accept(progress);
+        } catch (RuntimeException ex) {
+            logger.warn("Could not publish firmware rollout progress {}", progress, ex);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        abort();
+    }
+
+    public interface Devices {
+        /**
+         * @return {@code softVer} of the connected device or {@code null} if device is not connected
+         */
+        @Nullable
+        String findSoftVersion(String guid);
+
+        void startFirmwareUpdate(String guid) throws Exception;
+    }
+
+    public record Settings(
+            int maxConcurrentUpdates,
+            double maxFailureRate,
+            Duration registrationTimeout,
+            Duration waveDelay,
+            Duration checkInterval) {
+        public static final Settings DEFAULT =
+                new Settings(3, 0.2, Duration.ofMinutes(10), Duration.ofSeconds(30), Duration.ofSeconds(5));
+
+        public Settings {
+            if (maxConcurrentUpdates <= 0) {
+                throw new IllegalArgumentException(
+                        "maxConcurrentUpdates has to be grater than 0. Was " + maxConcurrentUpdates);
+            }
+            if (maxFailureRate < 0 || maxFailureRate > 1) {
+                throw new IllegalArgumentException("maxFailureRate has to be between 0 and 1. Was " + maxFailureRate);
+            }
+            if (registrationTimeout.compareTo(Duration.ZERO) <= 0) {
+                throw new IllegalArgumentException(
+                        "registrationTimeout has to be grater than 0. Was " + registrationTimeout);
+            }
+            if (waveDelay.isNegative()) {
+                throw new IllegalArgumentException("waveDelay cannot be negative. Was " + waveDelay);
+            }
+            if (checkInterval.compareTo(Duration.ZERO) <= 0) {
+                throw new IllegalArgumentException("checkInterval has to be grater than 0. Was " + checkInterval);
+            }
+        }
+    }
+
+    public record Progress(
+            Status status, int wave, int pending, int inProgress, int updated, int failed, int skipped) {}
+
+    public enum Status {
+        IDLE,
+        RUNNING,
+        COMPLETED,
+        ABORTED
+    }
+
+    enum DeviceState {
+        PENDING,
+        IN_PROGRESS,
+        UPDATED,
+        FAILED,
+        SKIPPED
+    }
+
+    private static final class DeviceRollout {
+        private final String guid;
+        private DeviceState state = PENDING;
+
+        @Nullable
+        private String startVersion;
+
+        @Nullable
+        private Instant startedAt;
+
+        private DeviceRollout(String guid) {
+            this.guid = guid;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package pl.grzeslowski.openhab.supla.internal.server.handler;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static pl.grzeslowski.jsupla.protocol.api.CalCfgResult.SUPLA_CALCFG_RESULT_DONE;
+import static pl.grzeslowski.jsupla.protocol.api.DeviceFlag.SUPLA_DEVICE_FLAG_AUTOMATIC_FIRMWARE_UPDATE_SUPPORTED;
+import static pl.grzeslowski.openhab.supla.internal.server.handler.trait.ServerDevice.SENDER_ID;
+
+import java.util.concurrent.TimeoutException;
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.thing.ThingStatus;
+import pl.grzeslowski.jsupla.protocol.api.CalCfgCommand;
+import pl.grzeslowski.jsupla.protocol.api.structs.sd.DeviceCalCfgRequest;
+
+/**
+ * Sends commands addressed to the whole device (not to one of its channels) and waits until the device accepts them.
+ * Used by rule actions and by the firmware rollout of the server bridge.
+ */
+@NonNullByDefault
+public final class DeviceCalCfgCommands {
+    private static final int NO_DATA_TYPE = 0;
+    private static final byte[] EMPTY_DATA = new byte[0];
+    private static final byte SUPER_USER_AUTHORIZED = 1;
+    private static final int NOT_BOUND_TO_CHANNEL = -1;
+
+    private DeviceCalCfgCommands() {}
+
+    /**
+     * @throws IllegalStateException if there is no handler or the device is not connected
+     * @throws IllegalArgumentException if the device does not support automatic firmware updates
+     */
+    public static ServerSuplaDeviceHandler requireOtaReady(@Nullable ServerSuplaDeviceHandler handler) {
+        if (handler == null) {
+            throw new IllegalStateException("Thing handler is null");
+        }
+        if (handler.getThing().getStatus() == ThingStatus.OFFLINE
+                || handler.getWriter().get() == null) {
+            throw new IllegalStateException("Device is offline");
+        }
+
+        var suplaDevice = handler.getSuplaDevice();
+        if (suplaDevice == null) {
+            throw new IllegalStateException("There is no registered device!");
+        }
+        if (!suplaDevice.flags().contains(SUPLA_DEVICE_FLAG_AUTOMATIC_FIRMWARE_UPDATE_SUPPORTED)
+                || !handler.supportsAutomaticFirmwareUpdates()) {
+            throw new IllegalArgumentException("Device does not support automatic firmware updates");
+        }
+        return handler;
+    }
+
+    /**
+     * Sends {@code command} and waits for its result. Timeout is taken from the configuration of the device.
+     *
+     * @throws RuntimeException if the device rejected the command or answered for a different one
+     */
+    public static void send(ServerSuplaDeviceHandler handler, CalCfgCommand command, String commandName)
+            throws InterruptedException, TimeoutException {
+        var timeout =
+                switch (command) {
+                    case SUPLA_CALCFG_CMD_START_FIRMWARE_UPDATE ->
+                        handler.getConfiguration().getStartFirmwareUpdateActionTimeout();
+                    case SUPLA_CALCFG_CMD_START_SECURITY_UPDATE ->
+                        handler.getConfiguration().getStartSecurityUpdateActionTimeout();
+                    default -> handler.getConfiguration().getActionTimeout();
+                };
+        var writer = handler.getWriter().get();
+        if (writer == null) {
+            throw new IllegalStateException("There is no socket writer!");
+        }
+
+        var message = new DeviceCalCfgRequest(
+                SENDER_ID,
+                NOT_BOUND_TO_CHANNEL,
+                command.getValue(),
+                SUPER_USER_AUTHORIZED,
+                NO_DATA_TYPE,
+                EMPTY_DATA.length,
+                EMPTY_DATA);
+        handler.clearDeviceCalCfgResult();
+        writer.write(message).await(timeout.toMillis(), MILLISECONDS);
+
+        var result = handler.listenForDeviceCalCfgResult(timeout.toMillis(), MILLISECONDS);
+        if (result.channelNumber() != NOT_BOUND_TO_CHANNEL) {
+            throw new RuntimeException("%s returned a different channel number! request=%s, result=%s"
+                    .formatted(commandName, message, result));
+        }
+        if (result.command() != command.getValue()) {
+            throw new RuntimeException(
+                    "%s returned a different command! request=%s, result=%s".formatted(commandName, message, result));
+        }
+        if (result.result() != SUPLA_CALCFG_RESULT_DONE.getValue()) {
+            throw new RuntimeException(
+                    "%s did not succeed! request=%s, result=%s".formatted(commandName, message, result));
+        }
+        handler.markOtaUpdateTriggered();
+    }
+}
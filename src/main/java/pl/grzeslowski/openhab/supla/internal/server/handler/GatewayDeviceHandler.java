@@ -8,15 +8,16 @@ import static pl.grzeslowski.jsupla.protocol.api.DeviceFlag.SUPLA_DEVICE_FLAG_CA
 import static pl.grzeslowski.jsupla.protocol.api.ProtocolHelpers.parseString;
 import static pl.grzeslowski.openhab.supla.internal.GuidLogger.attachGuid;
 import static pl.grzeslowski.openhab.supla.internal.Localization.text;
+import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.BINDING_ID;
 import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.GATEWAY_CONNECTED_DEVICES_CHANNEL_ID;
 import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.ServerDevicesProperties.*;
 import static pl.grzeslowski.openhab.supla.internal.server.ChannelUtil.findId;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.stream.Collectors;
 import lombok.Getter;
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
@@ -50,9 +51,17 @@ import pl.grzeslowski.openhab.supla.internal.server.traits.RegisterDeviceTrait;
 
 @NonNullByDefault
 public class GatewayDeviceHandler extends ServerSuplaDeviceHandler implements ServerBridge, ServerDevice {
+    private static final String SUB_DEVICES_THREAD_POOL_NAME = BINDING_ID + "-gateway-sub-devices";
     private final AtomicInteger numberOfConnectedDevices = new AtomicInteger();
     private final Map<Integer, SubDeviceHandler> childHandlers = Collections.synchronizedMap(new HashMap<>());
-    private Map<Integer, Integer> channelNumberToHandlerId = Map.of();
+    private volatile SubDeviceRoutingTable routingTable = SubDeviceRoutingTable.EMPTY;
+    /**
+     * Keeps messages of one sub device in order, while different sub devices are processed in parallel. Executors are
+     * created only in {@link #initChannels}, so messages for sub devices that are gone are dropped.
+     */
+    private final Map<Integer, SequentialExecutor> subDeviceExecutors = new ConcurrentHashMap<>();
+    /** Guarded by {@code childHandlers}; set on dispose and cleared when the gateway registers again */
+    private boolean disposed;
 
     @Getter
     @Nullable
@@ -102,12 +111,11 @@ public class GatewayDeviceHandler extends ServerSuplaDeviceHandler implements Se
         }
 
         channels = unmodifiableList(registerEntity.channels());
-        childHandlers.values().forEach(this::initChannels);
-        record NumberAndSubDeviceId(Integer number, Integer subDeviceId) {}
-        channelNumberToHandlerId = channels.stream()
-                .filter(c -> c.subDeviceId() != null)
-                .map(c -> new NumberAndSubDeviceId(c.number(), c.subDeviceId()))
-                .collect(Collectors.toMap(NumberAndSubDeviceId::number, NumberAndSubDeviceId::subDeviceId));
+        synchronized (childHandlers) {
+            disposed = false;
+            routingTable = SubDeviceRoutingTable.build(channels, childHandlers.values());
+            childHandlers.values().forEach(this::initChannels);
+        }
 
         if (!channels.isEmpty()) {
             var scheduledPool =
@@ -123,19 +131,33 @@ public class GatewayDeviceHandler extends ServerSuplaDeviceHandler implements Se
         }
     }
 
+    /** Has to be called while holding {@code childHandlers} */
     private void initChannels(SubDeviceHandler subDeviceHandler) {
-        var channels = this.channels.stream()
-                .filter(c -> c.subDeviceId() != null && c.subDeviceId().equals(subDeviceHandler.getSubDeviceId()))
-                .toList();
-        subDeviceHandler.setChannels(channels);
+        if (disposed) {
+            return;
+        }
+        var channels = routingTable.attach(subDeviceHandler);
+        subDeviceExecutors.computeIfAbsent(
+                subDeviceHandler.getSubDeviceId(),
+                id -> new SequentialExecutor(ThreadPoolManager.getPool(SUB_DEVICES_THREAD_POOL_NAME), logger));
+        dispatch(subDeviceHandler, () -> subDeviceHandler.setChannels(channels != null ? channels : List.of()));
+    }
+
+    private void dispatch(SubDeviceHandler subDeviceHandler, Runnable task) {
+        var executor = subDeviceExecutors.get(subDeviceHandler.getSubDeviceId());
+        if (executor == null) {
+            // sub device or the whole gateway was disposed
+            logger.debug("There is no executor for sub device {}, dropping task", subDeviceHandler.getSubDeviceId());
+            return;
+        }
+        var guid = findGuid();
+        executor.execute(() -> attachGuid(guid, task));
     }
 
     private void initServiceDiscovery(String name) {
         this.initServiceDiscoverySchedule.set(null);
         var childIds = childHandlers.keySet();
-        var discoveredIds = channels.stream()
-                .map(DeviceChannel::subDeviceId)
-                .filter(Objects::nonNull)
+        var discoveredIds = routingTable.subDeviceIds().stream()
                 .filter(i -> !childIds.contains(i))
                 .collect(toUnmodifiableSet());
         this.discoveredIds.addAll(discoveredIds);
@@ -190,14 +212,16 @@ public class GatewayDeviceHandler extends ServerSuplaDeviceHandler implements Se
                         existing,
                         subDeviceHandler);
             }
-            childHandlers.put(subDeviceId, subDeviceHandler);
+            synchronized (childHandlers) {
+                childHandlers.put(subDeviceId, subDeviceHandler);
+                if (!channels.isEmpty()) {
+                    initChannels(subDeviceHandler);
+                }
+            }
             if (discoveredIds.contains(subDeviceId)) {
                 discoveredIds.remove(subDeviceId);
                 serverDiscoveryService.removeSubDevice(subDeviceId);
             }
-            if (!channels.isEmpty()) {
-                initChannels(subDeviceHandler);
-            }
         });
     }
 
@@ -214,7 +238,14 @@ public class GatewayDeviceHandler extends ServerSuplaDeviceHandler implements Se
                 logger.warn("childHandlers do not contains sub device with ID {}!", subDeviceId);
                 return;
             }
-            childHandlers.remove(subDeviceId);
+            synchronized (childHandlers) {
+                childHandlers.remove(subDeviceId);
+                routingTable.detach(subDeviceHandler);
+                var executor = subDeviceExecutors.remove(subDeviceId);
+                if (executor != null) {
+                    executor.close();
+                }
+            }
         });
     }
 
@@ -249,6 +280,11 @@ public class GatewayDeviceHandler extends ServerSuplaDeviceHandler implements Se
                 schedule.cancel(true);
             }
         } // initServiceDiscoverySchedule
+        synchronized (childHandlers) {
+            disposed = true;
+            subDeviceExecutors.values().forEach(SequentialExecutor::close);
+            subDeviceExecutors.clear();
+        }
         super.dispose();
     }
 
@@ -256,13 +292,12 @@ public class GatewayDeviceHandler extends ServerSuplaDeviceHandler implements Se
     @Override
     public void consumeSuplaDeviceChannelExtendedValue(int channelNumber, ChannelType type, byte[] value) {
         attachGuid(findGuid(), () -> {
-            var optional = findId(channelNumber, null).flatMap(this::findSubDevice);
-            if (optional.isEmpty()) {
-                logger.warn("There is no channel number for ExtendedValue! value={}", value);
+            var subDevice = routingTable.findByChannelNumber(channelNumber);
+            if (subDevice == null) {
+                logger.warn("There is no sub device for ExtendedValue! channelNumber={}, type={}", channelNumber, type);
                 return;
             }
-            //            optional.ifPresent(sd -> sd.consumeSuplaDeviceChannelExtendedValue(channelNumber, type,
-            // value));
+            dispatch(subDevice, () -> subDevice.consumeSuplaDeviceChannelExtendedValue(channelNumber, type, value));
         });
     }
 
@@ -270,30 +305,43 @@ public class GatewayDeviceHandler extends ServerSuplaDeviceHandler implements Se
     @Override
     public void consumeSetCaption(SetCaption value) {
         attachGuid(findGuid(), () -> {
-            var optional = findId(value.id(), value.channelNumber()).flatMap(this::findSubDevice);
-            if (optional.isEmpty()) {
-                logger.warn("There is no channel number for SetCaption! value={}", value);
+            var subDevice = findId(value.id(), value.channelNumber())
+                    .map(routingTable::findByChannelNumber)
+                    .orElse(null);
+            if (subDevice == null) {
+                logger.warn("There is no sub device for SetCaption! value={}", value);
                 return;
             }
-            optional.ifPresent(sd -> sd.consumeSetCaption(value));
+            dispatch(subDevice, () -> subDevice.consumeSetCaption(value));
         });
     }
 
+    @GuidLogger.GuidLogged
     @Override
     public void consumeChannelState(ChannelState value) {
-        channelUtil.consumeChannelState(value);
+        attachGuid(findGuid(), () -> {
+            var subDevice = findId(value.channelId(), value.channelNumber())
+                    .map(routingTable::findByChannelNumber)
+                    .orElse(null);
+            if (subDevice == null) {
+                // gateway reports state of its own
+                channelUtil.consumeChannelState(value);
+                return;
+            }
+            dispatch(subDevice, () -> subDevice.consumeChannelState(value));
+        });
     }
 
     @GuidLogger.GuidLogged
     @Override
     public void consumeDeviceChannelValueTrait(DeviceChannelValue trait) {
         attachGuid(findGuid(), () -> {
-            var optional = findId(trait.channelNumber(), null).flatMap(this::findSubDevice);
-            if (optional.isEmpty()) {
-                logger.warn("There is no channel number for ChannelState! value={}", trait);
+            var subDevice = routingTable.findByChannelNumber(trait.channelNumber());
+            if (subDevice == null) {
+                logger.warn("There is no sub device for ChannelValue! value={}", trait);
                 return;
             }
-            optional.ifPresent(sd -> sd.consumeDeviceChannelValueTrait(trait));
+            dispatch(subDevice, () -> subDevice.consumeDeviceChannelValueTrait(trait));
         });
     }
 
@@ -305,42 +353,27 @@ public class GatewayDeviceHandler extends ServerSuplaDeviceHandler implements Se
         var productCode = parseString(value.productCode());
         var serialNumber = parseString(value.serialNumber());
 
-        findSubDevice(subDeviceId).ifPresent(subDeviceHandler -> {
-            var builder = subDeviceHandler.editThing();
-            builder.withLabel(name);
-            builder.withProperty(SOFT_VERSION_PROPERTY, softVer);
-            builder.withProperty(PRODUCT_CODE_PROPERTY, productCode);
-            builder.withProperty(SERIAL_NUMBER_PROPERTY, serialNumber);
-            subDeviceHandler.updateThing(builder.build());
-        });
-    }
-
-    private Optional<SubDeviceHandler> findSubDevice(Integer channelNumber) {
-        if (!channelNumberToHandlerId.containsKey(channelNumber)) {
-            return Optional.empty();
-        }
-        var handlerId = channelNumberToHandlerId.get(channelNumber);
-        if (!childHandlers.containsKey(handlerId)) {
-            return Optional.empty();
-        }
-        return Optional.of(childHandlers.get(handlerId));
+        Optional.ofNullable(childHandlers.get(subDeviceId))
+                .ifPresent(subDeviceHandler -> dispatch(subDeviceHandler, () -> {
+                    var builder = subDeviceHandler.editThing();
+                    builder.withLabel(name);
+                    builder.withProperty(SOFT_VERSION_PROPERTY, softVer);
+                    builder.withProperty(PRODUCT_CODE_PROPERTY, productCode);
+                    builder.withProperty(SERIAL_NUMBER_PROPERTY, serialNumber);
+                    subDeviceHandler.updateThing(builder.build());
+                }));
     }
 
     @GuidLogger.GuidLogged
     @Override
     public void consumeSuplaChannelNewValueResult(SuplaChannelNewValueResult value) {
         attachGuid(findGuid(), () -> {
-            var handlerId = channelNumberToHandlerId.get((int) value.channelNumber());
-            if (handlerId == null) {
-                // todo
-                return;
-            }
-            var handler = childHandlers.get(handlerId);
-            if (handler == null) {
-                // todo log
+            var subDevice = routingTable.findByChannelNumber(value.channelNumber());
+            if (subDevice == null) {
+                logger.warn("There is no sub device for ChannelNewValueResult! value={}", value);
                 return;
             }
-            handler.consumeSuplaChannelNewValueResult(value);
+            dispatch(subDevice, () -> subDevice.consumeSuplaChannelNewValueResult(value));
         });
     }
 
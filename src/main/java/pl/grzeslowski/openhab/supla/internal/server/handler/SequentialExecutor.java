@@ -0,0 +1,77 @@
+package pl.grzeslowski.openhab.supla.internal.server.handler;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.slf4j.Logger;
+
+/**
+ * Runs tasks one after another, in submission order, on a shared pool.
+ *
+ * <p>At most one task of this executor is running at any time, but many {@link SequentialExecutor}s can share the same
+ * delegate and run in parallel with each other.
+ *
+ * <p>After {@link #close()} tasks that are still queued are dropped and new ones are not accepted.
+ */
+@NonNullByDefault
+final class SequentialExecutor implements Executor, AutoCloseable {
+    private final Executor delegate;
+    private final Logger logger;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile boolean closed;
+
+    SequentialExecutor(Executor delegate, Logger logger) {
+        this.delegate = delegate;
+        this.logger = logger;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (closed) {
+            logger.debug("Executor is closed, dropping task");
+            return;
+        }
+        tasks.add(task);
+        schedule();
+    }
+
+    private void schedule() {
+        if (tasks.isEmpty() || !scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            delegate.execute(this::drain);
+        } catch (RejectedExecutionException ex) {
+            scheduled.set(false);
+            logger.warn("Cannot schedule {} tasks, dropping them", tasks.size(), ex);
+            tasks.clear();
+        }
+    }
+
+    private void drain() {
+        try {
+            Runnable task;
+            while (!closed && (task = tasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException ex) {
+                    logger.warn("Task failed", ex);
+                }
+            }
+        } finally {
+            scheduled.set(false);
+        }
+        // task could be added after the last poll but before releasing the flag
+        schedule();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        tasks.clear();
+    }
+}
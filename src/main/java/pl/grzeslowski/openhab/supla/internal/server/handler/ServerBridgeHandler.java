@@ -1,8 +1,11 @@
 package pl.grzeslowski.openhab.supla.internal.server.handler;
 
 import static java.util.Arrays.stream;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.stream.Collectors.toCollection;
 import static java.util.stream.Collectors.toSet;
+import static org.openhab.core.thing.ThingStatus.OFFLINE;
 import static org.openhab.core.thing.ThingStatus.ONLINE;
 import static org.openhab.core.thing.ThingStatusDetail.CONFIGURATION_ERROR;
 import static org.openhab.core.thing.ThingStatusDetail.HANDLER_INITIALIZING_ERROR;
@@ -12,43 +15,65 @@ import static pl.grzeslowski.openhab.supla.internal.Documentation.SSL_PROBLEM;
 import static pl.grzeslowski.openhab.supla.internal.Localization.text;
 import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.BINDING_ID;
 import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.CONNECTED_DEVICES_CHANNEL_ID;
+import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.FIRMWARE_ROLLOUT_FAILED_CHANNEL_ID;
+import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.FIRMWARE_ROLLOUT_IN_PROGRESS_CHANNEL_ID;
+import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.FIRMWARE_ROLLOUT_PENDING_CHANNEL_ID;
+import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.FIRMWARE_ROLLOUT_STATUS_CHANNEL_ID;
+import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.FIRMWARE_ROLLOUT_UPDATED_CHANNEL_ID;
+import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.FIRMWARE_ROLLOUT_WAVE_CHANNEL_ID;
+import static pl.grzeslowski.openhab.supla.internal.server.oh_config.TimeoutConfiguration.tryParseDuration;
 
 import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.OpenSslSessionContext;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
 import io.netty.handler.ssl.SslProvider;
-import io.netty.handler.ssl.util.SelfSignedCertificate;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.NoSuchAlgorithmException;
 import java.security.Security;
 import java.security.cert.CertificateException;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import javax.net.ssl.SSLException;
 import lombok.Getter;
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
 import org.openhab.core.common.ThreadPoolManager;
 import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.StringType;
 import org.openhab.core.thing.Bridge;
 import org.openhab.core.thing.ChannelUID;
 import org.openhab.core.thing.Thing;
 import org.openhab.core.thing.binding.ThingHandler;
+import org.openhab.core.thing.binding.ThingHandlerService;
 import org.openhab.core.types.Command;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import pl.grzeslowski.jsupla.server.MessageHandler;
 import pl.grzeslowski.jsupla.server.NettyConfig;
 import pl.grzeslowski.jsupla.server.NettyServer;
+import pl.grzeslowski.openhab.supla.actions.SuplaServerFirmwareRolloutActions;
 import pl.grzeslowski.openhab.supla.internal.Documentation;
 import pl.grzeslowski.openhab.supla.internal.handler.InitializationException;
 import pl.grzeslowski.openhab.supla.internal.handler.OfflineInitializationException;
 import pl.grzeslowski.openhab.supla.internal.handler.SuplaBridge;
 import pl.grzeslowski.openhab.supla.internal.server.discovery.ServerDiscoveryService;
+import pl.grzeslowski.openhab.supla.internal.server.firmware.FirmwareRolloutScheduler;
 import pl.grzeslowski.openhab.supla.internal.server.handler.trait.ServerBridge;
 import pl.grzeslowski.openhab.supla.internal.server.netty.OpenHabMessageHandler;
+import pl.grzeslowski.openhab.supla.internal.server.netty.SocketTuning;
 import pl.grzeslowski.openhab.supla.internal.server.oh_config.AuthData;
 import pl.grzeslowski.openhab.supla.internal.server.oh_config.ServerBridgeHandlerConfiguration;
 import pl.grzeslowski.openhab.supla.internal.server.oh_config.TimeoutConfiguration;
+import pl.grzeslowski.openhab.supla.internal.server.traits.SuplaDevice;
 
 @NonNullByDefault
 public class ServerBridgeHandler extends SuplaBridge implements ServerBridge {
@@ -62,9 +87,24 @@ public class ServerBridgeHandler extends SuplaBridge implements ServerBridge {
 
     private final ServerDiscoveryService serverDiscoveryService;
 
+    /** Shared by all server bridges, so many ports do not multiply threads */
+    private final ScheduledExecutorService serverScheduler = ThreadPoolManager.getScheduledPool(BINDING_ID + "-server");
+
+    /** During mass reconnects number of connected devices is published at most once per this delay */
+    private static final Duration CONNECTED_DEVICES_UPDATE_DELAY = Duration.ofSeconds(1);
+
     private final AtomicInteger numberOfConnectedDevices = new AtomicInteger();
 
-    private final Collection<ServerSuplaDeviceHandler> childHandlers = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicBoolean connectedDevicesUpdatePending = new AtomicBoolean();
+
+    @Nullable
+    private volatile ScheduledFuture<?> connectedDevicesUpdate;
+
+    /** Devices can disconnect after dispose, their callbacks must not update state of disposed bridge */
+    private volatile boolean disposed;
+
+    /** Child handlers by GUID, so registering device does not scan all children */
+    private final Map<String, ServerSuplaDeviceHandler> childHandlers = new ConcurrentHashMap<>();
 
     @Getter
     @Nullable
@@ -76,6 +116,13 @@ public class ServerBridgeHandler extends SuplaBridge implements ServerBridge {
 
     private int port;
 
+    @Nullable
+    private FirmwareRolloutScheduler firmwareRollout;
+
+    private FirmwareRolloutScheduler.Settings firmwareRolloutSettings = FirmwareRolloutScheduler.Settings.DEFAULT;
+
+    private SocketTuning socketTuning = SocketTuning.DEFAULT;
+
     public ServerBridgeHandler(Bridge bridge, ServerDiscoveryService serverDiscoveryService) {
         super(bridge);
         this.serverDiscoveryService = serverDiscoveryService;
@@ -83,6 +130,7 @@ public class ServerBridgeHandler extends SuplaBridge implements ServerBridge {
 
     @Override
     protected void internalInitialize() throws InitializationException {
+        disposed = false;
         var config = this.getConfigAs(ServerBridgeHandlerConfiguration.class);
         if (!config.isServerAuth() && !config.isEmailAuth()) {
             throw new OfflineInitializationException(CONFIGURATION_ERROR, text("supla.server.auth-missing"));
@@ -100,8 +148,6 @@ public class ServerBridgeHandler extends SuplaBridge implements ServerBridge {
 
         logger = LoggerFactory.getLogger(ServerBridgeHandler.class.getName() + "." + port);
 
-        var scheduledPool = ThreadPoolManager.getScheduledPool(BINDING_ID + "." + port);
-
         if (config.isSsl()) {
             var algo = "AES";
             try {
@@ -149,10 +195,13 @@ public class ServerBridgeHandler extends SuplaBridge implements ServerBridge {
         }
 
         timeoutConfiguration = ServerBridge.buildTimeoutConfiguration(config);
+        firmwareRolloutSettings = buildFirmwareRolloutSettings(config);
+        socketTuning = buildSocketTuning(config);
+        var tlsSettings = config.isSsl() ? buildTlsSettings(config) : null;
 
         try {
-            server = new NettyServer(buildNettyConfig(port, protocols, config.isSsl()), this::messageHandlerFactory);
-        } catch (CertificateException | SSLException ex) {
+            server = new NettyServer(buildNettyConfig(port, protocols, tlsSettings), this::messageHandlerFactory);
+        } catch (CertificateException | IOException ex) {
             throw new OfflineInitializationException(
                     HANDLER_INITIALIZING_ERROR,
                     text("supla.server.certificate-problem", ex.getLocalizedMessage(), SSL_PROBLEM));
@@ -162,6 +211,73 @@ public class ServerBridgeHandler extends SuplaBridge implements ServerBridge {
         updateStatus(ONLINE);
         numberOfConnectedDevices.set(0);
         updateConnectedDevices(0);
+        var rollout = new FirmwareRolloutScheduler(
+                logger, serverScheduler, new FirmwareRolloutDevices(), this::updateFirmwareRolloutProgress);
+        firmwareRollout = rollout;
+        updateFirmwareRolloutProgress(rollout.progress());
+    }
+
+    private FirmwareRolloutScheduler.Settings buildFirmwareRolloutSettings(ServerBridgeHandlerConfiguration config)
+            throws OfflineInitializationException {
+        try {
+            var registrationTimeout = tryParseDuration(config.getFirmwareRolloutRegistrationTimeout())
+                    .orElseThrow(() -> new IllegalArgumentException(
+                            "Cannot parse registration timeout " + config.getFirmwareRolloutRegistrationTimeout()));
+            var waveDelay = tryParseDuration(config.getFirmwareRolloutWaveDelay())
+                    .orElseThrow(() -> new IllegalArgumentException(
+                            "Cannot parse wave delay " + config.getFirmwareRolloutWaveDelay()));
+            return new FirmwareRolloutScheduler.Settings(
+                    config.getFirmwareRolloutMaxConcurrentUpdates().intValue(),
+                    config.getFirmwareRolloutMaxFailureRate().doubleValue() / 100.0,
+                    registrationTimeout,
+                    waveDelay,
+                    FirmwareRolloutScheduler.Settings.DEFAULT.checkInterval());
+        } catch (IllegalArgumentException ex) {
+            throw new OfflineInitializationException(
+                    CONFIGURATION_ERROR, text("supla.server.firmware-rollout-config", ex.getLocalizedMessage()));
+        }
+    }
+
+    private SocketTuning buildSocketTuning(ServerBridgeHandlerConfiguration config)
+            throws OfflineInitializationException {
+        try {
+            var tuning = SocketTuning.fromConfig(config);
+            logger.debug("Socket tuning {}", tuning);
+            return tuning;
+        } catch (IllegalArgumentException | ArithmeticException ex) {
+            throw new OfflineInitializationException(
+                    CONFIGURATION_ERROR, text("supla.server.socket-config", ex.getLocalizedMessage()));
+        }
+    }
+
+    private TlsSettings buildTlsSettings(ServerBridgeHandlerConfiguration config)
+            throws OfflineInitializationException {
+        try {
+            var certificateFile = config.getCertificateFile();
+            var privateKeyFile = config.getPrivateKeyFile();
+            TlsIdentityStore identityStore;
+            if (certificateFile == null && privateKeyFile == null) {
+                identityStore = TlsIdentityStore.defaultStore(getThing().getUID());
+            } else if (certificateFile != null && privateKeyFile != null) {
+                var certificate = Path.of(certificateFile);
+                var privateKey = Path.of(privateKeyFile);
+                if (!Files.isReadable(certificate) || !Files.isReadable(privateKey)) {
+                    throw new IllegalArgumentException(
+                            "Cannot read certificate " + certificate + " or private key " + privateKey);
+                }
+                identityStore = new TlsIdentityStore(certificate, privateKey);
+            } else {
+                throw new IllegalArgumentException("Both certificateFile and privateKeyFile have to be set");
+            }
+            var sessionTimeout = tryParseDuration(config.getTlsSessionTimeout())
+                    .orElseThrow(() -> new IllegalArgumentException(
+                            "Cannot parse TLS session timeout " + config.getTlsSessionTimeout()));
+            return new TlsSettings(
+                    identityStore, config.getTlsSessionCacheSize().longValueExact(), sessionTimeout);
+        } catch (IllegalArgumentException | ArithmeticException ex) {
+            throw new OfflineInitializationException(
+                    CONFIGURATION_ERROR, text("supla.server.tls-config", ex.getLocalizedMessage()));
+        }
     }
 
     @Override
@@ -176,13 +292,51 @@ public class ServerBridgeHandler extends SuplaBridge implements ServerBridge {
 
     private MessageHandler messageHandlerFactory(SocketChannel ch) {
         logger.debug("Device connected");
+        socketTuning.applyTo(ch);
+        var sslHandler = ch.pipeline().get(SslHandler.class);
+        if (sslHandler != null && logger.isDebugEnabled()) {
+            var start = System.nanoTime();
+            sslHandler
+                    .handshakeFuture()
+                    .addListener(future -> logger.debug(
+                            "TLS handshake {} in {} ms",
+                            future.isSuccess() ? "finished" : "failed",
+                            NANOSECONDS.toMillis(System.nanoTime() - start)));
+        }
         return new OpenHabMessageHandler(this, serverDiscoveryService, ch);
     }
 
     public Optional<ServerSuplaDeviceHandler> findSuplaThing(String guid) {
-        return childHandlers.stream()
-                .filter(handler -> Objects.equals(handler.getGuid(), guid))
-                .findAny();
+        return Optional.ofNullable(childHandlers.get(guid));
+    }
+
+    public FirmwareRolloutScheduler.Progress startFirmwareRollout(Collection<String> guids) {
+        var local = firmwareRollout;
+        if (local == null) {
+            throw new IllegalStateException("Server is not running!");
+        }
+        local.start(guids, firmwareRolloutSettings);
+        return local.progress();
+    }
+
+    public FirmwareRolloutScheduler.Progress abortFirmwareRollout() {
+        var local = firmwareRollout;
+        if (local == null) {
+            throw new IllegalStateException("Server is not running!");
+        }
+        local.abort();
+        return local.progress();
+    }
+
+    private void updateFirmwareRolloutProgress(FirmwareRolloutScheduler.Progress progress) {
+        updateState(
+                FIRMWARE_ROLLOUT_STATUS_CHANNEL_ID,
+                new StringType(progress.status().name()));
+        updateState(FIRMWARE_ROLLOUT_WAVE_CHANNEL_ID, new DecimalType(progress.wave()));
+        updateState(FIRMWARE_ROLLOUT_PENDING_CHANNEL_ID, new DecimalType(progress.pending()));
+        updateState(FIRMWARE_ROLLOUT_IN_PROGRESS_CHANNEL_ID, new DecimalType(progress.inProgress()));
+        updateState(FIRMWARE_ROLLOUT_UPDATED_CHANNEL_ID, new DecimalType(progress.updated()));
+        updateState(FIRMWARE_ROLLOUT_FAILED_CHANNEL_ID, new DecimalType(progress.failed()));
     }
 
     @Override
@@ -200,31 +354,91 @@ public class ServerBridgeHandler extends SuplaBridge implements ServerBridge {
     private void changeNumberOfConnectedDevices(int delta) {
         var number = numberOfConnectedDevices.addAndGet(delta);
         logger.debug("Number of connected devices: {} (delta: {})", number, delta);
-        updateConnectedDevices(number);
+        if (disposed) {
+            return;
+        }
+        if (connectedDevicesUpdatePending.compareAndSet(false, true)) {
+            connectedDevicesUpdate = serverScheduler.schedule(
+                    () -> {
+                        connectedDevicesUpdatePending.set(false);
+                        if (!disposed) {
+                            updateConnectedDevices(numberOfConnectedDevices.get());
+                        }
+                    },
+                    CONNECTED_DEVICES_UPDATE_DELAY.toMillis(),
+                    MILLISECONDS);
+        }
     }
 
     private void updateConnectedDevices(int numberOfConnectedDevices) {
         updateState(CONNECTED_DEVICES_CHANNEL_ID, new DecimalType(numberOfConnectedDevices));
     }
 
-    private NettyConfig buildNettyConfig(int port, Set<String> protocols, boolean sslEnabled)
-            throws CertificateException, SSLException {
-        var sslCtx = sslEnabled ? buildSslContext(protocols) : null;
+    private NettyConfig buildNettyConfig(int port, Set<String> protocols, @Nullable TlsSettings tlsSettings)
+            throws CertificateException, IOException {
+        var sslCtx = tlsSettings != null ? buildSslContext(protocols, tlsSettings) : null;
         return new NettyConfig(port, DEFAULT_TIMEOUT, sslCtx);
     }
 
-    private SslContext buildSslContext(Set<String> protocols) throws CertificateException, SSLException {
-        var ssc = new SelfSignedCertificate();
-        return SslContextBuilder.forServer(ssc.certificate(), ssc.privateKey())
+    private SslContext buildSslContext(Set<String> protocols, TlsSettings tlsSettings)
+            throws CertificateException, IOException {
+        var start = System.nanoTime();
+        var identity = tlsSettings.identityStore().loadOrGenerate();
+        // netty-tcnative is optional; JDK provider still caches sessions, but has no session tickets
+        var provider = OpenSsl.isAvailable() ? SslProvider.OPENSSL : SslProvider.JDK;
+        var sslCtx = SslContextBuilder.forServer(identity.certificate(), identity.privateKey())
                 .protocols(protocols)
-                .sslProvider(SslProvider.OPENSSL)
+                .sslProvider(provider)
+                .sessionCacheSize(tlsSettings.sessionCacheSize())
+                .sessionTimeout(tlsSettings.sessionTimeout().toSeconds())
                 .build();
+        if (sslCtx.sessionContext() instanceof OpenSslSessionContext sessionContext) {
+            sessionContext.setSessionCacheEnabled(true);
+            // without keys OpenSSL generates and rotates ticket keys by itself
+            sessionContext.setTicketKeys();
+        }
+        logger.debug(
+                "TLS context ready in {} ms, provider={}, key generated={}, certificate={}",
+                NANOSECONDS.toMillis(System.nanoTime() - start),
+                provider,
+                identity.generated(),
+                identity.certificate());
+        return sslCtx;
+    }
+
+    /**
+     * @param sessionCacheSize how many TLS sessions are kept, so reconnecting devices can resume them
+     * @param sessionTimeout how long TLS session (and its ticket) can be resumed
+     */
+    private record TlsSettings(TlsIdentityStore identityStore, long sessionCacheSize, Duration sessionTimeout) {}
+
+    @Override
+    public void handleRemoval() {
+        // only the generated identity is deleted, files set in certificateFile/privateKeyFile belong to the user
+        try {
+            TlsIdentityStore.defaultStore(getThing().getUID()).delete();
+        } catch (Exception ex) {
+            logger.warn("Cannot delete TLS identity of server bridge", ex);
+        }
+        super.handleRemoval();
     }
 
     @Override
     public void dispose() {
         logger.debug("Disposing ServerBridgeHandler");
+        disposed = true;
         disposeServer();
+        var localUpdate = connectedDevicesUpdate;
+        connectedDevicesUpdate = null;
+        if (localUpdate != null) {
+            localUpdate.cancel(false);
+        }
+        connectedDevicesUpdatePending.set(false);
+        var localRollout = firmwareRollout;
+        firmwareRollout = null;
+        if (localRollout != null) {
+            localRollout.close();
+        }
         logger = LoggerFactory.getLogger(ServerBridgeHandler.class);
         super.dispose();
     }
@@ -247,6 +461,15 @@ public class ServerBridgeHandler extends SuplaBridge implements ServerBridge {
             return;
         }
         updateConnectedDevices(numberOfConnectedDevices.get());
+        var localRollout = firmwareRollout;
+        if (localRollout != null) {
+            updateFirmwareRolloutProgress(localRollout.progress());
+        }
+    }
+
+    @Override
+    public Collection<Class<? extends ThingHandlerService>> getServices() {
+        return List.of(SuplaServerFirmwareRolloutActions.class);
     }
 
     @Override
@@ -257,8 +480,21 @@ public class ServerBridgeHandler extends SuplaBridge implements ServerBridge {
                     childHandler.getClass().getSimpleName());
             return;
         }
-        logger.debug("Add Handler {}", serverDevice.getGuid());
-        childHandlers.add(serverDevice);
+        var guid = serverDevice.getGuid();
+        logger.debug("Add Handler {}", guid);
+        if (guid == null) {
+            // not initialized (i.e. missing GUID), device with such handler cannot register anyway
+            return;
+        }
+        var previous = childHandlers.putIfAbsent(guid, serverDevice);
+        if (previous != null && previous != serverDevice) {
+            // keep the first thing, like the scan of all children did
+            logger.warn(
+                    "There are two things with GUID {}, using {} and not {}",
+                    guid,
+                    previous.getThing().getUID(),
+                    serverDevice.getThing().getUID());
+        }
     }
 
     @Override
@@ -270,9 +506,46 @@ public class ServerBridgeHandler extends SuplaBridge implements ServerBridge {
             return;
         }
         logger.debug("Remove Handler {}", serverDevice.getGuid());
-        var remove = childHandlers.remove(serverDevice);
+        var guid = serverDevice.getGuid();
+        var remove = childHandlers.values().removeIf(handler -> handler == serverDevice);
         if (!remove) {
-            logger.warn("There was no child handler with id {} found", serverDevice.getGuid());
+            logger.debug("There was no child handler with id {} found", guid);
+            return;
+        }
+        if (guid != null) {
+            replaceWithDuplicate(guid, serverDevice);
+        }
+    }
+
+    /** Lets other thing with the same GUID take place of disposed one, so the device can still connect */
+    private void replaceWithDuplicate(String guid, ServerSuplaDeviceHandler disposed) {
+        for (var thing : getThing().getThings()) {
+            if (thing.getHandler() instanceof ServerSuplaDeviceHandler duplicate
+                    && duplicate != disposed
+                    && guid.equals(duplicate.getGuid())
+                    && childHandlers.putIfAbsent(guid, duplicate) == null) {
+                logger.info("Thing {} with GUID {} replaced disposed one", thing.getUID(), guid);
+                return;
+            }
+        }
+    }
+
+    private final class FirmwareRolloutDevices implements FirmwareRolloutScheduler.Devices {
+        @Override
+        public @Nullable String findSoftVersion(String guid) {
+            return findSuplaThing(guid)
+                    .filter(handler -> handler.getThing().getStatus() != OFFLINE)
+                    .filter(handler -> handler.getWriter().get() != null)
+                    .map(ServerSuplaDeviceHandler::getSuplaDevice)
+                    .map(SuplaDevice::softVer)
+                    .orElse(null);
+        }
+
+        @Override
+        public void startFirmwareUpdate(String guid) throws Exception {
+            findSuplaThing(guid)
+                    .orElseThrow(() -> new IllegalArgumentException("There is no device with GUID " + guid))
+                    .startFirmwareUpdate();
         }
     }
 }
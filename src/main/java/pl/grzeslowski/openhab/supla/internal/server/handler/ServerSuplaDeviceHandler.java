@@ -10,6 +10,7 @@ import static org.openhab.core.thing.ThingStatus.OFFLINE;
 import static org.openhab.core.thing.ThingStatus.ONLINE;
 import static org.openhab.core.thing.ThingStatusDetail.*;
 import static pl.grzeslowski.jsupla.protocol.api.CalCfgCommand.SUPLA_CALCFG_CMD_CHECK_FIRMWARE_UPDATE;
+import static pl.grzeslowski.jsupla.protocol.api.CalCfgCommand.SUPLA_CALCFG_CMD_START_FIRMWARE_UPDATE;
 import static pl.grzeslowski.jsupla.protocol.api.CalCfgResult.SUPLA_CALCFG_RESULT_DONE;
 import static pl.grzeslowski.jsupla.protocol.api.DeviceFlag.SUPLA_DEVICE_FLAG_AUTOMATIC_FIRMWARE_UPDATE_SUPPORTED;
 import static pl.grzeslowski.jsupla.protocol.api.DeviceFlag.SUPLA_DEVICE_FLAG_SLEEP_MODE_ENABLED;
@@ -25,7 +26,6 @@ import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.Server
 import static pl.grzeslowski.openhab.supla.internal.server.ByteArrayToHex.hexToBytes;
 
 import io.netty.handler.timeout.ReadTimeoutException;
-import java.io.IOException;
 import java.math.BigInteger;
 import java.net.SocketException;
 import java.text.SimpleDateFormat;
@@ -37,6 +37,7 @@ import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.time.format.TextStyle;
 import java.util.*;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -184,8 +185,8 @@ public abstract class ServerSuplaDeviceHandler extends SuplaDeviceHandler
     @Delegate(types = StateCache.class)
     private final StateCache stateCache = new InMemoryStateCache(logger);
 
-    @Nullable
-    private OpenHabMessageHandler handler;
+    /** Connection that owns the device; only the newest authorized connection of the GUID may talk to it */
+    private final AtomicReference<@Nullable OpenHabMessageHandler> handler = new AtomicReference<>();
 
     private Map<Integer, ActionChannelValue> actionChannels = Map.of();
 
@@ -373,10 +374,12 @@ public abstract class ServerSuplaDeviceHandler extends SuplaDeviceHandler
         }
     }
 
+    /**
+     * Not used: sockets are served by {@link OpenHabMessageHandler}, which hands the writer over in {@link #register}
+     * once the device is authorized, so an unauthorized connection never gets the writer of the device.
+     */
     @Override
-    public void active(SuplaWriter writer) {
-        this.writer.set(writer);
-    }
+    public void active(SuplaWriter writer) {}
 
     @Override
     public void inactive() {
@@ -392,6 +395,29 @@ public abstract class ServerSuplaDeviceHandler extends SuplaDeviceHandler
         channelDisconnected();
     }
 
+    /**
+     * Called when connection of given handler was closed. If the device already connected again through a newer
+     * connection the call is ignored, so a stale socket does not disconnect the new one.
+     */
+    public void inactive(OpenHabMessageHandler handler) {
+        if (!this.handler.compareAndSet(handler, null)) {
+            logger.debug("Connection #{} was taken over by newer one, ignoring its disconnection", handler.hashCode());
+            return;
+        }
+        inactive();
+    }
+
+    /** @return {@code true} if the device talks through connection of given handler */
+    public boolean isConnectedThrough(OpenHabMessageHandler handler) {
+        return this.handler.get() == handler;
+    }
+
+    /** @return {@code true} if the device talks through connection other than the one of given handler */
+    public boolean isConnectedThroughOther(OpenHabMessageHandler handler) {
+        var current = this.handler.get();
+        return current != null && current != handler;
+    }
+
     @Override
     public void channelDisconnected() {
         updateStatus(OFFLINE, COMMUNICATION_ERROR, text("supla.offline.channel-disconnected"));
@@ -399,31 +425,38 @@ public abstract class ServerSuplaDeviceHandler extends SuplaDeviceHandler
         dispose();
     }
 
-    public void register(@NonNull RegisterDeviceTrait registerEntity, OpenHabMessageHandler handler)
+    /**
+     * Registers the device that connected through given handler. If the device is still connected through an older
+     * connection (i.e. it lost power and did not close its socket), the older connection is closed as soon as the new
+     * one is authorized, without waiting for ping timeout. Status and state of channels are kept in such case.
+     */
+    public void register(@NonNull RegisterDeviceTrait registerEntity, OpenHabMessageHandler handler, SuplaWriter writer)
             throws InitializationException {
+        var reconnecting = isConnectedThroughOther(handler);
         if (sleeping) {
             logger.debug("Not changing status to OFFLINE, because sleep device woke up");
+        } else if (reconnecting) {
+            logger.debug("Not changing status to OFFLINE, because device is connecting again");
         } else {
             updateStatus(OFFLINE, HANDLER_CONFIGURATION_PENDING, text("supla.offline.device-authorizing"));
         }
-        var oldHandler = this.handler;
-        if (oldHandler != null) {
-            logger.warn(
-                    "Having old handler. Should not happen! handler={}#{}",
-                    oldHandler.getClass().getSimpleName(),
-                    oldHandler.hashCode());
-            oldHandler.clear();
-        }
-        this.handler = handler;
-        disposePing();
 
-        // auth
+        // auth, before taking over the connection, so wrong registration does not break the working one
         logger.debug("Authorizing {}", registerEntity);
         authorize(registerEntity);
+        var oldHandler = this.handler.getAndSet(handler);
+        if (oldHandler != null && oldHandler != handler) {
+            logger.info("Device connected again, closing previous connection #{}", oldHandler.hashCode());
+            oldHandler.clear();
+        }
+        this.writer.set(writer);
+        disposePing();
+        var wasAuthorized = authorized;
         authorized = true;
         suplaDevice = SuplaDevice.of(registerEntity);
         logger.debug("Authorized!");
-        {
+        if (!wasAuthorized) {
+            // device that connected again or woke up is already counted
             var local = bridgeHandler;
             if (local != null) {
                 local.deviceConnected();
@@ -480,6 +513,8 @@ public abstract class ServerSuplaDeviceHandler extends SuplaDeviceHandler
         if (sleeping) {
             logger.debug("Not changing status to UNKNOWN, because sleep device woke up");
             sleeping = false;
+        } else if (reconnecting) {
+            logger.debug("Not changing status to UNKNOWN, because device connected again");
         } else {
             // thing will have status ONLINE after receiving proto from the device (method `handle(ToServerProto)`)
             updateStatus(ThingStatus.UNKNOWN, CONFIGURATION_PENDING, text("supla.offline.waiting-for-registration"));
@@ -628,8 +663,7 @@ public abstract class ServerSuplaDeviceHandler extends SuplaDeviceHandler
     }
 
     private void disposeHandler() {
-        var localHandler = handler;
-        handler = null;
+        var localHandler = handler.getAndSet(null);
         if (localHandler != null) {
             localHandler.clear();
         }
@@ -768,6 +802,14 @@ public abstract class ServerSuplaDeviceHandler extends SuplaDeviceHandler
         return pendingOtaCheckMessageId.get() != null;
     }
 
+    /** Starts OTA update of the device and waits until the device accepts it */
+    public void startFirmwareUpdate() throws InterruptedException, TimeoutException {
+        DeviceCalCfgCommands.send(
+                DeviceCalCfgCommands.requireOtaReady(this),
+                SUPLA_CALCFG_CMD_START_FIRMWARE_UPDATE,
+                "Start firmware update");
+    }
+
     public void markOtaUpdateTriggered() {
         synchronized (otaCheckLock) {
             pendingOtaCheckMessageId.set(null);
@@ -925,8 +967,13 @@ public abstract class ServerSuplaDeviceHandler extends SuplaDeviceHandler
             return;
         }
         updateSoftwareUpdateState(new SuplaUpdatesClient.Result(SuplaUpdatesClient.Status.CHECKING, null, null), null);
-        softwareUpdateCheckFuture.set(ThreadPoolManager.getPool(SOFTWARE_UPDATE_THREAD_POOL_NAME)
-                .submit(() -> attachGuid(guid, () -> executeSoftwareUpdateCheck(checkId, request))));
+        // the HTTP calls run on the client's async machinery; the pool only applies the result
+        var check = updatesClient.checkUpdates(request);
+        // keep the client's future, cancelling it aborts the HTTP request
+        softwareUpdateCheckFuture.set(check);
+        check.whenCompleteAsync(
+                (result, error) -> attachGuid(guid, () -> completeSoftwareUpdateCheck(checkId, request, result, error)),
+                ThreadPoolManager.getPool(SOFTWARE_UPDATE_THREAD_POOL_NAME));
     }
 
     private void cancelSoftwareUpdateCheck() {
@@ -934,21 +981,22 @@ public abstract class ServerSuplaDeviceHandler extends SuplaDeviceHandler
         Optional.ofNullable(softwareUpdateCheckFuture.getAndSet(null)).ifPresent(future -> future.cancel(true));
     }
 
-    private void executeSoftwareUpdateCheck(long checkId, SuplaUpdatesClient.Request request) {
-        try {
-            var result = updatesClient.checkUpdates(request);
-            if (softwareUpdateCheckId.get() == checkId) {
-                updateSoftwareUpdateState(result, now());
-            }
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            markSoftwareUpdateCheckError(checkId, request, e);
-        } catch (IOException | RuntimeException e) {
-            markSoftwareUpdateCheckError(checkId, request, e);
+    private void completeSoftwareUpdateCheck(
+            long checkId,
+            SuplaUpdatesClient.Request request,
+            SuplaUpdatesClient.@Nullable Result result,
+            @Nullable Throwable error) {
+        if (error != null) {
+            var cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            markSoftwareUpdateCheckError(checkId, request, cause);
+            return;
+        }
+        if (result != null && softwareUpdateCheckId.get() == checkId) {
+            updateSoftwareUpdateState(result, now());
         }
     }
 
-    private void markSoftwareUpdateCheckError(long checkId, SuplaUpdatesClient.Request request, Exception exception) {
+    private void markSoftwareUpdateCheckError(long checkId, SuplaUpdatesClient.Request request, Throwable exception) {
         if (softwareUpdateCheckId.get() != checkId) {
             logger.trace("Ignoring software update check error for stale request. request={}", request);
             return;
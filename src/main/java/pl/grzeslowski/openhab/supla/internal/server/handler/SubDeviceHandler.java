@@ -21,8 +21,10 @@ import org.openhab.core.thing.binding.builder.ThingBuilder;
 import org.openhab.core.types.State;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import pl.grzeslowski.jsupla.protocol.api.ChannelType;
 import pl.grzeslowski.jsupla.protocol.api.structs.dcs.SetCaption;
 import pl.grzeslowski.jsupla.protocol.api.structs.ds.*;
+import pl.grzeslowski.jsupla.protocol.api.structs.dsc.ChannelState;
 import pl.grzeslowski.jsupla.protocol.api.types.FromServerProto;
 import pl.grzeslowski.jsupla.server.SuplaWriteFuture;
 import pl.grzeslowski.openhab.supla.internal.handler.SuplaDeviceHandler;
@@ -174,10 +176,18 @@ public class SubDeviceHandler extends SuplaDeviceHandler implements ServerDevice
         channelUtil.updateStatus(trait);
     }
 
+    public void consumeSuplaDeviceChannelExtendedValue(int channelNumber, ChannelType type, byte[] value) {
+        channelUtil.updateExtendedStatus(channelNumber, type, value);
+    }
+
     public void consumeSetCaption(SetCaption value) {
         channelUtil.setCaption(value);
     }
 
+    public void consumeChannelState(ChannelState value) {
+        channelUtil.consumeChannelState(value);
+    }
+
     public void consumeSuplaChannelNewValueResult(SuplaChannelNewValueResult value) {
         channelUtil.consumeSuplaChannelNewValueResult(value);
     }
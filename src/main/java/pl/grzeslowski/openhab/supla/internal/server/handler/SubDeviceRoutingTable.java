@@ -0,0 +1,113 @@
+package pl.grzeslowski.openhab.supla.internal.server.handler;
+
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toUnmodifiableList;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import pl.grzeslowski.openhab.supla.internal.server.traits.DeviceChannel;
+
+/**
+ * Routes messages that gateway receives for its channels to sub devices.
+ *
+ * <p>The table is built once per registration. Channel numbers are unsigned bytes, so the lookup is a plain array
+ * indexed by the gateway channel number, and every route keeps the channels that belong to its sub device. Handlers are
+ * attached and detached as sub device things come and go, without rebuilding the table.
+ */
+@NonNullByDefault
+final class SubDeviceRoutingTable {
+    static final SubDeviceRoutingTable EMPTY = new SubDeviceRoutingTable(new Route[0], Map.of());
+
+    private final @Nullable Route[] routesByChannelNumber;
+    private final Map<Integer, Route> routesBySubDeviceId;
+
+    private SubDeviceRoutingTable(@Nullable Route[] routesByChannelNumber, Map<Integer, Route> routesBySubDeviceId) {
+        this.routesByChannelNumber = routesByChannelNumber;
+        this.routesBySubDeviceId = routesBySubDeviceId;
+    }
+
+    static SubDeviceRoutingTable build(List<DeviceChannel> channels, Collection<SubDeviceHandler> handlers) {
+        var channelsBySubDeviceId = channels.stream()
+                .filter(channel -> channel.subDeviceId() != null)
+                .collect(groupingBy(DeviceChannel::subDeviceId, TreeMap::new, toUnmodifiableList()));
+        if (channelsBySubDeviceId.isEmpty()) {
+            return EMPTY;
+        }
+        var maxChannelNumber = channelsBySubDeviceId.values().stream()
+                .flatMap(List::stream)
+                .mapToInt(DeviceChannel::number)
+                .max()
+                .orElse(-1);
+        var routesByChannelNumber = new Route[maxChannelNumber + 1];
+        var routesBySubDeviceId = new TreeMap<Integer, Route>();
+        channelsBySubDeviceId.forEach((subDeviceId, subDeviceChannels) -> {
+            var route = new Route(subDeviceId, subDeviceChannels);
+            routesBySubDeviceId.put(subDeviceId, route);
+            subDeviceChannels.forEach(channel -> routesByChannelNumber[channel.number()] = route);
+        });
+        handlers.forEach(handler -> {
+            var route = routesBySubDeviceId.get(handler.getSubDeviceId());
+            if (route != null) {
+                route.handler = handler;
+            }
+        });
+        return new SubDeviceRoutingTable(routesByChannelNumber, Map.copyOf(routesBySubDeviceId));
+    }
+
+    @Nullable
+    SubDeviceHandler findByChannelNumber(int channelNumber) {
+        if (channelNumber < 0 || channelNumber >= routesByChannelNumber.length) {
+            return null;
+        }
+        var route = routesByChannelNumber[channelNumber];
+        return route != null ? route.handler : null;
+    }
+
+    /**
+     * @return channels of the sub device or {@code null} if gateway did not register any channel for it
+     */
+    @Nullable
+    List<DeviceChannel> attach(SubDeviceHandler handler) {
+        var route = routesBySubDeviceId.get(handler.getSubDeviceId());
+        if (route == null) {
+            return null;
+        }
+        route.handler = handler;
+        return route.channels;
+    }
+
+    void detach(SubDeviceHandler handler) {
+        var route = routesBySubDeviceId.get(handler.getSubDeviceId());
+        if (route != null && Objects.equals(route.handler, handler)) {
+            route.handler = null;
+        }
+    }
+
+    Set<Integer> subDeviceIds() {
+        return routesBySubDeviceId.keySet();
+    }
+
+    private static final class Route {
+        private final int subDeviceId;
+        private final List<DeviceChannel> channels;
+
+        @Nullable
+        private volatile SubDeviceHandler handler;
+
+        private Route(int subDeviceId, List<DeviceChannel> channels) {
+            this.subDeviceId = subDeviceId;
+            this.channels = channels;
+        }
+
+        @Override
+        public String toString() {
+            return "Route{subDeviceId=" + subDeviceId + ", channels=" + channels.size() + "}";
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package pl.grzeslowski.openhab.supla.internal.server.handler;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.BINDING_ID;
+
+import io.netty.handler.ssl.util.SelfSignedCertificate;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.cert.CertificateException;
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.core.OpenHAB;
+import org.openhab.core.thing.ThingUID;
+
+/**
+ * Keeps the self-signed TLS identity of a server bridge on disk, so the RSA key is generated only once and devices see
+ * the same certificate after every restart of the bridge.
+ *
+ * <p>Certificate and key are stored as PEM files; each of them is written to a temporary file first and then moved, so
+ * a crash while writing never leaves a broken identity behind. The key is readable only by its owner.
+ */
+@NonNullByDefault
+final class TlsIdentityStore {
+    private final Path certificateFile;
+    private final Path privateKeyFile;
+
+    TlsIdentityStore(Path certificateFile, Path privateKeyFile) {
+        this.certificateFile = certificateFile;
+        this.privateKeyFile = privateKeyFile;
+    }
+
+    /** @return store in {@code $OPENHAB_USERDATA/supla/server-identity-<bridge ID>.crt} (and {@code .key}) */
+    static TlsIdentityStore defaultStore(ThingUID bridgeUID) {
+        var directory = Path.of(OpenHAB.getUserDataFolder(), BINDING_ID);
+        var name = "server-identity-" + bridgeUID.getId();
+        return new TlsIdentityStore(directory.resolve(name + ".crt"), directory.resolve(name + ".key"));
+    }
+
+    /** @return stored identity; if there is none, new one is generated and stored first */
+    TlsIdentity loadOrGenerate() throws CertificateException, IOException {
+        if (Files.exists(certificateFile) && Files.exists(privateKeyFile)) {
+            return new TlsIdentity(certificateFile.toFile(), privateKeyFile.toFile(), false);
+        }
+        var generated = new SelfSignedCertificate();
+        try {
+            Files.createDirectories(certificateFile.toAbsolutePath().getParent());
+            Files.createDirectories(privateKeyFile.toAbsolutePath().getParent());
+            store(generated.privateKey().toPath(), privateKeyFile, true);
+            store(generated.certificate().toPath(), certificateFile, false);
+        } finally {
+            generated.delete();
+        }
+        return new TlsIdentity(certificateFile.toFile(), privateKeyFile.toFile(), true);
+    }
+
+    /** Deletes stored certificate and key, if there are any */
+    void delete() throws IOException {
+        Files.deleteIfExists(certificateFile);
+        Files.deleteIfExists(privateKeyFile);
+    }
+
+    private static void store(Path source, Path target, boolean secret) throws IOException {
+        var temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.deleteIfExists(temporary);
+        if (secret) {
+            // permissions are set on creation, so the key is never readable by others, not even for a moment
+            try {
+                Files.createFile(
+                        temporary, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+            } catch (UnsupportedOperationException ex) {
+                // i.e. Windows, file stays with default permissions of user data folder
+                Files.createFile(temporary);
+            }
+        } else {
+            Files.createFile(temporary);
+        }
+        try (var output = Files.newOutputStream(temporary)) {
+            Files.copy(source, output);
+        }
+        Files.move(temporary, target, REPLACE_EXISTING, ATOMIC_MOVE);
+    }
+
+    /**
+     * @param generated {@code true} if the identity was generated by this call, {@code false} if it was read from disk
+     */
+    record TlsIdentity(File certificate, File privateKey, boolean generated) {}
+}
@@ -53,7 +53,7 @@ public final class OpenHabMessageHandler implements MessageHandler {
         {
             var local = currentThing.getAndSet(null);
             if (local != null) {
-                attachGuid(local.getGuid(), local::inactive);
+                attachGuid(local.getGuid(), () -> local.inactive(this));
             }
         }
         writer.set(null);
@@ -71,6 +71,8 @@ public final class OpenHabMessageHandler implements MessageHandler {
             log.warn(
                     "Got exception from socket without having handler attached. Breaking the socket connection",
                     exception);
+        } else if (!thing.isConnectedThrough(this)) {
+            log.debug("Got exception from socket that was taken over by newer connection", exception);
         } else {
             attachGuid(thing.getGuid(), () -> thing.socketException(exception));
         }
@@ -88,6 +90,10 @@ public final class OpenHabMessageHandler implements MessageHandler {
         // the current thing is set that means it already registered
         var thing = currentThing.get();
         if (thing != null) {
+            if (!thing.isConnectedThrough(this)) {
+                log.debug("Connection was taken over by newer one, dropping {}", proto);
+                return;
+            }
             attachGuid(thing.getGuid(), () -> thing.handle(proto));
             return;
         }
@@ -108,11 +114,17 @@ public final class OpenHabMessageHandler implements MessageHandler {
                 return;
             }
             var suplaThing = suplaThingOptional.get();
-            suplaThing.active(requireNonNull(writer.get(), "writer is null"));
+            var localWriter = requireNonNull(writer.get(), "writer is null");
             try {
-                suplaThing.register(entity, this);
+                suplaThing.register(entity, this, localWriter);
                 currentThing.set(suplaThing);
             } catch (InitializationException ex) {
+                if (suplaThing.isConnectedThroughOther(this)) {
+                    // do not touch the device that is still connected through previous (valid) connection
+                    log.warn("Device with GUID={} connected again, but registration failed: {}", guid, ex.getMessage());
+                    clear();
+                    return;
+                }
                 log.debug("Got InitializationException in `synchronizedHandle`", ex);
                 suplaThing.updateStatus(ex.getStatus(), ex.getStatusDetail(), ex.getMessage());
             } catch (Exception ex) {
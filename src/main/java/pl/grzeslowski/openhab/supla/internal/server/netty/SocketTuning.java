@@ -0,0 +1,80 @@
+package pl.grzeslowski.openhab.supla.internal.server.netty;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.socket.SocketChannel;
+import java.util.Locale;
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import pl.grzeslowski.openhab.supla.internal.server.oh_config.ServerBridgeHandlerConfiguration;
+
+/**
+ * Netty options applied to every socket accepted by the server bridge.
+ *
+ * <p>Transport, event loop groups and backlog of the listening socket belong to jSupla's {@code NettyServer}, so only
+ * options of accepted sockets can be tuned from the binding.
+ *
+ * @param tcpNoDelay disable Nagle's algorithm, so small Supla packets are not delayed
+ * @param allocator allocator of buffers for reads and writes of the socket
+ * @param writeBufferWaterMark the socket stops being writable above the high mark and becomes writable again below the
+ *     low one
+ */
+@NonNullByDefault
+public record SocketTuning(boolean tcpNoDelay, Allocator allocator, WriteBufferWaterMark writeBufferWaterMark) {
+    public static final SocketTuning DEFAULT = new SocketTuning(true, Allocator.DEFAULT, WriteBufferWaterMark.DEFAULT);
+
+    /**
+     * @throws IllegalArgumentException if allocator is unknown or water marks are wrong
+     */
+    public static SocketTuning fromConfig(ServerBridgeHandlerConfiguration config) {
+        return new SocketTuning(
+                config.isTcpNoDelay(),
+                Allocator.parse(config.getAllocator()),
+                new WriteBufferWaterMark(
+                        config.getWriteBufferLowWaterMark().intValueExact(),
+                        config.getWriteBufferHighWaterMark().intValueExact()));
+    }
+
+    public void applyTo(SocketChannel channel) {
+        var config = channel.config();
+        config.setTcpNoDelay(tcpNoDelay);
+        config.setWriteBufferWaterMark(writeBufferWaterMark);
+        var byteBufAllocator = allocator.byteBufAllocator();
+        if (byteBufAllocator != null) {
+            config.setAllocator(byteBufAllocator);
+        }
+    }
+
+    public enum Allocator {
+        /** Keep allocator chosen by Netty */
+        DEFAULT,
+        /** Pooled direct buffers, less garbage and no copying to the socket with many connections */
+        POOLED_DIRECT,
+        /** New buffer for every read, the smallest memory footprint with few connections */
+        UNPOOLED;
+
+        static Allocator parse(String value) {
+            try {
+                return valueOf(value.trim().replace('-', '_').toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Unknown allocator " + value, ex);
+            }
+        }
+
+        @Nullable
+        ByteBufAllocator byteBufAllocator() {
+            return switch (this) {
+                case DEFAULT -> null;
+                case POOLED_DIRECT -> PooledDirect.ALLOCATOR;
+                case UNPOOLED -> UnpooledByteBufAllocator.DEFAULT;
+            };
+        }
+    }
+
+    /** Created on first use, so arenas are not allocated when pooled direct allocator is not used */
+    private static final class PooledDirect {
+        private static final ByteBufAllocator ALLOCATOR = new PooledByteBufAllocator(true);
+    }
+}
@@ -37,9 +37,27 @@ public class ServerBridgeHandlerConfiguration {
     private BigDecimal port = new BigDecimal(DEFAULT_PORT);
     private boolean ssl = true;
     private String protocols = "TLSv1.3, TLSv1.2, TLSv1, TLSv1.1";
+    /** PEM certificate chain, if not set self-signed certificate is generated and kept in user data folder */
+    @Nullable
+    private String certificateFile;
+
+    /** PKCS#8 PEM private key of {@link #certificateFile} */
+    @Nullable
+    private String privateKeyFile;
+
+    private BigDecimal tlsSessionCacheSize = new BigDecimal(1024);
+    private String tlsSessionTimeout = "86400";
     private String timeout = "10";
     private String timeoutMin = "8";
     private String timeoutMax = "12";
+    private BigDecimal firmwareRolloutMaxConcurrentUpdates = new BigDecimal(3);
+    private BigDecimal firmwareRolloutMaxFailureRate = new BigDecimal(20);
+    private String firmwareRolloutRegistrationTimeout = "600";
+    private String firmwareRolloutWaveDelay = "30";
+    private boolean tcpNoDelay = true;
+    private String allocator = "default";
+    private BigDecimal writeBufferLowWaterMark = new BigDecimal(32 * 1024);
+    private BigDecimal writeBufferHighWaterMark = new BigDecimal(64 * 1024);
 
     public boolean isServerAuth() {
         return serverAccessId != null && serverAccessIdPassword != null;
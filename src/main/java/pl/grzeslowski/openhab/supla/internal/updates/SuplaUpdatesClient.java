@@ -4,35 +4,53 @@ import static java.net.URLEncoder.encode;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Arrays.stream;
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.stream.Collectors.toUnmodifiableMap;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
 import java.net.http.HttpResponse.BodyHandlers;
+import java.net.http.HttpTimeoutException;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.OffsetDateTime;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.StringJoiner;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
 
 @NonNullByDefault
 public class SuplaUpdatesClient {
     private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+    /** {@link #REQUEST_TIMEOUT} only covers waiting for headers; this bounds the whole response including its body */
+    private static final Duration RESPONSE_TIMEOUT = Duration.ofSeconds(30);
+
     private static final URI CHECK_UPDATES_URI = URI.create("https://updates.supla.org/check-updates");
     private static final URI LIST_UPDATES_URI = URI.create("https://updates.supla.org/list-updates");
 
     private final HttpClient httpClient;
     private final URI checkUpdatesUri;
     private final URI listUpdatesUri;
+    private final Duration responseTimeout;
     private final Gson gson = new Gson();
 
     public SuplaUpdatesClient() {
@@ -50,70 +68,191 @@ public class SuplaUpdatesClient {
     }
 
     SuplaUpdatesClient(HttpClient httpClient, URI checkUpdatesUri, URI listUpdatesUri) {
+        this(httpClient, checkUpdatesUri, listUpdatesUri, RESPONSE_TIMEOUT);
+    }
+
+    SuplaUpdatesClient(HttpClient httpClient, URI checkUpdatesUri, URI listUpdatesUri, Duration responseTimeout) {
         this.httpClient = httpClient;
         this.checkUpdatesUri = checkUpdatesUri;
         this.listUpdatesUri = listUpdatesUri;
+        this.responseTimeout = responseTimeout;
     }
 
-    public Result checkUpdates(Request request) throws IOException, InterruptedException {
-        var updates = request.hasUpdateFilter() ? List.<UpdateEntry>of() : listUpdatesOrEmpty(request);
-        var enrichedRequest = discoverUpdateFilter(request, updates);
-        var requestToCheck = enrichedRequest == null ? request : request.withFilter(enrichedRequest);
-        try {
-            var result = executeCheckUpdates(requestToCheck);
-            if (result.status() != Status.UNKNOWN_PRODUCT) {
-                return result;
+    /**
+     * Cancelling returned future aborts the HTTP request that is in flight, not only the processing of its response.
+     */
+    public CompletableFuture<Result> checkUpdates(Request request) {
+        var inFlight = new HttpCalls();
+        var check = new CompletableFuture<Result>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                var cancelled = super.cancel(mayInterruptIfRunning);
+                inFlight.cancel();
+                return cancelled;
             }
-            var fallbackResult = inferResultFromUpdates(request, updates);
-            return fallbackResult == null ? result : fallbackResult;
-        } catch (IOException exception) {
-            var fallbackResult = inferResultFromUpdates(request, updates);
-            if (fallbackResult != null) {
-                return fallbackResult;
+        };
+        checkUpdates(request, inFlight).whenComplete((result, error) -> {
+            if (error == null) {
+                check.complete(result);
+            } else {
+                check.completeExceptionally(error);
             }
-            throw exception;
-        }
+        });
+        return check;
     }
 
-    private Result executeCheckUpdates(Request request) throws IOException, InterruptedException {
+    private CompletableFuture<Result> checkUpdates(Request request, HttpCalls inFlight) {
+        var updatesFuture = request.hasUpdateFilter()
+                ? completedFuture(List.<UpdateEntry>of())
+                : listUpdatesOrEmpty(request, inFlight);
+        return updatesFuture.thenCompose(updates -> {
+            var enrichedRequest = discoverUpdateFilter(request, updates);
+            var requestToCheck = enrichedRequest == null ? request : request.withFilter(enrichedRequest);
+            return executeCheckUpdates(requestToCheck, inFlight).handle((result, error) -> {
+                if (error == null) {
+                    if (result.status() != Status.UNKNOWN_PRODUCT) {
+                        return result;
+                    }
+                    var fallbackResult = inferResultFromUpdates(request, updates);
+                    return fallbackResult == null ? result : fallbackResult;
+                }
+                var cause = unwrap(error);
+                if (cause instanceof IOException) {
+                    var fallbackResult = inferResultFromUpdates(request, updates);
+                    if (fallbackResult != null) {
+                        return fallbackResult;
+                    }
+                }
+                throw new CompletionException(cause);
+            });
+        });
+    }
+
+    private CompletableFuture<Result> executeCheckUpdates(Request request, HttpCalls inFlight) {
         var httpRequest = HttpRequest.newBuilder(buildUri(checkUpdatesUri, request))
                 .timeout(REQUEST_TIMEOUT)
                 .GET()
                 .build();
-        var response = httpClient.send(httpRequest, BodyHandlers.ofString(UTF_8));
-        var responseBody = response.body();
-        if (response.statusCode() != 200) {
-            var parsedResponse = tryParseResponse(responseBody);
-            if (parsedResponse != null) {
-                return parsedResponse;
+        return inFlight.send(httpRequest, BodyHandlers.ofString(UTF_8)).thenApply(response -> {
+            var responseBody = response.body();
+            try {
+                if (response.statusCode() != 200) {
+                    var parsedResponse = tryParseResponse(responseBody);
+                    if (parsedResponse != null) {
+                        return parsedResponse;
+                    }
+                    throw new IOException("Unexpected update check response status " + response.statusCode());
+                }
+                return parseResponse(responseBody);
+            } catch (IOException e) {
+                throw new CompletionException(e);
             }
-            throw new IOException("Unexpected update check response status " + response.statusCode());
-        }
-        return parseResponse(responseBody);
+        });
     }
 
-    private List<UpdateEntry> listUpdatesOrEmpty(Request request) throws IOException, InterruptedException {
-        try {
-            return listUpdates(request);
-        } catch (IOException | JsonSyntaxException e) {
-            return List.of();
-        }
+    private CompletableFuture<List<UpdateEntry>> listUpdatesOrEmpty(Request request, HttpCalls inFlight) {
+        return listUpdates(request, inFlight).exceptionally(e -> List.of());
     }
 
-    private List<UpdateEntry> listUpdates(Request request) throws IOException, InterruptedException {
+    private CompletableFuture<List<UpdateEntry>> listUpdates(Request request, HttpCalls inFlight) {
         var httpRequest = HttpRequest.newBuilder(buildListUri(listUpdatesUri, request))
                 .timeout(REQUEST_TIMEOUT)
                 .GET()
                 .build();
-        var response = httpClient.send(httpRequest, BodyHandlers.ofString(UTF_8));
-        if (response.statusCode() != 200) {
-            throw new IOException("Unexpected update list response status " + response.statusCode());
+        // the body is collected by the HTTP client without blocking, so parsing never waits for the network
+        return inFlight.send(httpRequest, BodyHandlers.ofByteArray()).thenApply(response -> {
+            try {
+                if (response.statusCode() != 200) {
+                    throw new IOException("Unexpected update list response status " + response.statusCode());
+                }
+                return parseUpdates(response.body());
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * Reads the {@code list-updates} array token by token and keeps only the fields used to pick the update filter and
+     * the fallback result. Everything else (descriptions, changelogs...) is skipped without materializing it.
+     */
+    private static List<UpdateEntry> parseUpdates(byte[] responseBody) throws IOException {
+        try (var reader = new JsonReader(new InputStreamReader(new ByteArrayInputStream(responseBody), UTF_8))) {
+            if (reader.peek() == JsonToken.NULL) {
+                return List.of();
+            }
+            var updates = new ArrayList<UpdateEntry>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    continue;
+                }
+                updates.add(readUpdateEntry(reader));
+            }
+            reader.endArray();
+            return List.copyOf(updates);
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Cannot parse update list", e);
         }
-        var updates = gson.fromJson(response.body(), UpdateEntry[].class);
-        if (updates == null) {
-            return List.of();
+    }
+
+    private static UpdateEntry readUpdateEntry(JsonReader reader) throws IOException {
+        var update = new UpdateEntry();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "version" -> update.version = nextStringOrNull(reader);
+                case "updateUrl" -> update.updateUrl = nextStringOrNull(reader);
+                case "releasedAt" -> update.releasedAt = nextStringOrNull(reader);
+                case "platform" -> update.platform = nextIntegerOrNull(reader);
+                case "param1" -> update.param1 = nextIntegerOrNull(reader);
+                case "param2" -> update.param2 = nextIntegerOrNull(reader);
+                case "param3" -> update.param3 = nextIntegerOrNull(reader);
+                case "param4" -> update.param4 = nextIntegerOrNull(reader);
+                case "isBeta" -> update.isBeta = nextBooleanOrNull(reader);
+                case "hiddenInFrontend" -> update.hiddenInFrontend = nextBooleanOrNull(reader);
+                case "otaTest" -> update.otaTest = nextBooleanOrNull(reader);
+                default -> reader.skipValue();
+            }
         }
-        return stream(updates).filter(Objects::nonNull).toList();
+        reader.endObject();
+        return update;
+    }
+
+    private static @Nullable String nextStringOrNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    private static @Nullable Integer nextIntegerOrNull(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextInt();
+    }
+
+    private static @Nullable Boolean nextBooleanOrNull(JsonReader reader) throws IOException {
+        return switch (reader.peek()) {
+            case NULL -> {
+                reader.nextNull();
+                yield null;
+            }
+            case STRING -> Boolean.parseBoolean(reader.nextString());
+            default -> reader.nextBoolean();
+        };
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        var cause = throwable;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
     }
 
     static URI buildUri(URI baseUri, Request request) {
@@ -416,6 +555,45 @@ public class SuplaUpdatesClient {
         }
     }
 
+    /**
+     * HTTP requests of one update check; once cancelled, the request in flight is aborted and no new one is sent. A
+     * request that does not deliver its whole response within {@code responseTimeout} is aborted as well.
+     */
+    private final class HttpCalls {
+        @Nullable
+        private CompletableFuture<?> current;
+
+        private boolean cancelled;
+
+        synchronized <T> CompletableFuture<HttpResponse<T>> send(HttpRequest request, BodyHandler<T> bodyHandler) {
+            if (cancelled) {
+                return CompletableFuture.failedFuture(new CancellationException("Update check was cancelled"));
+            }
+            var future = httpClient.sendAsync(request, bodyHandler);
+            current = future;
+            var timedOut = new AtomicBoolean();
+            CompletableFuture.delayedExecutor(responseTimeout.toMillis(), MILLISECONDS)
+                    .execute(() -> {
+                        if (!future.isDone()) {
+                            timedOut.set(true);
+                            future.cancel(true);
+                        }
+                    });
+            return future.exceptionallyCompose(e -> CompletableFuture.failedFuture(
+                    timedOut.get()
+                            ? new HttpTimeoutException("Response was not received within " + responseTimeout)
+                            : e));
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            var local = current;
+            if (local != null) {
+                local.cancel(true);
+            }
+        }
+    }
+
     @SuppressWarnings("MemberName")
     private static class Response {
         @Nullable
@@ -0,0 +1,94 @@
+package pl.grzeslowski.openhab.supla.internal.cloud.api;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class ApiMetricsTest {
+    private final ApiMetrics metrics = new ApiMetrics();
+
+    @Test
+    @DisplayName("should count calls per endpoint and per target")
+    void calls() {
+        // given
+        metrics.recordCall("getChannel", "channel #1", MILLISECONDS.toNanos(40), true);
+        metrics.recordCall("getChannel", "channel #2", MILLISECONDS.toNanos(200), false);
+        metrics.recordCall("getChannels", null, MILLISECONDS.toNanos(6_000), true);
+
+        // when
+        var snapshot = metrics.snapshot();
+
+        // then
+        var getChannel = snapshot.endpoints().get("getChannel");
+        assertThat(getChannel.calls()).isEqualTo(2);
+        assertThat(getChannel.errors()).isEqualTo(1);
+        assertThat(getChannel.averageLatencyMs()).isEqualTo(120);
+        assertThat(getChannel.histogram()).containsExactly(1, 0, 1, 0, 0, 0, 0, 0);
+        assertThat(snapshot.targets()).containsOnlyKeys("channel #1", "channel #2");
+        assertThat(snapshot.endpoints().get("getChannels").percentileMs(95)).isEqualTo(-1);
+        assertThat(snapshot.callsByEndpoint()).isEqualTo("getChannel=2, getChannels=1");
+    }
+
+    @Test
+    @DisplayName("should compute percentile as upper bound of bucket")
+    void percentile() {
+        // given
+        for (int i = 0; i < 95; i++) {
+            metrics.recordCall("getIoDevices", null, MILLISECONDS.toNanos(10), true);
+        }
+        for (int i = 0; i < 5; i++) {
+            metrics.recordCall("getIoDevices", null, MILLISECONDS.toNanos(900), true);
+        }
+
+        // when
+        var snapshot = metrics.snapshot().endpoints().get("getIoDevices");
+
+        // then
+        assertThat(snapshot.percentileMs(95)).isEqualTo(50);
+        assertThat(snapshot.percentileMs(99)).isEqualTo(1_000);
+    }
+
+    @Test
+    @DisplayName("should count cache hits and misses")
+    void cache() {
+        // given
+        metrics.recordCacheRequest("getChannels");
+        metrics.recordCacheMiss("getChannels");
+        metrics.recordCacheRequest("getChannels");
+        metrics.recordCacheRequest("getIoDevices");
+        metrics.recordCacheStaleServe("getIoDevices");
+        metrics.recordCacheRefresh("getIoDevices");
+
+        // when
+        var snapshot = metrics.snapshot();
+
+        // then
+        assertThat(snapshot.cacheHits()).isEqualTo(2);
+        assertThat(snapshot.cacheMisses()).isEqualTo(1);
+        assertThat(snapshot.cacheStaleServes()).isEqualTo(1);
+        assertThat(snapshot.cacheRefreshes()).isEqualTo(1);
+        assertThat(snapshot.report(10))
+                .contains("getChannels: hits=1, misses=1, stale=0")
+                .contains("getIoDevices: hits=1, misses=0, stale=1, refreshes=1");
+    }
+
+    @Test
+    @DisplayName("should attribute calls to channels to their IO device")
+    void channelTarget() {
+        // given
+        metrics.recordDeviceChannels(7, List.of(1, 2));
+
+        // when
+        metrics.recordCall("executeAction", metrics.channelTarget(1), MILLISECONDS.toNanos(10), true);
+        metrics.recordCall("getChannel", metrics.channelTarget(2), MILLISECONDS.toNanos(10), true);
+        metrics.recordCall("getChannel", metrics.channelTarget(3), MILLISECONDS.toNanos(10), true);
+
+        // then
+        var targets = metrics.snapshot().targets();
+        assertThat(targets).containsOnlyKeys("device #7", "channel #3");
+        assertThat(targets.get("device #7").calls()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,282 @@
+package pl.grzeslowski.openhab.supla.internal.cloud.api;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.github.benmanes.caffeine.cache.Ticker;
+import io.swagger.client.model.Channel;
+import io.swagger.client.model.ChannelExecuteActionRequest;
+import io.swagger.client.model.Device;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class CacheApiTest {
+    private static final int CACHE_EVICT = 30;
+    private static final List<String> INCLUDE = List.of("connected");
+
+    @Mock
+    ChannelsCloudApi channelsCloudApi;
+
+    @Mock
+    IoDevicesCloudApi ioDevicesCloudApi;
+
+    @Mock
+    ServerCloudApi serverCloudApi;
+
+    private final ApiMetrics apiMetrics = new ApiMetrics();
+    private final AtomicLong nanos = new AtomicLong();
+    private final Ticker ticker = nanos::get;
+    /** Caffeine runs reloads (and its maintenance) here; tests run them explicitly. */
+    private final List<Runnable> refreshes = new ArrayList<>();
+
+    private final Executor refreshExecutor = refreshes::add;
+    private CacheApi cacheApi;
+
+    @BeforeEach
+    void setUp() {
+        given(serverCloudApi.getApiMetrics()).willReturn(apiMetrics);
+        cacheApi =
+                new CacheApi(CACHE_EVICT, channelsCloudApi, ioDevicesCloudApi, serverCloudApi, refreshExecutor, ticker);
+    }
+
+    @Test
+    @DisplayName("should serve stale value and reload it in the background")
+    void refreshAhead() throws Exception {
+        // given
+        var oldDevices = List.of(mock(Device.class));
+        var newDevices = List.of(mock(Device.class));
+        given(ioDevicesCloudApi.getIoDevices(INCLUDE)).willReturn(oldDevices, newDevices);
+        cacheApi.getIoDevices(INCLUDE);
+        advance(CACHE_EVICT + 1);
+
+        // when
+        var stale = cacheApi.getIoDevices(INCLUDE);
+        var alsoStale = cacheApi.getIoDevices(INCLUDE);
+
+        // then
+        assertThat(stale).isSameAs(oldDevices);
+        assertThat(alsoStale).isSameAs(oldDevices);
+        verify(ioDevicesCloudApi, times(1)).getIoDevices(INCLUDE);
+
+        // when
+        runRefreshes();
+
+        // then
+        assertThat(cacheApi.getIoDevices(INCLUDE)).isSameAs(newDevices);
+        verify(ioDevicesCloudApi, times(2)).getIoDevices(INCLUDE);
+        var metrics = apiMetrics.snapshot();
+        assertThat(metrics.cacheStaleServes()).isEqualTo(2);
+        assertThat(metrics.cacheMisses()).isEqualTo(1);
+        assertThat(metrics.cacheRefreshes()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should load value again after hard expiry")
+    void hardExpiry() throws Exception {
+        // given
+        var oldDevices = List.of(mock(Device.class));
+        var newDevices = List.of(mock(Device.class));
+        given(ioDevicesCloudApi.getIoDevices(INCLUDE)).willReturn(oldDevices, newDevices);
+        cacheApi.getIoDevices(INCLUDE);
+        advance((long) CACHE_EVICT * CacheApi.HARD_EXPIRY_MULTIPLIER + 1);
+
+        // when
+        var devices = cacheApi.getIoDevices(INCLUDE);
+
+        // then
+        assertThat(devices).isSameAs(newDevices);
+        verify(ioDevicesCloudApi, times(2)).getIoDevices(INCLUDE);
+        assertThat(apiMetrics.snapshot().cacheStaleServes()).isZero();
+    }
+
+    @Test
+    @DisplayName("should find device in cached list by ID")
+    void findDeviceById() throws Exception {
+        // given
+        var first = device(1);
+        var second = device(2);
+        given(ioDevicesCloudApi.getIoDevices(INCLUDE)).willReturn(List.of(first, second));
+
+        // when
+        var device = cacheApi.getIoDevice(2, INCLUDE);
+
+        // then
+        assertThat(device).isSameAs(second);
+        verify(ioDevicesCloudApi, never()).getIoDevice(anyInt(), anyList());
+    }
+
+    @Test
+    @DisplayName("should cache the same include only once regardless of order")
+    void normalizeInclude() throws Exception {
+        // given
+        var devices = List.of(device(1));
+        given(ioDevicesCloudApi.getIoDevices(List.of("channels", "connected"))).willReturn(devices);
+
+        // when
+        var first = cacheApi.getIoDevices(List.of("connected", "channels"));
+        var second = cacheApi.getIoDevices(List.of("channels", "connected", "channels"));
+
+        // then
+        assertThat(first).isSameAs(devices);
+        assertThat(second).isSameAs(devices);
+        verify(ioDevicesCloudApi, times(1)).getIoDevices(anyList());
+    }
+
+    @Test
+    @DisplayName("should load state of only the changed channel after executing an action")
+    void invalidateStateAfterAction() throws Exception {
+        // given
+        var stateInclude = List.of("state");
+        var changed = channel(1);
+        var untouched = channel(2);
+        given(channelsCloudApi.getChannels(stateInclude)).willReturn(List.of(changed, untouched));
+        var reloaded = channel(1);
+        given(channelsCloudApi.getChannel(1, stateInclude)).willReturn(reloaded);
+        var withoutState = List.of(channel(1));
+        given(channelsCloudApi.getChannels(INCLUDE)).willReturn(withoutState);
+        cacheApi.getChannels(stateInclude);
+        cacheApi.getChannels(INCLUDE);
+
+        // when
+        cacheApi.executeAction(new ChannelExecuteActionRequest(), 1);
+
+        // then
+        assertThat(cacheApi.getChannel(1, stateInclude)).isSameAs(reloaded);
+        assertThat(cacheApi.getChannel(1, stateInclude)).isSameAs(reloaded);
+        assertThat(cacheApi.getChannel(2, stateInclude)).isSameAs(untouched);
+        assertThat(cacheApi.getChannels(INCLUDE)).isSameAs(withoutState);
+        verify(channelsCloudApi, times(1)).getChannels(stateInclude);
+        verify(channelsCloudApi, times(1)).getChannel(1, stateInclude);
+        verify(channelsCloudApi, times(1)).getChannels(INCLUDE);
+    }
+
+    @Test
+    @DisplayName("should prefer list over single channel once the list is loaded again")
+    void preferFresherEntry() throws Exception {
+        // given
+        var stateInclude = List.of("state");
+        var listed = channel(1);
+        var polled = channel(1);
+        given(channelsCloudApi.getChannels(stateInclude)).willReturn(List.of(listed), List.of(polled));
+        var single = channel(1);
+        given(channelsCloudApi.getChannel(1, stateInclude)).willReturn(single);
+        cacheApi.getChannels(stateInclude);
+        cacheApi.executeAction(new ChannelExecuteActionRequest(), 1);
+        advance(1);
+        var afterAction = cacheApi.getChannel(1, stateInclude);
+        advance(1);
+
+        // when
+        cacheApi.fetchChannels(stateInclude);
+
+        // then
+        assertThat(afterAction).isSameAs(single);
+        assertThat(cacheApi.getChannel(1, stateInclude)).isSameAs(polled);
+    }
+
+    @Test
+    @DisplayName("should load single channel again only after action on this channel")
+    void invalidateSingleChannel() throws Exception {
+        // given
+        var stateInclude = List.of("state");
+        given(channelsCloudApi.getChannels(stateInclude)).willReturn(List.of());
+        var oldChannel = channel(1);
+        var newChannel = channel(1);
+        given(channelsCloudApi.getChannel(1, stateInclude)).willReturn(oldChannel, newChannel);
+        var otherChannel = channel(2);
+        given(channelsCloudApi.getChannel(2, stateInclude)).willReturn(otherChannel);
+        cacheApi.getChannel(1, stateInclude);
+        cacheApi.getChannel(2, stateInclude);
+
+        // when
+        cacheApi.executeAction(new ChannelExecuteActionRequest(), 1);
+
+        // then
+        assertThat(cacheApi.getChannel(1, stateInclude)).isSameAs(newChannel);
+        assertThat(cacheApi.getChannel(2, stateInclude)).isSameAs(otherChannel);
+        verify(channelsCloudApi, times(1)).getChannel(2, stateInclude);
+    }
+
+    @Test
+    @DisplayName("should fetch fresh value for polling and keep it for cached reads")
+    void fetchBypassesStaleValue() throws Exception {
+        // given
+        var oldDevices = List.of(device(1));
+        var newDevices = List.of(device(1));
+        given(ioDevicesCloudApi.getIoDevices(INCLUDE)).willReturn(oldDevices, newDevices);
+        cacheApi.getIoDevices(INCLUDE);
+        advance(CACHE_EVICT + 1);
+
+        // when
+        var fetched = cacheApi.fetchIoDevices(INCLUDE);
+
+        // then
+        assertThat(fetched).isSameAs(newDevices);
+        assertThat(cacheApi.getIoDevices(INCLUDE)).isSameAs(newDevices);
+        assertThat(cacheApi.getIoDevice(1, INCLUDE)).isSameAs(newDevices.get(0));
+        verify(ioDevicesCloudApi, times(2)).getIoDevices(INCLUDE);
+        assertThat(apiMetrics.snapshot().cacheStaleServes()).isZero();
+    }
+
+    @Test
+    @DisplayName("should read single channel directly without reloading list")
+    void fetchChannel() throws Exception {
+        // given
+        var stateInclude = List.of("state");
+        var listed = List.of(channel(1));
+        given(channelsCloudApi.getChannels(stateInclude)).willReturn(listed);
+        var fetched = channel(1);
+        given(channelsCloudApi.getChannel(1, stateInclude)).willReturn(fetched);
+        cacheApi.getChannels(stateInclude);
+        cacheApi.executeAction(new ChannelExecuteActionRequest(), 1);
+        advance(1);
+
+        // when
+        var channel = cacheApi.fetchChannel(1, stateInclude);
+
+        // then
+        assertThat(channel).isSameAs(fetched);
+        assertThat(cacheApi.getChannel(1, stateInclude)).isSameAs(fetched);
+        verify(channelsCloudApi, times(1)).getChannels(stateInclude);
+        verify(channelsCloudApi, times(1)).getChannel(1, stateInclude);
+    }
+
+    private static Device device(int id) {
+        var device = mock(Device.class);
+        lenient().when(device.getId()).thenReturn(id);
+        return device;
+    }
+
+    private static Channel channel(int id) {
+        var channel = mock(Channel.class);
+        lenient().when(channel.getId()).thenReturn(id);
+        return channel;
+    }
+
+    private void runRefreshes() {
+        while (!refreshes.isEmpty()) {
+            refreshes.remove(0).run();
+        }
+    }
+
+    private void advance(long seconds) {
+        nanos.addAndGet(SECONDS.toNanos(seconds));
+    }
+}
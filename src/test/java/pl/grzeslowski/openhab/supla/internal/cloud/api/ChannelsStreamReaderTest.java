@@ -0,0 +1,95 @@
+package pl.grzeslowski.openhab.supla.internal.cloud.api;
+
+import static io.swagger.client.model.ChannelFunctionEnumNames.LIGHTSWITCH;
+import static io.swagger.client.model.ChannelFunctionEnumNames.OPENINGSENSOR_GATE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.swagger.client.JSON;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class ChannelsStreamReaderTest {
+    private final ChannelsStreamReader reader = new ChannelsStreamReader(new JSON().getGson());
+
+    @Test
+    @DisplayName("should read only fields used by handlers and skip everything else")
+    void read() throws Exception {
+        // given
+        var body = """
+            [
+              {
+                "id": 11,
+                "channelNumber": 0,
+                "caption": "Lamp",
+                "hidden": false,
+                "param1": 5,
+                "param2": null,
+                "param3": 0,
+                "function": {"id": 140, "name": "LIGHTSWITCH", "caption": "Light switch",
+                             "possibleActions": [{"id": 10, "name": "TURN_ON"}, {"id": 20, "name": "TURN_OFF"}]},
+                "type": {"id": 2900, "name": "RELAY", "output": true},
+                "supportedFunctions": [{"id": 130, "name": "POWERSWITCH"}, {"id": 140, "name": "LIGHTSWITCH"}],
+                "config": {"relatedChannelId": null, "timeSettingAvailable": true},
+                "iodevice": {"id": 1, "name": "ZAMEL ROW-01", "channels": [{"id": 11}]},
+                "location": {"id": 3, "caption": "Home"},
+                "state": {"on": true, "connected": true}
+              },
+              {
+                "id": 12,
+                "caption": null,
+                "hidden": true,
+                "param2": 11,
+                "param3": 1,
+                "function": {"id": 60, "name": "OPENINGSENSOR_GATE"},
+                "type": null,
+                "state": {"hi": false}
+              }
+            ]
+            """;
+
+        // when
+        var channels = reader.read(new StringReader(body));
+
+        // then
+        assertThat(channels).hasSize(2);
+        var lamp = channels.get(0);
+        assertThat(lamp.getId()).isEqualTo(11);
+        assertThat(lamp.getCaption()).isEqualTo("Lamp");
+        assertThat(lamp.isHidden()).isFalse();
+        assertThat(lamp.getParam1()).isNull();
+        assertThat(lamp.getParam2()).isNull();
+        assertThat(lamp.getParam3()).isZero();
+        assertThat(lamp.getFunction().getName()).isEqualTo(LIGHTSWITCH);
+        assertThat(lamp.getType().isOutput()).isTrue();
+        assertThat(lamp.getState().isOn()).isTrue();
+        var sensor = channels.get(1);
+        assertThat(sensor.getId()).isEqualTo(12);
+        assertThat(sensor.getCaption()).isNull();
+        assertThat(sensor.isHidden()).isTrue();
+        assertThat(sensor.getParam2()).isEqualTo(11);
+        assertThat(sensor.getParam3()).isEqualTo(1);
+        assertThat(sensor.getFunction().getName()).isEqualTo(OPENINGSENSOR_GATE);
+        assertThat(sensor.getType()).isNull();
+        assertThat(sensor.getState().isHi()).isFalse();
+    }
+
+    @Test
+    @DisplayName("should fail when response is not a list of channels")
+    void notList() {
+        assertThatThrownBy(() -> reader.read(new StringReader("{\"error\": \"boom\"}")))
+                .isInstanceOfAny(IOException.class, IllegalStateException.class);
+    }
+
+    @Test
+    @DisplayName("should read only responses without includes other than state")
+    void canRead() {
+        assertThat(ChannelsStreamReader.canRead(List.of())).isTrue();
+        assertThat(ChannelsStreamReader.canRead(List.of("state"))).isTrue();
+        assertThat(ChannelsStreamReader.canRead(List.of("state", "iodevice"))).isFalse();
+        assertThat(ChannelsStreamReader.canRead(List.of("supportedFunctions"))).isFalse();
+    }
+}
@@ -0,0 +1,133 @@
+package pl.grzeslowski.openhab.supla.internal.cloud.api;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static pl.grzeslowski.openhab.supla.internal.cloud.api.CircuitBreaker.FAILURE_THRESHOLD;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class CircuitBreakerTest {
+    private final MutableClock clock = new MutableClock();
+    /** Jitter returns the longest possible backoff. */
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker("read", clock, () -> 1.0);
+
+    @Test
+    @DisplayName("should open circuit after consecutive failures")
+    void open() throws Exception {
+        // given
+        for (int i = 0; i < FAILURE_THRESHOLD - 1; i++) {
+            circuitBreaker.acquire();
+            circuitBreaker.onFailure(null);
+        }
+        assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+        // when
+        circuitBreaker.acquire();
+        circuitBreaker.onFailure(null);
+
+        // then
+        assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThatThrownBy(circuitBreaker::acquire)
+                .isInstanceOf(CircuitOpenException.class)
+                .extracting("retryAt")
+                .isEqualTo(clock.instant().plus(CircuitBreaker.BASE_BACKOFF));
+    }
+
+    @Test
+    @DisplayName("should let only one probe through when half-open and close circuit on its success")
+    void halfOpen() throws Exception {
+        // given
+        openCircuit();
+        clock.advance(CircuitBreaker.BASE_BACKOFF);
+
+        // when
+        circuitBreaker.acquire();
+
+        // then
+        assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThatThrownBy(circuitBreaker::acquire).isInstanceOf(CircuitOpenException.class);
+
+        // when
+        circuitBreaker.onSuccess();
+
+        // then
+        assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.CLOSED);
+        circuitBreaker.acquire();
+    }
+
+    @Test
+    @DisplayName("should double backoff when probe fails")
+    void exponentialBackoff() throws Exception {
+        // given
+        openCircuit();
+        clock.advance(CircuitBreaker.BASE_BACKOFF);
+        circuitBreaker.acquire();
+
+        // when
+        circuitBreaker.onFailure(null);
+
+        // then
+        assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(circuitBreaker.retryAt())
+                .isEqualTo(clock.instant().plus(CircuitBreaker.BASE_BACKOFF.multipliedBy(2)));
+    }
+
+    @Test
+    @DisplayName("should open circuit right away until time requested by Supla Cloud")
+    void retryAfter() throws Exception {
+        // given
+        var retryAt = clock.instant().plus(Duration.ofMinutes(7));
+        circuitBreaker.acquire();
+
+        // when
+        circuitBreaker.onFailure(retryAt);
+
+        // then
+        assertThat(circuitBreaker.state()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(circuitBreaker.retryAt()).isEqualTo(retryAt);
+    }
+
+    @Test
+    @DisplayName("should cap backoff")
+    void maxBackoff() {
+        assertThat(CircuitBreaker.backoff(1)).isEqualTo(CircuitBreaker.BASE_BACKOFF);
+        assertThat(CircuitBreaker.backoff(3)).isEqualTo(CircuitBreaker.BASE_BACKOFF.multipliedBy(4));
+        assertThat(CircuitBreaker.backoff(100)).isEqualTo(CircuitBreaker.MAX_BACKOFF);
+    }
+
+    private void openCircuit() throws Exception {
+        for (int i = 0; i < FAILURE_THRESHOLD; i++) {
+            circuitBreaker.acquire();
+            circuitBreaker.onFailure(null);
+        }
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
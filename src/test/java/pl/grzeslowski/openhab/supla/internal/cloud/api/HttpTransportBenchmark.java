@@ -0,0 +1,93 @@
+package pl.grzeslowski.openhab.supla.internal.cloud.api;
+
+import static com.squareup.okhttp.logging.HttpLoggingInterceptor.Level.BODY;
+import static com.squareup.okhttp.logging.HttpLoggingInterceptor.Level.NONE;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.Request;
+import com.sun.net.httpserver.HttpServer;
+import java.net.InetSocketAddress;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures per-request overhead of the HTTP transport against a local stub server.
+ *
+ * <p>Run with {@code mvn test -Dtest=HttpTransportBenchmark -Dbenchmark=true}.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class HttpTransportBenchmark {
+    private static final Logger logger = LoggerFactory.getLogger(HttpTransportBenchmark.class);
+    private static final int WARM_UP = 500;
+    private static final int REQUESTS = 5_000;
+    private static final byte[] BODY_BYTES = "[{\"id\":1,\"state\":{\"on\":true}}]".getBytes(UTF_8);
+
+    private HttpServer server;
+    private String url;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/channels", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, BODY_BYTES.length);
+            try (var body = exchange.getResponseBody()) {
+                body.write(BODY_BYTES);
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/api/channels";
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    @DisplayName("should compare per-request overhead of HTTP clients")
+    void benchmark() throws Exception {
+        var newClientPerRequest = measure(OkHttpClient::new);
+        var shared = SharedHttpClient.share(new OkHttpClient());
+        var sharedClient = measure(() -> shared);
+        var withNone = SharedHttpClient.share(new OkHttpClient());
+        withNone.interceptors().add(new OneLineHttpLoggingInterceptor(__ -> {}, NONE));
+        var loggingNone = measure(() -> withNone);
+        var withBody = SharedHttpClient.share(new OkHttpClient());
+        withBody.interceptors().add(new OneLineHttpLoggingInterceptor(__ -> {}, BODY));
+        var loggingBody = measure(() -> withBody);
+
+        logger.info(
+                "Average time per request: new client per request={} µs, shared client={} µs, "
+                        + "shared client + logging NONE={} µs, shared client + logging BODY={} µs",
+                newClientPerRequest,
+                sharedClient,
+                loggingNone,
+                loggingBody);
+        assertThat(sharedClient).isPositive();
+    }
+
+    private long measure(Supplier<OkHttpClient> client) throws Exception {
+        for (int i = 0; i < WARM_UP; i++) {
+            call(client.get());
+        }
+        var start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            call(client.get());
+        }
+        return (System.nanoTime() - start) / REQUESTS / 1_000;
+    }
+
+    private void call(OkHttpClient client) throws Exception {
+        var response = client.newCall(new Request.Builder().url(url).build()).execute();
+        assertThat(response.body().bytes()).hasSize(BODY_BYTES.length);
+    }
+}
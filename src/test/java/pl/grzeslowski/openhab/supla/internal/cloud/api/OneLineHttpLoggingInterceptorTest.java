@@ -0,0 +1,80 @@
+package pl.grzeslowski.openhab.supla.internal.cloud.api;
+
+import static com.squareup.okhttp.logging.HttpLoggingInterceptor.Level.BASIC;
+import static com.squareup.okhttp.logging.HttpLoggingInterceptor.Level.NONE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+import com.squareup.okhttp.Interceptor;
+import com.squareup.okhttp.MediaType;
+import com.squareup.okhttp.Protocol;
+import com.squareup.okhttp.Request;
+import com.squareup.okhttp.Response;
+import com.squareup.okhttp.ResponseBody;
+import com.squareup.okhttp.logging.HttpLoggingInterceptor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class OneLineHttpLoggingInterceptorTest {
+    @Mock
+    Interceptor.Chain chain;
+
+    @Mock
+    HttpLoggingInterceptor.Logger logger;
+
+    Request request = new Request.Builder().url("http://localhost/api/channels").build();
+    Response response;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        response = new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(200)
+                .message("OK")
+                .body(ResponseBody.create(MediaType.parse("application/json"), "[]"))
+                .build();
+        given(chain.request()).willReturn(request);
+        given(chain.proceed(request)).willReturn(response);
+    }
+
+    @Test
+    @DisplayName("should pass request through without logging when level is NONE")
+    void none() throws Exception {
+        // given
+        var interceptor = new OneLineHttpLoggingInterceptor(logger, NONE);
+
+        // when
+        var result = interceptor.intercept(chain);
+
+        // then
+        assertThat(result).isSameAs(response);
+        verifyNoInteractions(logger);
+    }
+
+    @Test
+    @DisplayName("should log request and response as one message")
+    void oneLine() throws Exception {
+        // given
+        var interceptor = new OneLineHttpLoggingInterceptor(logger, BASIC);
+
+        // when
+        var result = interceptor.intercept(chain);
+
+        // then
+        assertThat(result).isSameAs(response);
+        var message = ArgumentCaptor.forClass(String.class);
+        verify(logger).log(message.capture());
+        assertThat(message.getValue())
+                .contains("--> GET http://localhost/api/channels")
+                .contains("<-- 200 OK");
+    }
+}
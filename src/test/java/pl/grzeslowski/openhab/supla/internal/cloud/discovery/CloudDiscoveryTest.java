@@ -0,0 +1,117 @@
+package pl.grzeslowski.openhab.supla.internal.cloud.discovery;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.SUPLA_CLOUD_DEVICE_TYPE;
+import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.SUPLA_CLOUD_SERVER_TYPE;
+
+import io.swagger.client.model.Device;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.openhab.core.config.discovery.DiscoveryListener;
+import org.openhab.core.config.discovery.DiscoveryResult;
+import org.openhab.core.thing.Bridge;
+import org.openhab.core.thing.ThingUID;
+import pl.grzeslowski.openhab.supla.internal.cloud.handler.CloudBridgeHandler;
+
+@ExtendWith(MockitoExtension.class)
+class CloudDiscoveryTest {
+    private static final ThingUID BRIDGE_UID = new ThingUID(SUPLA_CLOUD_SERVER_TYPE, "cloud");
+
+    @Mock
+    CloudBridgeHandler bridgeHandler;
+
+    @Mock
+    Bridge bridge;
+
+    @Mock
+    DiscoveryListener listener;
+
+    CloudDiscovery discovery;
+
+    @BeforeEach
+    void setUp() {
+        given(bridgeHandler.getThing()).willReturn(bridge);
+        given(bridge.getUID()).willReturn(BRIDGE_UID);
+        discovery = new CloudDiscovery(bridgeHandler);
+        discovery.addDiscoveryListener(listener);
+    }
+
+    @Test
+    @DisplayName("should use fresh snapshot of bridge instead of querying Supla Cloud")
+    void snapshot() throws Exception {
+        // given
+        given(bridgeHandler.findFreshSnapshotDevices(CloudDiscovery.SNAPSHOT_MAX_AGE))
+                .willReturn(List.of(device(1, "abc", "Light")));
+
+        // when
+        discovery.startScan();
+
+        // then
+        verify(bridgeHandler, never()).getIoDevices(any());
+        var captor = ArgumentCaptor.forClass(DiscoveryResult.class);
+        verify(listener).thingDiscovered(eq(discovery), captor.capture());
+        assertThat(captor.getValue().getLabel()).isEqualTo("Light");
+    }
+
+    @Test
+    @DisplayName("should query devices without includes when there is no fresh snapshot")
+    void noSnapshot() throws Exception {
+        // given
+        given(bridgeHandler.findFreshSnapshotDevices(CloudDiscovery.SNAPSHOT_MAX_AGE))
+                .willReturn(null);
+        given(bridgeHandler.getIoDevices(List.of())).willReturn(List.of(device(1, "abc", "Light")));
+
+        // when
+        discovery.startScan();
+
+        // then
+        verify(listener).thingDiscovered(eq(discovery), any());
+    }
+
+    @Test
+    @DisplayName("should publish all current devices and remove devices that disappeared")
+    void diff() throws Exception {
+        // given
+        var unchanged = device(1, "abc", "Light");
+        var removed = device(2, "def", "Gate");
+        given(bridgeHandler.findFreshSnapshotDevices(CloudDiscovery.SNAPSHOT_MAX_AGE))
+                .willReturn(null);
+        given(bridgeHandler.getIoDevices(List.of()))
+                .willReturn(List.of(unchanged, removed))
+                .willReturn(List.of(unchanged, device(3, "ghi", "Blinds")));
+        discovery.startScan();
+
+        // when
+        discovery.startScan();
+
+        // then
+        var captor = ArgumentCaptor.forClass(DiscoveryResult.class);
+        verify(listener, times(4)).thingDiscovered(eq(discovery), captor.capture());
+        assertThat(captor.getAllValues())
+                .extracting(DiscoveryResult::getLabel)
+                .containsExactlyInAnyOrder("Light", "Gate", "Light", "Blinds");
+        verify(listener).thingRemoved(eq(discovery), eq(new ThingUID(SUPLA_CLOUD_DEVICE_TYPE, BRIDGE_UID, "def")));
+    }
+
+    private static Device device(int id, String guid, String name) {
+        var device = mock(Device.class);
+        lenient().when(device.getId()).thenReturn(id);
+        lenient().when(device.getGUIDString()).thenReturn(guid);
+        lenient().when(device.getName()).thenReturn(name);
+        return device;
+    }
+}
@@ -1,15 +1,31 @@
 package pl.grzeslowski.openhab.supla.internal.cloud.executors;
 
 import static io.swagger.client.model.ChannelFunctionActionEnum.*;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static pl.grzeslowski.openhab.supla.internal.cloud.executors.SuplaLedCommandExecutor.DEFAULT_MERGE_WINDOW;
 
 import io.github.glytching.junit.extension.random.Random;
 import io.github.glytching.junit.extension.random.RandomBeansExtension;
 import io.swagger.client.model.ChannelExecuteActionRequest;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.openhab.core.library.types.HSBType;
@@ -20,15 +36,25 @@ import pl.grzeslowski.openhab.supla.internal.cloud.api.ChannelsCloudApi;
 @ExtendWith(MockitoExtension.class)
 @ExtendWith(RandomBeansExtension.class)
 class SuplaLedCommandExecutorTest {
-    @InjectMocks
     SuplaLedCommandExecutor executor;
 
     @Mock
     ChannelsCloudApi channelsApi;
 
+    @Mock
+    ScheduledExecutorService scheduler;
+
+    @Captor
+    ArgumentCaptor<Runnable> flush;
+
     @Random
     int channelId;
 
+    @BeforeEach
+    void setUp() {
+        executor = new SuplaLedCommandExecutor(channelsApi, scheduler, DEFAULT_MERGE_WINDOW);
+    }
+
     @Test
     @DisplayName("should send update about change of brightness for dimmer")
     void dimmer(@Random int channelId) throws Exception {
@@ -89,4 +115,119 @@ class SuplaLedCommandExecutorTest {
                 .brightness(brightnessValue);
         verify(channelsApi).executeAction(expectedAction, channelId);
     }
+
+    @Test
+    @DisplayName("should merge changes within window into one action with the last value")
+    void mergeChanges() throws Exception {
+
+        // given
+        executor.setLedState(channelId, PercentType.ZERO);
+        executor.setLedState(channelId, HSBType.BLUE);
+        executor.changeColor(channelId, HSBType.RED);
+
+        // when
+        executor.changeColor(channelId, HSBType.GREEN);
+        executor.changeColorBrightness(channelId, new PercentType(30));
+        executor.changeBrightness(channelId, new PercentType(40));
+        verify(scheduler).schedule(flush.capture(), eq(DEFAULT_MERGE_WINDOW.toMillis()), eq(MILLISECONDS));
+        flush.getValue().run();
+
+        // then
+        verify(channelsApi)
+                .executeAction(
+                        new ChannelExecuteActionRequest()
+                                .action(SET_RGBW_PARAMETERS)
+                                .color("0xFF0000")
+                                .colorBrightness(100)
+                                .brightness(0),
+                        channelId);
+        verify(channelsApi)
+                .executeAction(
+                        new ChannelExecuteActionRequest()
+                                .action(SET_RGBW_PARAMETERS)
+                                .color("0x00FF00")
+                                .colorBrightness(30)
+                                .brightness(40),
+                        channelId);
+        verifyNoMoreInteractions(channelsApi);
+        assertThat(executor.getMergedCommands()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("should send next change right away when window ended without changes")
+    void closeWindow() throws Exception {
+
+        // given
+        executor.setLedState(channelId, PercentType.ZERO);
+        executor.changeBrightness(channelId, new PercentType(10));
+        verify(scheduler).schedule(flush.capture(), anyLong(), eq(MILLISECONDS));
+        flush.getValue().run();
+
+        // when
+        executor.changeBrightness(channelId, new PercentType(20));
+
+        // then
+        verify(channelsApi)
+                .executeAction(
+                        new ChannelExecuteActionRequest()
+                                .action(SET_RGBW_PARAMETERS)
+                                .brightness(20),
+                        channelId);
+        assertThat(executor.getMergedCommands()).isZero();
+    }
+
+    @Test
+    @DisplayName("should queue changes while slow API is sending and open window after sending")
+    void slowApi() throws Exception {
+
+        // given
+        var sending = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+                    sending.countDown();
+                    assertThat(release.await(5, SECONDS)).isTrue();
+                    return null;
+                })
+                .doNothing()
+                .when(channelsApi)
+                .executeAction(any(), eq(channelId));
+        executor.setLedState(channelId, PercentType.ZERO);
+        var first = CompletableFuture.runAsync(() -> {
+            try {
+                executor.changeBrightness(channelId, new PercentType(10));
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertThat(sending.await(5, SECONDS)).isTrue();
+
+        // when
+        executor.changeBrightness(channelId, new PercentType(20));
+
+        // then
+        verify(channelsApi).executeAction(any(), eq(channelId));
+        verify(scheduler, never()).schedule(any(Runnable.class), anyLong(), any());
+
+        // when
+        release.countDown();
+        first.get(5, SECONDS);
+        verify(scheduler).schedule(flush.capture(), eq(DEFAULT_MERGE_WINDOW.toMillis()), eq(MILLISECONDS));
+        flush.getValue().run();
+
+        // then
+        var order = inOrder(channelsApi);
+        order.verify(channelsApi)
+                .executeAction(
+                        new ChannelExecuteActionRequest()
+                                .action(SET_RGBW_PARAMETERS)
+                                .brightness(10),
+                        channelId);
+        order.verify(channelsApi)
+                .executeAction(
+                        new ChannelExecuteActionRequest()
+                                .action(SET_RGBW_PARAMETERS)
+                                .brightness(20),
+                        channelId);
+        verifyNoMoreInteractions(channelsApi);
+    }
 }
@@ -0,0 +1,63 @@
+package pl.grzeslowski.openhab.supla.internal.cloud.handler;
+
+import static java.time.Duration.ofMinutes;
+import static java.time.Duration.ofSeconds;
+import static java.time.ZoneOffset.UTC;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Instant;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pl.grzeslowski.openhab.supla.internal.cloud.api.ServerCloudApi.ApiCalls;
+
+class AdaptiveRefreshIntervalTest {
+    private static final Instant NOW = Instant.parse("2024-01-01T12:00:00Z");
+    private final AdaptiveRefreshInterval interval = new AdaptiveRefreshInterval(ofSeconds(30), 20, 2);
+
+    @Test
+    @DisplayName("should use configured interval when limits are not known yet")
+    void unknownLimits() {
+        assertThat(interval.next(apiCalls(0, 0, ofMinutes(60).toSeconds()), NOW))
+                .isEqualTo(ofSeconds(30));
+    }
+
+    @Test
+    @DisplayName("should use configured interval when there is plenty of API calls")
+    void plentyOfCalls() {
+        assertThat(interval.next(apiCalls(2_000, 1_900, ofMinutes(10).toSeconds()), NOW))
+                .isEqualTo(ofSeconds(30));
+    }
+
+    @Test
+    @DisplayName("should spread remaining API calls above reserve until reset")
+    void stretch() {
+        // reserve = 400, (500 - 400) / 2 = 50 refreshes in 50 minutes
+        assertThat(interval.next(apiCalls(2_000, 500, ofMinutes(50).toSeconds()), NOW))
+                .isEqualTo(ofMinutes(1));
+    }
+
+    @Test
+    @DisplayName("should wait till reset when only reserve is left")
+    void reserveOnly() {
+        assertThat(interval.next(apiCalls(2_000, 400, ofMinutes(20).toSeconds()), NOW))
+                .isEqualTo(ofMinutes(20));
+    }
+
+    @Test
+    @DisplayName("should use configured interval when reset is in the past")
+    void resetInPast() {
+        assertThat(interval.next(apiCalls(2_000, 0, -10), NOW)).isEqualTo(ofSeconds(30));
+    }
+
+    @Test
+    @DisplayName("should reject reserve out of range")
+    void invalidReserve() {
+        assertThatThrownBy(() -> new AdaptiveRefreshInterval(ofSeconds(30), 101, 2))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static ApiCalls apiCalls(int limit, int remaining, long secondsToReset) {
+        return new ApiCalls(NOW.plusSeconds(secondsToReset).atZone(UTC), limit, limit - remaining, remaining, 0, 0, 0);
+    }
+}
@@ -4,15 +4,21 @@ import static io.swagger.client.model.ChannelFunctionActionEnum.*;
 import static io.swagger.client.model.ChannelFunctionEnumNames.*;
 import static java.lang.String.valueOf;
 import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static org.apache.commons.lang3.reflect.FieldUtils.getAllFieldsList;
 import static org.apache.commons.lang3.reflect.FieldUtils.getField;
 import static org.apache.commons.lang3.reflect.FieldUtils.writeField;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.openhab.core.library.types.OnOffType.*;
@@ -29,7 +35,11 @@ import io.swagger.client.model.ChannelState;
 import io.swagger.client.model.ChannelType;
 import io.swagger.client.model.Device;
 import java.lang.reflect.Field;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.stream.Collectors;
 import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
@@ -44,6 +54,7 @@ import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.openhab.core.config.core.Configuration;
 import org.openhab.core.library.types.HSBType;
@@ -60,11 +71,13 @@ import org.openhab.core.thing.ThingStatusDetail;
 import org.openhab.core.thing.ThingStatusInfo;
 import org.openhab.core.thing.ThingUID;
 import org.openhab.core.thing.binding.ThingHandlerCallback;
+import org.openhab.core.thing.binding.builder.ChannelBuilder;
 import org.openhab.core.types.State;
 import pl.grzeslowski.openhab.supla.internal.cloud.AdditionalChannelType;
 import pl.grzeslowski.openhab.supla.internal.cloud.api.IoDevicesCloudApi;
 import pl.grzeslowski.openhab.supla.internal.cloud.executors.LedCommandExecutor;
 import pl.grzeslowski.openhab.supla.internal.cloud.executors.LedCommandExecutorFactory;
+import pl.grzeslowski.openhab.supla.internal.cloud.webhook.CloudWebhookPayload;
 
 @SuppressWarnings({"WeakerAccess", "unused"})
 @ExtendWith({MockitoExtension.class, RandomBeansExtension.class})
@@ -101,6 +114,9 @@ class CloudDeviceHandlerTest {
     @Mock
     ThingHandlerCallback callback;
 
+    @Mock
+    ScheduledExecutorService cloudScheduler;
+
     // Channels
     @Mock
     Channel lightChannel;
@@ -213,6 +229,14 @@ class CloudDeviceHandlerTest {
         }
     }
 
+    private Channel findChannel(InvocationOnMock invocationOnMock) {
+        int channelId = invocationOnMock.getArgument(0);
+        return allChannels.stream()
+                .filter(channel -> channel.getId() == channelId)
+                .findAny()
+                .orElseThrow(IllegalArgumentException::new);
+    }
+
     @SuppressWarnings("DataFlowIssue")
     void setUpInternalInitialize() throws Exception {
         given(thing.getBridgeUID()).willReturn(bridgeUid);
@@ -220,21 +244,20 @@ class CloudDeviceHandlerTest {
         given(bridge.getHandler()).willReturn(bridgeHandler);
         given(thing.getConfiguration()).willReturn(configuration);
         given(configuration.get(SUPLA_DEVICE_CLOUD_ID)).willReturn(cloudId);
-        given(bridgeHandler.getIoDevice(eq(cloudId), any())).willReturn(device);
+        // devices are initialized from snapshot of bridge
+        given(bridgeHandler.findSnapshotDevice(cloudId)).willReturn(device);
+        lenient().when(bridgeHandler.getIoDevice(eq(cloudId), any())).thenReturn(device);
         given(device.isConnected()).willReturn(true);
         given(device.isEnabled()).willReturn(true);
         given(device.getChannels()).willReturn(allChannels);
         given(thing.getUID()).willReturn(thingUID);
         given(ledCommandExecutorFactory.newLedCommandExecutor(bridgeHandler)).willReturn(ledCommandExecutor);
-        given(bridgeHandler.getChannel(anyInt(), any())).willAnswer(invocationOnMock -> {
-            int channelId = invocationOnMock.getArgument(0);
-            return allChannels.stream()
-                    .filter(channel -> channel.getId() == channelId)
-                    .findAny()
-                    .orElseThrow(IllegalArgumentException::new);
-        });
+        // commands use channels loaded during initialization, only refresh queries single channel
+        lenient().when(bridgeHandler.getChannel(anyInt(), any())).thenAnswer(this::findChannel);
+        // confirmations read channel directly from Supla Cloud
+        lenient().when(bridgeHandler.fetchChannel(anyInt(), any())).thenAnswer(this::findChannel);
 
-        handler = new CloudDevice(thing, ledCommandExecutorFactory);
+        handler = new CloudDevice(thing, ledCommandExecutorFactory, cloudScheduler);
         writeField(handler, "callback", callback, true);
         doAnswer(__ -> {
                     writeField(handler, "thing", thing, true);
@@ -246,6 +269,94 @@ class CloudDeviceHandlerTest {
         verify(callback).statusUpdated(thing, new ThingStatusInfo(ThingStatus.ONLINE, ThingStatusDetail.NONE, null));
     }
 
+    @Test
+    @DisplayName("should initialize from snapshot of bridge without querying Supla Cloud")
+    void initializeFromSnapshot() throws Exception {
+        verify(bridgeHandler, never()).getIoDevice(anyInt(), any());
+        verify(bridgeHandler, never()).getChannel(anyInt(), any());
+    }
+
+    @Test
+    @DisplayName("should load device from Supla Cloud in background when it is not in snapshot of bridge")
+    void initializeWithoutSnapshot() throws Exception {
+
+        // given
+        given(bridgeHandler.findSnapshotDevice(cloudId)).willReturn(null);
+        var otherHandler = new CloudDevice(thing, ledCommandExecutorFactory, cloudScheduler);
+        writeField(otherHandler, "callback", callback, true);
+
+        // when
+        otherHandler.internalInitialize();
+
+        // then
+        verify(bridgeHandler, never()).getIoDevice(anyInt(), any());
+        var initialization = ArgumentCaptor.forClass(Runnable.class);
+        verify(cloudScheduler).submit(initialization.capture());
+
+        // when
+        initialization.getValue().run();
+
+        // then
+        verify(bridgeHandler, times(3)).getIoDevice(eq(cloudId), any());
+        verify(callback, times(2))
+                .statusUpdated(thing, new ThingStatusInfo(ThingStatus.ONLINE, ThingStatusDetail.NONE, null));
+    }
+
+    @Test
+    @DisplayName("should start with states saved on disk and show their age when Supla Cloud is unreachable")
+    void initializeFromRestoredSnapshot() throws Exception {
+
+        // given
+        final ChannelUID lightChannelUID = findLightChannelUID();
+        given(thing.getChannels())
+                .willReturn(List.of(ChannelBuilder.create(lightChannelUID).build()));
+        given(lightChannel.getState()).willReturn(new ChannelState().on(true));
+        given(bridgeHandler.findSnapshotChannel(lightChannelId)).willReturn(lightChannel);
+        var restored = new CloudSnapshot(
+                Map.of(cloudId, device),
+                Map.of(lightChannelId, lightChannel),
+                Instant.now().minus(Duration.ofMinutes(5)),
+                true);
+        given(bridgeHandler.findRestoredSnapshot()).willReturn(restored);
+        var otherHandler = new CloudDevice(thing, ledCommandExecutorFactory, cloudScheduler);
+        writeField(otherHandler, "callback", callback, true);
+
+        // when
+        otherHandler.internalInitialize();
+
+        // then
+        verify(callback).stateUpdated(lightChannelUID, ON);
+        var status = ArgumentCaptor.forClass(ThingStatusInfo.class);
+        verify(callback, atLeastOnce()).statusUpdated(eq(thing), status.capture());
+        assertThat(status.getValue().getStatus()).isEqualTo(ThingStatus.ONLINE);
+        assertThat(status.getValue().getDescription()).startsWith("@text/supla.online.snapshot-age [5, ");
+        verify(bridgeHandler, never()).getChannel(anyInt(), any());
+    }
+
+    @Test
+    @DisplayName("should initialize from snapshot when device that was offline at start connects")
+    void recoverDeviceOfflineAtStart() throws Exception {
+
+        // given
+        given(device.isConnected()).willReturn(false, true);
+        var otherHandler = new CloudDevice(thing, ledCommandExecutorFactory, cloudScheduler);
+        writeField(otherHandler, "callback", callback, true);
+        otherHandler.internalInitialize();
+        var snapshot = new CloudSnapshot(Map.of(cloudId, device), Map.of(), Instant.now(), false);
+
+        // when
+        otherHandler.refresh(snapshot);
+
+        // then
+        var status = ArgumentCaptor.forClass(ThingStatusInfo.class);
+        verify(callback, atLeastOnce()).statusUpdated(eq(thing), status.capture());
+        assertThat(status.getAllValues())
+                .extracting(ThingStatusInfo::getStatus)
+                .containsSubsequence(ThingStatus.ONLINE, ThingStatus.OFFLINE, ThingStatus.ONLINE);
+        verify(ledCommandExecutorFactory, times(2)).newLedCommandExecutor(bridgeHandler);
+        verify(bridgeHandler, never()).getIoDevice(anyInt(), any());
+    }
+
     @Test
     @DisplayName("should send request to Supla Cloud to turn light ON")
     void lightChannelOn() throws Exception {
@@ -262,6 +373,125 @@ class CloudDeviceHandlerTest {
         assertThat(value.getAction()).isEqualTo(TURN_ON);
     }
 
+    @Test
+    @DisplayName("should not query Supla Cloud for channel before executing command")
+    void commandDoesNotQueryChannel() throws Exception {
+
+        // given
+        final ChannelUID lightChannelUID = findLightChannelUID();
+
+        // when
+        handler.handleOnOffCommand(lightChannelUID, ON);
+
+        // then
+        verify(bridgeHandler, never()).getChannel(anyInt(), any());
+        verify(bridgeHandler).executeAction(any(), eq(lightChannelId));
+    }
+
+    @Test
+    @DisplayName("should publish expected state right after executing action")
+    void optimisticState() throws Exception {
+
+        // given
+        final ChannelUID lightChannelUID = findLightChannelUID();
+
+        // when
+        handler.handleOnOffCommand(lightChannelUID, ON);
+
+        // then
+        verifyUpdateState(lightChannelUID, ON);
+        verify(cloudScheduler)
+                .schedule(any(Runnable.class), eq(CloudDevice.CONFIRMATION_DELAY.toMillis()), eq(MILLISECONDS));
+        verify(bridgeHandler, never()).getChannel(anyInt(), any());
+    }
+
+    @Test
+    @DisplayName("should roll back optimistic state when Supla Cloud reports different one")
+    void rollbackOptimisticState() throws Exception {
+
+        // given
+        final ChannelUID lightChannelUID = findLightChannelUID();
+        given(lightChannel.getState()).willReturn(new ChannelState().on(false));
+        handler.handleOnOffCommand(lightChannelUID, ON);
+
+        // when
+        runConfirmation();
+
+        // then
+        var inOrder = inOrder(callback);
+        inOrder.verify(callback).stateUpdated(lightChannelUID, ON);
+        inOrder.verify(callback).stateUpdated(lightChannelUID, OFF);
+        verify(bridgeHandler).fetchChannel(lightChannelId, List.of("state"));
+        verify(bridgeHandler, never()).getChannel(anyInt(), any());
+    }
+
+    @Test
+    @DisplayName("should keep confirmation pending while channel is read and not apply read replaced by webhook")
+    void confirmationPendingWhileReading() throws Exception {
+
+        // given
+        final ChannelUID lightChannelUID = findLightChannelUID();
+        given(thing.getChannels())
+                .willReturn(List.of(ChannelBuilder.create(lightChannelUID).build()));
+        given(lightChannel.getState()).willReturn(new ChannelState().on(false));
+        handler.handleOnOffCommand(lightChannelUID, ON);
+        var confirmation = captureConfirmation();
+        given(bridgeHandler.fetchChannel(lightChannelId, List.of("state"))).willAnswer(__ -> {
+            handler.webhookStateChanged(
+                    new CloudWebhookPayload(lightChannelId, "LIGHTSWITCH", 0, new ChannelState().on(true)));
+            return lightChannel;
+        });
+
+        // when
+        confirmation.run();
+
+        // then
+        verify(callback, times(2)).stateUpdated(lightChannelUID, ON);
+        verify(callback, never()).stateUpdated(lightChannelUID, OFF);
+    }
+
+    @Test
+    @DisplayName("should not confirm state when newer action replaced it")
+    void skipReplacedConfirmation() throws Exception {
+
+        // given
+        final ChannelUID lightChannelUID = findLightChannelUID();
+        handler.handleOnOffCommand(lightChannelUID, ON);
+        var firstConfirmation = captureConfirmation();
+        handler.handleOnOffCommand(lightChannelUID, OFF);
+
+        // when
+        firstConfirmation.run();
+
+        // then
+        verify(bridgeHandler, never()).getChannel(anyInt(), any());
+        verify(bridgeHandler, never()).fetchChannel(anyInt(), any());
+    }
+
+    @Test
+    @DisplayName("should update state pushed by webhook and drop pending confirmation")
+    void webhookState() throws Exception {
+
+        // given
+        final ChannelUID lightChannelUID = findLightChannelUID();
+        given(thing.getChannels())
+                .willReturn(List.of(ChannelBuilder.create(lightChannelUID).build()));
+        handler.handleOnOffCommand(lightChannelUID, ON);
+        var confirmation = captureConfirmation();
+
+        // when
+        handler.webhookStateChanged(
+                new CloudWebhookPayload(lightChannelId, "LIGHTSWITCH", 0, new ChannelState().on(false)));
+        confirmation.run();
+
+        // then
+        var inOrder = inOrder(callback);
+        inOrder.verify(callback).stateUpdated(lightChannelUID, ON);
+        inOrder.verify(callback).stateUpdated(lightChannelUID, OFF);
+        verify(bridgeHandler, never()).getChannel(anyInt(), any());
+        verify(bridgeHandler, never()).fetchChannel(anyInt(), any());
+    }
+
     @Test
     @DisplayName("should send request to Supla Cloud to turn light OFF")
     void lightChannelOff() throws Exception {
@@ -589,6 +819,16 @@ class CloudDeviceHandlerTest {
         return new ChannelUID(thingUID, dimmerAndRgbChannelId + channelType.getSuffix());
     }
 
+    Runnable captureConfirmation() {
+        var captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(cloudScheduler, atLeastOnce()).schedule(captor.capture(), anyLong(), eq(MILLISECONDS));
+        return captor.getValue();
+    }
+
+    void runConfirmation() {
+        captureConfirmation().run();
+    }
+
     void verifyUpdateState(ChannelUID channelUID, State state) {
         verify(callback).stateUpdated(channelUID, state);
     }
@@ -0,0 +1,93 @@
+package pl.grzeslowski.openhab.supla.internal.cloud.handler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.swagger.client.model.Channel;
+import io.swagger.client.model.ChannelState;
+import io.swagger.client.model.Device;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CloudSnapshotStoreTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("should restore saved devices and channels with states")
+    void saveAndLoad() throws Exception {
+        // given
+        var file = directory.resolve("supla").resolve("cloud-snapshot-test.json.gz");
+        var store = new CloudSnapshotStore(file);
+        var channel = new Channel().id(11).caption("Lamp").state(new ChannelState().on(true));
+        var device = new Device().id(1).connected(true).enabled(true).channels(List.of(channel));
+        var fetchedAt = Instant.ofEpochMilli(1_700_000_000_000L);
+        var snapshot = new CloudSnapshot(Map.of(1, device), Map.of(11, channel), fetchedAt, false);
+
+        // when
+        store.save(snapshot);
+        var restored = store.load();
+
+        // then
+        assertThat(restored).isNotNull();
+        assertThat(restored.restored()).isTrue();
+        assertThat(restored.fetchedAt()).isEqualTo(fetchedAt);
+        var restoredDevice = restored.findDevice(1);
+        assertThat(restoredDevice).isNotNull();
+        assertThat(restoredDevice.isConnected()).isTrue();
+        assertThat(restoredDevice.getChannels()).extracting(Channel::getId).containsExactly(11);
+        var restoredChannel = restored.findChannel(11);
+        assertThat(restoredChannel).isNotNull();
+        assertThat(restoredChannel.getCaption()).isEqualTo("Lamp");
+        assertThat(restoredChannel.getState().isOn()).isTrue();
+        assertThat(Files.list(file.getParent())).containsExactly(file);
+    }
+
+    @Test
+    @DisplayName("should return null when nothing was saved yet")
+    void loadMissing() throws Exception {
+        // given
+        var store = new CloudSnapshotStore(directory.resolve("missing.json.gz"));
+
+        // when
+        var restored = store.load();
+
+        // then
+        assertThat(restored).isNull();
+    }
+
+    @Test
+    @DisplayName("should delete saved snapshot")
+    void delete() throws Exception {
+        // given
+        var file = directory.resolve("delete.json.gz");
+        var store = new CloudSnapshotStore(file);
+        store.save(new CloudSnapshot(Map.of(), Map.of(), Instant.now(), false));
+
+        // when
+        store.delete();
+
+        // then
+        assertThat(file).doesNotExist();
+        assertThat(store.load()).isNull();
+    }
+
+    @Test
+    @DisplayName("should fail on broken snapshot")
+    void loadBroken() throws Exception {
+        // given
+        var file = directory.resolve("broken.json.gz");
+        Files.writeString(file, "not gzip");
+        var store = new CloudSnapshotStore(file);
+
+        // when & then
+        assertThatThrownBy(store::load).isInstanceOf(IOException.class);
+    }
+}
@@ -0,0 +1,55 @@
+package pl.grzeslowski.openhab.supla.internal.cloud.handler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import io.swagger.client.model.Channel;
+import io.swagger.client.model.Device;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import pl.grzeslowski.openhab.supla.internal.cloud.api.ChannelsCloudApi;
+import pl.grzeslowski.openhab.supla.internal.cloud.api.IoDevicesCloudApi;
+
+@ExtendWith(MockitoExtension.class)
+class CloudSnapshotTest {
+    @Mock
+    IoDevicesCloudApi ioDevicesCloudApi;
+
+    @Mock
+    ChannelsCloudApi channelsCloudApi;
+
+    @Test
+    @DisplayName("should fetch all devices and channels with one call each and index them by ID")
+    void fetch() throws Exception {
+        // given
+        var device = mock(Device.class);
+        given(device.getId()).willReturn(1);
+        var firstChannel = mock(Channel.class);
+        given(firstChannel.getId()).willReturn(11);
+        var secondChannel = mock(Channel.class);
+        given(secondChannel.getId()).willReturn(12);
+        given(ioDevicesCloudApi.fetchIoDevices(CloudSnapshot.DEVICES_INCLUDE)).willReturn(List.of(device));
+        given(channelsCloudApi.fetchChannels(CloudSnapshot.CHANNELS_INCLUDE))
+                .willReturn(List.of(firstChannel, secondChannel));
+
+        // when
+        var snapshot = CloudSnapshot.fetch(ioDevicesCloudApi, channelsCloudApi);
+
+        // then
+        assertThat(snapshot.findDevice(1)).isSameAs(device);
+        assertThat(snapshot.findDevice(2)).isNull();
+        assertThat(snapshot.findChannel(11)).isSameAs(firstChannel);
+        assertThat(snapshot.findChannel(12)).isSameAs(secondChannel);
+        assertThat(snapshot.findChannel(13)).isNull();
+        verify(ioDevicesCloudApi).fetchIoDevices(CloudSnapshot.DEVICES_INCLUDE);
+        verify(channelsCloudApi).fetchChannels(CloudSnapshot.CHANNELS_INCLUDE);
+        verifyNoMoreInteractions(ioDevicesCloudApi, channelsCloudApi);
+    }
+}
@@ -0,0 +1,81 @@
+package pl.grzeslowski.openhab.supla.internal.cloud.handler;
+
+import static java.time.Duration.ofMinutes;
+import static java.time.Duration.ofSeconds;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Instant;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class WebhookRefreshIntervalTest {
+    private static final Instant NOW = Instant.parse("2024-01-01T12:00:00Z");
+    private final WebhookRefreshInterval interval = new WebhookRefreshInterval(ofMinutes(10), ofMinutes(30));
+
+    @Test
+    @DisplayName("should use adaptive delay before the first webhook")
+    void noWebhook() {
+        assertThat(interval.next(ofSeconds(30), NOW)).isEqualTo(ofSeconds(30));
+    }
+
+    @Test
+    @DisplayName("should slow down to sweep interval while webhooks are coming")
+    void webhooksComing() {
+        // given
+        interval.webhookReceived(NOW);
+
+        // when
+        var delay = interval.next(ofSeconds(30), NOW.plus(ofMinutes(5)));
+
+        // then
+        assertThat(delay).isEqualTo(ofMinutes(10));
+    }
+
+    @Test
+    @DisplayName("should keep adaptive delay when it is longer than sweep interval")
+    void adaptiveLonger() {
+        // given
+        interval.webhookReceived(NOW);
+
+        // when
+        var delay = interval.next(ofMinutes(20), NOW);
+
+        // then
+        assertThat(delay).isEqualTo(ofMinutes(20));
+    }
+
+    @Test
+    @DisplayName("should fall back to adaptive delay when webhooks stopped for quiet period")
+    void fallBackAfterQuietPeriod() {
+        // given
+        interval.webhookReceived(NOW);
+
+        // when
+        var delay = interval.next(ofSeconds(30), NOW.plus(ofMinutes(31)));
+
+        // then
+        assertThat(delay).isEqualTo(ofSeconds(30));
+    }
+
+    @Test
+    @DisplayName("should slow down again when webhooks come back")
+    void webhooksBack() {
+        // given
+        interval.webhookReceived(NOW);
+        interval.next(ofSeconds(30), NOW.plus(ofMinutes(31)));
+
+        // when
+        interval.webhookReceived(NOW.plus(ofMinutes(40)));
+
+        // then
+        assertThat(interval.next(ofSeconds(30), NOW.plus(ofMinutes(41)))).isEqualTo(ofMinutes(10));
+    }
+
+    @Test
+    @DisplayName("should reject quiet period that is not positive")
+    void invalidQuietPeriod() {
+        assertThatThrownBy(() -> new WebhookRefreshInterval(ofMinutes(10), ofSeconds(0)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,92 @@
+package pl.grzeslowski.openhab.supla.internal.cloud.webhook;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static pl.grzeslowski.openhab.supla.internal.cloud.webhook.CloudWebhookReceiver.Response.ACCEPTED;
+import static pl.grzeslowski.openhab.supla.internal.cloud.webhook.CloudWebhookReceiver.Response.BAD_REQUEST;
+import static pl.grzeslowski.openhab.supla.internal.cloud.webhook.CloudWebhookReceiver.Response.PAYLOAD_TOO_LARGE;
+import static pl.grzeslowski.openhab.supla.internal.cloud.webhook.CloudWebhookReceiver.Response.UNAUTHORIZED;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.NullSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class CloudWebhookReceiverTest {
+    private static final String TOKEN = "s3cr3t";
+
+    private final List<CloudWebhookPayload> payloads = new ArrayList<>();
+    private final CloudWebhookReceiver receiver = new CloudWebhookReceiver(TOKEN, payloads::add);
+
+    @Test
+    @DisplayName("should pass parsed state to listener")
+    void accept() {
+        // given
+        var body = """
+            {"userShortUniqueId": "abc", "channelId": 123, "channelFunction": "LIGHTSWITCH",
+             "timestamp": 1570437553, "state": {"on": true, "connected": true}}
+            """;
+
+        // when
+        var response = receiver.receive("Bearer " + TOKEN, body);
+
+        // then
+        assertThat(response).isEqualTo(ACCEPTED);
+        assertThat(payloads).singleElement().satisfies(payload -> {
+            assertThat(payload.channelId()).isEqualTo(123);
+            assertThat(payload.channelFunction()).isEqualTo("LIGHTSWITCH");
+            assertThat(payload.timestamp()).isEqualTo(1570437553L);
+            assertThat(payload.state().isOn()).isTrue();
+        });
+    }
+
+    @ParameterizedTest
+    @NullSource
+    @ValueSource(strings = {"", "Bearer", "Bearer wrong", "s3cr3t", "Basic s3cr3t"})
+    @DisplayName("should reject webhook without the configured token")
+    void unauthorized(String authorization) {
+        // when
+        var response = receiver.receive(authorization, "{\"channelId\": 1, \"state\": {\"on\": true}}");
+
+        // then
+        assertThat(response).isEqualTo(UNAUTHORIZED);
+        assertThat(payloads).isEmpty();
+    }
+
+    @ParameterizedTest
+    @ValueSource(
+            strings = {
+                "",
+                "not json",
+                "[]",
+                "{\"state\": {\"on\": true}}",
+                "{\"channelId\": \"abc\", \"state\": {\"on\": true}}",
+                "{\"channelId\": 1}",
+                "{\"channelId\": 1, \"state\": true}"
+            })
+    @DisplayName("should reject webhook that is not a state change")
+    void badRequest(String body) {
+        // when
+        var response = receiver.receive("Bearer " + TOKEN, body);
+
+        // then
+        assertThat(response).isEqualTo(BAD_REQUEST);
+        assertThat(payloads).isEmpty();
+    }
+
+    @Test
+    @DisplayName("should reject too big webhook")
+    void tooLarge() {
+        // given
+        var body = " ".repeat(CloudWebhookReceiver.MAX_PAYLOAD_LENGTH + 1);
+
+        // when
+        var response = receiver.receive("Bearer " + TOKEN, body);
+
+        // then
+        assertThat(response).isEqualTo(PAYLOAD_TOO_LARGE);
+        assertThat(payloads).isEmpty();
+    }
+}
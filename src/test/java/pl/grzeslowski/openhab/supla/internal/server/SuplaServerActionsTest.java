@@ -18,6 +18,7 @@ import static pl.grzeslowski.openhab.supla.internal.Localization.text;
 import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.ACTION_SCOPE_CONFIG_MODE;
 import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.ACTION_SCOPE_DEVICE_CONFIG;
 import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.ACTION_SCOPE_ELECTRICITY_METER;
+import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.ACTION_SCOPE_FIRMWARE_ROLLOUT;
 import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.ACTION_SCOPE_FIRMWARE_UPDATE;
 import static pl.grzeslowski.openhab.supla.internal.server.handler.trait.ServerDevice.SENDER_ID;
 
@@ -44,6 +45,7 @@ import pl.grzeslowski.jsupla.server.SuplaWriter;
 import pl.grzeslowski.openhab.supla.actions.SuplaServerConfigModeActions;
 import pl.grzeslowski.openhab.supla.actions.SuplaServerDeviceConfigActions;
 import pl.grzeslowski.openhab.supla.actions.SuplaServerElectricityMeterActions;
+import pl.grzeslowski.openhab.supla.actions.SuplaServerFirmwareRolloutActions;
 import pl.grzeslowski.openhab.supla.actions.SuplaServerFirmwareUpdateActions;
 import pl.grzeslowski.openhab.supla.internal.server.handler.ServerSuplaDeviceHandler;
 import pl.grzeslowski.openhab.supla.internal.server.oh_config.ServerDeviceHandlerConfiguration;
@@ -121,11 +123,14 @@ class SuplaServerActionsTest {
         assertThat(ruleActionSignatures(SuplaServerConfigModeActions.class)).containsExactly("enterConfigMode()");
         assertThat(ruleActionSignatures(SuplaServerFirmwareUpdateActions.class))
                 .containsExactlyInAnyOrder("checkFirmwareUpdate()", "startFirmwareUpdate()", "startSecurityUpdate()");
+        assertThat(ruleActionSignatures(SuplaServerFirmwareRolloutActions.class))
+                .containsExactlyInAnyOrder("startFirmwareRollout(java.lang.String)", "abortFirmwareRollout()");
         assertThat(ruleActionReturnTypes(
                         SuplaServerDeviceConfigActions.class,
                         SuplaServerElectricityMeterActions.class,
                         SuplaServerConfigModeActions.class,
-                        SuplaServerFirmwareUpdateActions.class))
+                        SuplaServerFirmwareUpdateActions.class,
+                        SuplaServerFirmwareRolloutActions.class))
                 .containsOnly(String.class);
     }
 
@@ -135,12 +140,14 @@ class SuplaServerActionsTest {
                         SuplaServerDeviceConfigActions.class,
                         SuplaServerElectricityMeterActions.class,
                         SuplaServerConfigModeActions.class,
-                        SuplaServerFirmwareUpdateActions.class))
+                        SuplaServerFirmwareUpdateActions.class,
+                        SuplaServerFirmwareRolloutActions.class))
                 .containsExactlyInAnyOrder(
                         ACTION_SCOPE_DEVICE_CONFIG,
                         ACTION_SCOPE_ELECTRICITY_METER,
                         ACTION_SCOPE_CONFIG_MODE,
-                        ACTION_SCOPE_FIRMWARE_UPDATE)
+                        ACTION_SCOPE_FIRMWARE_UPDATE,
+                        ACTION_SCOPE_FIRMWARE_ROLLOUT)
                 .doesNotHaveDuplicates();
     }
 
@@ -150,6 +157,7 @@ class SuplaServerActionsTest {
         assertPrototypeComponent(SuplaServerElectricityMeterActions.class);
         assertPrototypeComponent(SuplaServerConfigModeActions.class);
         assertPrototypeComponent(SuplaServerFirmwareUpdateActions.class);
+        assertPrototypeComponent(SuplaServerFirmwareRolloutActions.class);
     }
 
     @Test
@@ -0,0 +1,146 @@
+package pl.grzeslowski.openhab.supla.internal.server.discovery;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.SUPLA_SERVER_TYPE;
+import static pl.grzeslowski.openhab.supla.internal.SuplaBindingConstants.SUPLA_SUB_DEVICE_TYPE;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.openhab.core.config.discovery.DiscoveryListener;
+import org.openhab.core.config.discovery.DiscoveryResult;
+import org.openhab.core.thing.ThingUID;
+
+@ExtendWith(MockitoExtension.class)
+class ServerDiscoveryServiceTest {
+    private static final ThingUID BRIDGE_UID = new ThingUID(SUPLA_SERVER_TYPE, "server");
+
+    @Mock
+    private DiscoveryListener listener;
+
+    private final MutableClock clock = new MutableClock();
+    private ServerDiscoveryService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new ServerDiscoveryService(BRIDGE_UID, clock);
+        service.addDiscoveryListener(listener);
+    }
+
+    @Test
+    @DisplayName("should publish the same device only once within debounce window")
+    void debounce() {
+        // given
+        service.addSubDevice(1, "sub");
+
+        // when
+        clock.advance(ServerDiscoveryService.DEBOUNCE.minusSeconds(1).toSeconds());
+        service.addSubDevice(1, "sub");
+
+        // then
+        verify(listener, times(1)).thingDiscovered(eq(service), any());
+
+        // when
+        clock.advance(1);
+        service.addSubDevice(1, "sub");
+
+        // then
+        verify(listener, times(2)).thingDiscovered(eq(service), any());
+    }
+
+    @Test
+    @DisplayName("should publish device again when its details changed")
+    void changedDetails() {
+        // given
+        service.addSubDevice(1, "sub");
+
+        // when
+        service.addSubDevice(1, "renamed");
+
+        // then
+        var captor = ArgumentCaptor.forClass(DiscoveryResult.class);
+        verify(listener, times(2)).thingDiscovered(eq(service), captor.capture());
+        assertThat(captor.getValue().getLabel()).isEqualTo("renamed #1");
+    }
+
+    @Test
+    @DisplayName("should remove device by its ID")
+    void remove() {
+        // given
+        service.addSubDevice(1, "sub");
+
+        // when
+        service.removeSubDevice(1);
+        service.removeSubDevice(1);
+
+        // then
+        verify(listener, times(1)).thingRemoved(service, new ThingUID(SUPLA_SUB_DEVICE_TYPE, BRIDGE_UID, "1"));
+    }
+
+    @Test
+    @DisplayName("should forget expired results")
+    void ttl() {
+        // given
+        service.addSubDevice(1, "sub");
+        clock.advance(ServerDiscoveryService.RESULT_TTL.toSeconds());
+
+        // when
+        service.addSubDevice(2, "sub");
+        service.removeSubDevice(1);
+
+        // then
+        verify(listener, never()).thingRemoved(any(), any());
+    }
+
+    @Test
+    @DisplayName("should remove the oldest result when limit is reached")
+    void limit() {
+        // given
+        for (int id = 0; id < ServerDiscoveryService.MAX_RESULTS; id++) {
+            service.addSubDevice(id, "sub");
+        }
+
+        // when
+        service.addSubDevice(ServerDiscoveryService.MAX_RESULTS, "sub");
+
+        // then
+        verify(listener).thingRemoved(service, new ThingUID(SUPLA_SUB_DEVICE_TYPE, BRIDGE_UID, "0"));
+        verify(listener, times(1)).thingRemoved(any(), any());
+    }
+
+    private static final class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        void advance(long seconds) {
+            now = now.plusSeconds(seconds);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
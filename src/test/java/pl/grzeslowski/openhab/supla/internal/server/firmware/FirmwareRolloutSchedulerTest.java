@@ -0,0 +1,248 @@
+package pl.grzeslowski.openhab.supla.internal.server.firmware;
+
+import static java.time.Duration.ZERO;
+import static java.time.Duration.ofMillis;
+import static java.time.Duration.ofMinutes;
+import static java.time.Duration.ofSeconds;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static pl.grzeslowski.openhab.supla.internal.server.firmware.FirmwareRolloutScheduler.Status.ABORTED;
+import static pl.grzeslowski.openhab.supla.internal.server.firmware.FirmwareRolloutScheduler.Status.COMPLETED;
+import static pl.grzeslowski.openhab.supla.internal.server.firmware.FirmwareRolloutScheduler.Status.RUNNING;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jdt.annotation.Nullable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.LoggerFactory;
+
+@ExtendWith(MockitoExtension.class)
+class FirmwareRolloutSchedulerTest {
+    @Mock
+    private ScheduledExecutorService executor;
+
+    @Mock
+    private ScheduledFuture<?> tickSchedule;
+
+    private final FakeDevices devices = new FakeDevices();
+    private final List<FirmwareRolloutScheduler.Progress> published = new ArrayList<>();
+    private FirmwareRolloutScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        lenient()
+                .doReturn(tickSchedule)
+                .when(executor)
+                .scheduleWithFixedDelay(any(), anyLong(), anyLong(), any(TimeUnit.class));
+        scheduler = new FirmwareRolloutScheduler(
+                LoggerFactory.getLogger(FirmwareRolloutSchedulerTest.class), executor, devices, published::add);
+    }
+
+    @Test
+    @DisplayName("should not trigger more devices than max concurrent updates")
+    void limitConcurrency() {
+        // given
+        devices.connect("a", "1.0", "b", "1.0", "c", "1.0");
+        scheduler.start(List.of("a", "b", "c"), settings(2, 0.5));
+
+        // when
+        scheduler.tick();
+
+        // then
+        assertThat(devices.triggered).containsExactly("a", "b");
+        assertThat(scheduler.progress()).isEqualTo(new FirmwareRolloutScheduler.Progress(RUNNING, 1, 1, 2, 0, 0, 0));
+    }
+
+    @Test
+    @DisplayName("should start next wave once all devices from previous wave registered with new firmware")
+    void nextWave() {
+        // given
+        devices.connect("a", "1.0", "b", "1.0", "c", "1.0");
+        scheduler.start(List.of("a", "b", "c"), settings(2, 0.5));
+        scheduler.tick();
+        devices.connect("a", "1.1");
+
+        // when
+        scheduler.tick();
+
+        // then
+        assertThat(devices.triggered).containsExactly("a", "b");
+
+        // when
+        devices.connect("b", "1.1");
+        scheduler.tick();
+        scheduler.tick();
+
+        // then
+        assertThat(devices.triggered).containsExactly("a", "b", "c");
+        assertThat(scheduler.progress().wave()).isEqualTo(2);
+    }
+
+    @Test
+    @DisplayName("should complete rollout when all devices are updated")
+    void complete() {
+        // given
+        devices.connect("a", "1.0");
+        scheduler.start(List.of("a"), settings(1, 0.0));
+        scheduler.tick();
+        devices.connect("a", "1.1");
+
+        // when
+        scheduler.tick();
+        scheduler.tick();
+
+        // then
+        assertThat(scheduler.progress()).isEqualTo(new FirmwareRolloutScheduler.Progress(COMPLETED, 1, 0, 0, 1, 0, 0));
+        assertThat(published.get(published.size() - 1).status()).isEqualTo(COMPLETED);
+        verify(tickSchedule).cancel(false);
+    }
+
+    @Test
+    @DisplayName("should fail device that does not register with new firmware in time")
+    void registrationTimeout() throws InterruptedException {
+        // given
+        devices.connect("a", "1.0");
+        scheduler.start(List.of("a"), new FirmwareRolloutScheduler.Settings(1, 1.0, ofMillis(1), ZERO, ofSeconds(1)));
+        scheduler.tick();
+        Thread.sleep(10);
+
+        // when
+        scheduler.tick();
+
+        // then
+        assertThat(scheduler.progress().failed()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should abort rollout and skip pending devices when failure rate is exceeded")
+    void abortOnFailureRate() {
+        // given
+        devices.connect("a", "1.0", "b", "1.0", "c", "1.0", "d", "1.0");
+        devices.rejected.add("a");
+        scheduler.start(List.of("a", "b", "c", "d"), settings(2, 0.25));
+        scheduler.tick();
+        devices.connect("b", "1.1");
+
+        // when
+        scheduler.tick();
+
+        // then
+        assertThat(scheduler.progress()).isEqualTo(new FirmwareRolloutScheduler.Progress(ABORTED, 1, 0, 0, 1, 1, 2));
+        assertThat(devices.triggered).containsExactly("b");
+        verify(tickSchedule).cancel(false);
+    }
+
+    @Test
+    @DisplayName("should fail devices that are not connected")
+    void notConnected() {
+        // given
+        devices.connect("a", "1.0");
+        scheduler.start(List.of("a", "missing"), settings(2, 1.0));
+
+        // when
+        scheduler.tick();
+
+        // then
+        assertThat(devices.triggered).containsExactly("a");
+        assertThat(scheduler.progress().failed()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should not start another rollout while one is running")
+    void alreadyRunning() {
+        // given
+        scheduler.start(List.of("a"), settings(1, 1.0));
+
+        // when & then
+        assertThatThrownBy(() -> scheduler.start(List.of("b"), settings(1, 1.0)))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    @DisplayName("should not trigger anything after abort")
+    void abort() {
+        // given
+        devices.connect("a", "1.0");
+        scheduler.start(List.of(" a ", "a", ""), settings(1, 1.0));
+
+        // when
+        scheduler.abort();
+        scheduler.tick();
+
+        // then
+        assertThat(devices.triggered).isEmpty();
+        assertThat(scheduler.progress()).isEqualTo(new FirmwareRolloutScheduler.Progress(ABORTED, 0, 0, 0, 0, 0, 1));
+        verify(executor).scheduleWithFixedDelay(any(), eq(0L), eq(1_000L), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    @DisplayName("should mark devices in progress as failed when rollout is aborted")
+    void abortInProgress() {
+        // given
+        devices.connect("a", "1.0", "b", "1.0");
+        scheduler.start(List.of("a", "b"), settings(1, 1.0));
+        scheduler.tick();
+
+        // when
+        scheduler.abort();
+
+        // then
+        assertThat(devices.triggered).containsExactly("a");
+        assertThat(scheduler.progress()).isEqualTo(new FirmwareRolloutScheduler.Progress(ABORTED, 1, 0, 0, 0, 1, 1));
+        assertThat(published.getLast().inProgress()).isZero();
+    }
+
+    @Test
+    @DisplayName("should reject empty device list")
+    void emptyDevices() {
+        assertThatThrownBy(() -> scheduler.start(List.of(" ", ""), settings(1, 1.0)))
+                .isInstanceOf(IllegalArgumentException.class);
+        verify(executor, never()).scheduleWithFixedDelay(any(), anyLong(), anyLong(), any(TimeUnit.class));
+    }
+
+    private static FirmwareRolloutScheduler.Settings settings(int maxConcurrentUpdates, double maxFailureRate) {
+        return new FirmwareRolloutScheduler.Settings(
+                maxConcurrentUpdates, maxFailureRate, ofMinutes(10), ZERO, ofSeconds(1));
+    }
+
+    private static final class FakeDevices implements FirmwareRolloutScheduler.Devices {
+        private final Map<String, String> versions = new HashMap<>();
+        private final List<String> rejected = new ArrayList<>();
+        private final List<String> triggered = new ArrayList<>();
+
+        void connect(String... guidsAndVersions) {
+            for (int i = 0; i < guidsAndVersions.length; i += 2) {
+                versions.put(guidsAndVersions[i], guidsAndVersions[i + 1]);
+            }
+        }
+
+        @Override
+        public @Nullable String findSoftVersion(String guid) {
+            return versions.get(guid);
+        }
+
+        @Override
+        public void startFirmwareUpdate(String guid) {
+            if (rejected.contains(guid)) {
+                throw new IllegalStateException("Device rejected firmware update");
+            }
+            triggered.add(guid);
+        }
+    }
+}
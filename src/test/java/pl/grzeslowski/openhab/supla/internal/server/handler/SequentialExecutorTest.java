@@ -0,0 +1,133 @@
+package pl.grzeslowski.openhab.supla.internal.server.handler;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+class SequentialExecutorTest {
+    private ExecutorService pool;
+
+    @BeforeEach
+    void setUp() {
+        pool = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    @DisplayName("should run tasks one by one in submission order")
+    void order() throws InterruptedException {
+        // given
+        var executor = new SequentialExecutor(pool, LoggerFactory.getLogger(SequentialExecutorTest.class));
+        var executed = new CopyOnWriteArrayList<Integer>();
+        var running = new AtomicInteger();
+        var maxRunning = new AtomicInteger();
+        var done = new CountDownLatch(1_000);
+
+        // when
+        IntStream.range(0, 1_000)
+                .forEach(i -> executor.execute(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    executed.add(i);
+                    running.decrementAndGet();
+                    done.countDown();
+                }));
+
+        // then
+        assertThat(done.await(10, SECONDS)).isTrue();
+        assertThat(executed).isEqualTo(IntStream.range(0, 1_000).boxed().toList());
+        assertThat(maxRunning.get()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should not block other executors sharing the same pool")
+    void parallel() throws InterruptedException {
+        // given
+        var logger = LoggerFactory.getLogger(SequentialExecutorTest.class);
+        var slow = new SequentialExecutor(pool, logger);
+        var fast = new SequentialExecutor(pool, logger);
+        var release = new CountDownLatch(1);
+        var fastDone = new CountDownLatch(1);
+        slow.execute(() -> {
+            try {
+                release.await(10, SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        // when
+        fast.execute(fastDone::countDown);
+
+        // then
+        assertThat(fastDone.await(10, SECONDS)).isTrue();
+        release.countDown();
+    }
+
+    @Test
+    @DisplayName("should continue with next tasks when one of them fails")
+    void failure() throws InterruptedException {
+        // given
+        var executor = new SequentialExecutor(pool, LoggerFactory.getLogger(SequentialExecutorTest.class));
+        var executed = new CopyOnWriteArrayList<String>();
+        var done = new CountDownLatch(1);
+
+        // when
+        executor.execute(() -> {
+            throw new IllegalStateException("boom");
+        });
+        executor.execute(() -> {
+            executed.add("second");
+            done.countDown();
+        });
+
+        // then
+        assertThat(done.await(10, SECONDS)).isTrue();
+        assertThat(executed).isEqualTo(List.of("second"));
+    }
+
+    @Test
+    @DisplayName("should drop queued and new tasks after close")
+    void close() throws InterruptedException {
+        // given
+        var executor = new SequentialExecutor(pool, LoggerFactory.getLogger(SequentialExecutorTest.class));
+        var executed = new CopyOnWriteArrayList<String>();
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        executor.execute(() -> {
+            started.countDown();
+            try {
+                release.await(10, SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        executor.execute(() -> executed.add("queued"));
+        assertThat(started.await(10, SECONDS)).isTrue();
+
+        // when
+        executor.close();
+        executor.execute(() -> executed.add("after close"));
+        release.countDown();
+
+        // then
+        pool.shutdown();
+        assertThat(pool.awaitTermination(10, SECONDS)).isTrue();
+        assertThat(executed).isEmpty();
+    }
+}
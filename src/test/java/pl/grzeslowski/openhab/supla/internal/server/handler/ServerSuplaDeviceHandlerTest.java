@@ -2,8 +2,15 @@ package pl.grzeslowski.openhab.supla.internal.server.handler;
 
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static pl.grzeslowski.jsupla.protocol.api.CalCfgCommand.SUPLA_CALCFG_CMD_CHECK_FIRMWARE_UPDATE;
 import static pl.grzeslowski.jsupla.protocol.api.CalCfgResult.SUPLA_CALCFG_RESULT_DONE;
@@ -41,20 +48,30 @@ import java.util.Set;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
+import org.openhab.core.config.core.Configuration;
 import org.openhab.core.i18n.TimeZoneProvider;
+import org.openhab.core.thing.Bridge;
 import org.openhab.core.thing.Thing;
+import org.openhab.core.thing.ThingUID;
+import org.openhab.core.thing.binding.ThingHandlerCallback;
 import pl.grzeslowski.jsupla.protocol.api.BitFunction;
 import pl.grzeslowski.jsupla.protocol.api.ChannelFlag;
 import pl.grzeslowski.jsupla.protocol.api.SuplaProducts;
 import pl.grzeslowski.jsupla.protocol.api.encoders.FirmwareCheckResultEncoder;
 import pl.grzeslowski.jsupla.protocol.api.structs.FirmwareCheckResult;
 import pl.grzeslowski.jsupla.protocol.api.structs.ds.DeviceCalCfgResult;
+import pl.grzeslowski.jsupla.server.SuplaWriter;
 import pl.grzeslowski.openhab.supla.actions.SuplaServerConfigModeActions;
 import pl.grzeslowski.openhab.supla.actions.SuplaServerDeviceConfigActions;
 import pl.grzeslowski.openhab.supla.actions.SuplaServerElectricityMeterActions;
 import pl.grzeslowski.openhab.supla.actions.SuplaServerFirmwareUpdateActions;
+import pl.grzeslowski.openhab.supla.internal.handler.InitializationException;
+import pl.grzeslowski.openhab.supla.internal.server.handler.trait.ServerBridge;
+import pl.grzeslowski.openhab.supla.internal.server.netty.OpenHabMessageHandler;
+import pl.grzeslowski.openhab.supla.internal.server.oh_config.AuthData;
 import pl.grzeslowski.openhab.supla.internal.server.traits.DeviceChannel;
 import pl.grzeslowski.openhab.supla.internal.server.traits.RegisterEmailDeviceTrait;
+import pl.grzeslowski.openhab.supla.internal.server.traits.RegisterLocationDeviceTrait;
 import pl.grzeslowski.openhab.supla.internal.updates.SuplaUpdatesClient;
 
 class ServerSuplaDeviceHandlerTest {
@@ -268,6 +285,72 @@ class ServerSuplaDeviceHandlerTest {
                         SuplaServerFirmwareUpdateActions.class);
     }
 
+    @Test
+    void shouldNotTakeOverConnectionWhenRegistrationIsNotAuthorized() {
+        var connection = mock(OpenHabMessageHandler.class);
+        var registerEntity = new RegisterEmailDeviceTrait(
+                "guid", "device", "1.2.3", 4, 6000, Set.of(), List.of(), "test@example.org", new byte[0], "server");
+
+        assertThatThrownBy(() -> handler.register(registerEntity, connection, mock(SuplaWriter.class)))
+                .isInstanceOf(InitializationException.class);
+
+        assertThat(handler.isConnectedThrough(connection)).isFalse();
+        assertThat(handler.getWriter().get()).isNull();
+    }
+
+    @Test
+    void shouldIgnoreDisconnectionOfConnectionThatDoesNotOwnDevice() {
+        var staleConnection = mock(OpenHabMessageHandler.class);
+
+        handler.inactive(staleConnection);
+
+        verify(staleConnection, never()).clear();
+        assertThat(handler.isConnectedThrough(staleConnection)).isFalse();
+        assertThat(handler.isConnectedThroughOther(staleConnection)).isFalse();
+    }
+
+    @Test
+    void shouldTakeOverConnectionWhenDeviceRegistersAgain() throws Exception {
+        var bridgeUid = new ThingUID("supla:server-bridge:test");
+        var bridge = mock(Bridge.class);
+        var serverBridge = mock(ServerBridge.class);
+        var callback = mock(ThingHandlerCallback.class);
+        when(thing.getBridgeUID()).thenReturn(bridgeUid);
+        when(thing.getConfiguration()).thenReturn(new Configuration(Map.of("guid", "guid")));
+        when(callback.getBridge(bridgeUid)).thenReturn(bridge);
+        when(bridge.getHandler()).thenReturn(serverBridge);
+        when(serverBridge.getAuthData()).thenReturn(new AuthData(new AuthData.LocationAuthData(1, "pwd"), null));
+        handler.setCallback(callback);
+        handler.initialize();
+        var registerEntity = new RegisterLocationDeviceTrait(
+                "guid", "device", "1.2.3", null, null, Set.of(), List.of(), 1, "pwd".getBytes(StandardCharsets.UTF_8));
+        var oldConnection = mock(OpenHabMessageHandler.class);
+        var oldWriter = mock(SuplaWriter.class);
+        var newConnection = mock(OpenHabMessageHandler.class);
+        var newWriter = mock(SuplaWriter.class);
+        handler.register(registerEntity, oldConnection, oldWriter);
+        clearInvocations(callback);
+
+        handler.register(registerEntity, newConnection, newWriter);
+
+        verify(oldConnection).clear();
+        verify(newConnection, never()).clear();
+        assertThat(handler.getWriter().get()).isSameAs(newWriter);
+        assertThat(handler.isConnectedThrough(newConnection)).isTrue();
+        // protos from the old connection are dropped by its handler, because it does not own the device anymore
+        assertThat(handler.isConnectedThrough(oldConnection)).isFalse();
+        verify(callback, never()).statusUpdated(any(), any());
+        verify(serverBridge, times(1)).deviceConnected();
+
+        handler.inactive(oldConnection);
+
+        assertThat(handler.getWriter().get()).isSameAs(newWriter);
+        assertThat(handler.isConnectedThrough(newConnection)).isTrue();
+        verify(callback, never()).statusUpdated(any(), any());
+        verify(serverBridge, never()).deviceDisconnected();
+        verify(oldWriter, times(1)).write(any());
+    }
+
     @Test
     void shouldTreatImmediateFirmwareCheckAcceptanceAsSeparateResult() throws Exception {
         handler.markOtaCheckPending(FIRMWARE_CHECK_MESSAGE_ID);
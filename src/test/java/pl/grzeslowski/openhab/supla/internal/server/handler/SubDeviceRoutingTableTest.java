@@ -0,0 +1,117 @@
+package pl.grzeslowski.openhab.supla.internal.server.handler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static pl.grzeslowski.jsupla.protocol.api.ChannelType.SUPLA_CHANNELTYPE_DIMMER;
+
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pl.grzeslowski.openhab.supla.internal.server.traits.DeviceChannel;
+
+class SubDeviceRoutingTableTest {
+    @Test
+    @DisplayName("should route channel numbers to sub devices that were attached before registration")
+    void routeToExistingHandlers() {
+        // given
+        var first = subDevice(1);
+        var second = subDevice(2);
+        var channels = List.of(channel(0, null), channel(1, 1), channel(2, 2), channel(3, 1));
+
+        // when
+        var table = SubDeviceRoutingTable.build(channels, List.of(first, second));
+
+        // then
+        assertThat(table.findByChannelNumber(0)).isNull();
+        assertThat(table.findByChannelNumber(1)).isSameAs(first);
+        assertThat(table.findByChannelNumber(2)).isSameAs(second);
+        assertThat(table.findByChannelNumber(3)).isSameAs(first);
+        assertThat(table.findByChannelNumber(4)).isNull();
+        assertThat(table.findByChannelNumber(-1)).isNull();
+        assertThat(table.subDeviceIds()).containsExactlyInAnyOrder(1, 2);
+    }
+
+    @Test
+    @DisplayName("should return channels of sub device when it is attached")
+    void attach() {
+        // given
+        var subDevice = subDevice(7);
+        var table = SubDeviceRoutingTable.build(List.of(channel(5, 7), channel(9, 7), channel(6, 8)), List.of());
+
+        // when
+        var channels = table.attach(subDevice);
+
+        // then
+        assertThat(channels).extracting(DeviceChannel::number).containsExactly(5, 9);
+        assertThat(table.findByChannelNumber(9)).isSameAs(subDevice);
+        assertThat(table.findByChannelNumber(6)).isNull();
+    }
+
+    @Test
+    @DisplayName("should not return channels for unknown sub device")
+    void attachUnknown() {
+        // given
+        var table = SubDeviceRoutingTable.build(List.of(channel(1, 1)), List.of());
+
+        // when
+        var channels = table.attach(subDevice(2));
+
+        // then
+        assertThat(channels).isNull();
+    }
+
+    @Test
+    @DisplayName("should stop routing to detached sub device")
+    void detach() {
+        // given
+        var subDevice = subDevice(1);
+        var table = SubDeviceRoutingTable.build(List.of(channel(1, 1)), List.of(subDevice));
+
+        // when
+        table.detach(subDevice);
+
+        // then
+        assertThat(table.findByChannelNumber(1)).isNull();
+    }
+
+    @Test
+    @DisplayName("should not detach newer handler with the same sub device ID")
+    void detachOldHandler() {
+        // given
+        var oldHandler = subDevice(1);
+        var newHandler = subDevice(1);
+        var table = SubDeviceRoutingTable.build(List.of(channel(1, 1)), List.of(oldHandler));
+        table.attach(newHandler);
+
+        // when
+        table.detach(oldHandler);
+
+        // then
+        assertThat(table.findByChannelNumber(1)).isSameAs(newHandler);
+    }
+
+    private static SubDeviceHandler subDevice(int subDeviceId) {
+        var handler = mock(SubDeviceHandler.class);
+        when(handler.getSubDeviceId()).thenReturn(subDeviceId);
+        return handler;
+    }
+
+    private static DeviceChannel channel(int number, Integer subDeviceId) {
+        return new DeviceChannel(
+                number,
+                false,
+                SUPLA_CHANNELTYPE_DIMMER,
+                Set.of(),
+                null,
+                Set.of(),
+                new byte[8],
+                null,
+                null,
+                subDeviceId,
+                0L,
+                Set.of(),
+                0);
+    }
+}
@@ -38,7 +38,7 @@ final class TestServerSuplaDeviceHandler extends ServerSuplaDeviceHandler {
 
     @Override
     protected List<Class<? extends ServerBridge>> findAllowedBridgeClasses() {
-        return List.of();
+        return List.of(ServerBridge.class);
     }
 
     @Override
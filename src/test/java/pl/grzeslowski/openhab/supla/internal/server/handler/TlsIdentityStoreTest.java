@@ -0,0 +1,92 @@
+package pl.grzeslowski.openhab.supla.internal.server.handler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.condition.OS.WINDOWS;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledOnOs;
+import org.junit.jupiter.api.io.TempDir;
+
+class TlsIdentityStoreTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("should generate identity once and reuse it later")
+    void generateOnce() throws Exception {
+        // given
+        var certificate = directory.resolve("supla").resolve("server-identity-test.crt");
+        var privateKey = directory.resolve("supla").resolve("server-identity-test.key");
+        var store = new TlsIdentityStore(certificate, privateKey);
+
+        // when
+        var generated = store.loadOrGenerate();
+        var certificatePem = Files.readString(certificate);
+        var privateKeyPem = Files.readString(privateKey);
+        var loaded = store.loadOrGenerate();
+
+        // then
+        assertThat(generated.generated()).isTrue();
+        assertThat(loaded.generated()).isFalse();
+        assertThat(loaded.certificate()).isEqualTo(certificate.toFile());
+        assertThat(loaded.privateKey()).isEqualTo(privateKey.toFile());
+        assertThat(certificatePem).contains("BEGIN CERTIFICATE");
+        assertThat(privateKeyPem).contains("PRIVATE KEY");
+        assertThat(Files.readString(certificate)).isEqualTo(certificatePem);
+        assertThat(Files.readString(privateKey)).isEqualTo(privateKeyPem);
+        assertThat(Files.list(certificate.getParent())).containsExactlyInAnyOrder(certificate, privateKey);
+    }
+
+    @Test
+    @DisabledOnOs(WINDOWS)
+    @DisplayName("should make private key readable only by its owner")
+    void privateKeyPermissions() throws Exception {
+        // given
+        var privateKey = directory.resolve("server.key");
+        var store = new TlsIdentityStore(directory.resolve("server.crt"), privateKey);
+
+        // when
+        store.loadOrGenerate();
+
+        // then
+        assertThat(Files.getPosixFilePermissions(privateKey))
+                .containsExactlyInAnyOrder(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE);
+    }
+
+    @Test
+    @DisplayName("should delete stored identity")
+    void delete() throws Exception {
+        // given
+        var certificate = directory.resolve("server.crt");
+        var privateKey = directory.resolve("server.key");
+        var store = new TlsIdentityStore(certificate, privateKey);
+        store.loadOrGenerate();
+
+        // when
+        store.delete();
+
+        // then
+        assertThat(certificate).doesNotExist();
+        assertThat(privateKey).doesNotExist();
+    }
+
+    @Test
+    @DisplayName("should generate new identity when only certificate is left")
+    void regenerateWithoutKey() throws Exception {
+        // given
+        var certificate = directory.resolve("server.crt");
+        Files.writeString(certificate, "old");
+        var store = new TlsIdentityStore(certificate, directory.resolve("server.key"));
+
+        // when
+        var identity = store.loadOrGenerate();
+
+        // then
+        assertThat(identity.generated()).isTrue();
+        assertThat(Files.readString(certificate)).contains("BEGIN CERTIFICATE");
+    }
+}
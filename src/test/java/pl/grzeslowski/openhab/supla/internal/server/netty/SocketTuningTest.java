@@ -0,0 +1,114 @@
+package pl.grzeslowski.openhab.supla.internal.server.netty;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.SocketChannelConfig;
+import java.math.BigDecimal;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import pl.grzeslowski.openhab.supla.internal.server.oh_config.ServerBridgeHandlerConfiguration;
+
+@ExtendWith(MockitoExtension.class)
+class SocketTuningTest {
+    @Mock
+    SocketChannel channel;
+
+    @Mock
+    SocketChannelConfig channelConfig;
+
+    @Test
+    @DisplayName("should build tuning from bridge configuration")
+    void fromConfig() {
+        // given
+        var config = new ServerBridgeHandlerConfiguration();
+        config.setTcpNoDelay(false);
+        config.setAllocator("pooled-direct");
+        config.setWriteBufferLowWaterMark(new BigDecimal(1024));
+        config.setWriteBufferHighWaterMark(new BigDecimal(4096));
+
+        // when
+        var tuning = SocketTuning.fromConfig(config);
+
+        // then
+        assertThat(tuning.tcpNoDelay()).isFalse();
+        assertThat(tuning.allocator()).isEqualTo(SocketTuning.Allocator.POOLED_DIRECT);
+        assertThat(tuning.writeBufferWaterMark().low()).isEqualTo(1024);
+        assertThat(tuning.writeBufferWaterMark().high()).isEqualTo(4096);
+    }
+
+    @Test
+    @DisplayName("should use Netty defaults for default configuration")
+    void defaultConfig() {
+        // when
+        var tuning = SocketTuning.fromConfig(new ServerBridgeHandlerConfiguration());
+
+        // then
+        assertThat(tuning).usingRecursiveComparison().isEqualTo(SocketTuning.DEFAULT);
+    }
+
+    @Test
+    @DisplayName("should fail when high water mark is below low one")
+    void wrongWaterMarks() {
+        // given
+        var config = new ServerBridgeHandlerConfiguration();
+        config.setWriteBufferLowWaterMark(new BigDecimal(4096));
+        config.setWriteBufferHighWaterMark(new BigDecimal(1024));
+
+        // when & then
+        assertThatThrownBy(() -> SocketTuning.fromConfig(config)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("should fail on unknown allocator")
+    void unknownAllocator() {
+        // given
+        var config = new ServerBridgeHandlerConfiguration();
+        config.setAllocator("magic");
+
+        // when & then
+        assertThatThrownBy(() -> SocketTuning.fromConfig(config))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("magic");
+    }
+
+    @Test
+    @DisplayName("should set options of accepted socket")
+    void applyTo() {
+        // given
+        given(channel.config()).willReturn(channelConfig);
+        var waterMark = new WriteBufferWaterMark(1024, 4096);
+        var tuning = new SocketTuning(true, SocketTuning.Allocator.POOLED_DIRECT, waterMark);
+
+        // when
+        tuning.applyTo(channel);
+
+        // then
+        verify(channelConfig).setTcpNoDelay(true);
+        verify(channelConfig).setWriteBufferWaterMark(waterMark);
+        verify(channelConfig).setAllocator(any(PooledByteBufAllocator.class));
+    }
+
+    @Test
+    @DisplayName("should keep Netty allocator for default allocator")
+    void applyDefaultAllocator() {
+        // given
+        given(channel.config()).willReturn(channelConfig);
+
+        // when
+        SocketTuning.DEFAULT.applyTo(channel);
+
+        // then
+        verify(channelConfig, never()).setAllocator(any());
+    }
+}
@@ -1,5 +1,8 @@
 package pl.grzeslowski.openhab.supla.internal.updates;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
@@ -14,10 +17,14 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.net.http.HttpResponse.BodyHandler;
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.stubbing.OngoingStubbing;
 
 class SuplaUpdatesClientTest {
     private HttpClient httpClient;
@@ -79,14 +86,14 @@ class SuplaUpdatesClientTest {
     @Test
     void shouldParseAvailableUpdateResponse() throws Exception {
         var result = client.parseResponse("""
-                {
-                  "status": "Update available",
-                  "latestUpdate": {
-                    "version": "2.0.0",
-                    "updateUrl": "https://updates.example/device"
-                  }
-                }
-                """);
+            {
+              "status": "Update available",
+              "latestUpdate": {
+                "version": "2.0.0",
+                "updateUrl": "https://updates.example/device"
+              }
+            }
+            """);
 
         assertThat(result.status()).isEqualTo(SuplaUpdatesClient.Status.UPDATE_AVAILABLE);
         assertThat(result.updateAvailable()).isTrue();
@@ -113,9 +120,10 @@ class SuplaUpdatesClientTest {
 
     @Test
     void shouldParseUnknownProductEvenWhenResponseIsNotSuccessful() throws Exception {
-        givenResponses(response(404, "{\"status\":\"Unknown product\"}"));
+        givenResponses(listResponse(404, ""), response(404, "{\"status\":\"Unknown product\"}"));
 
-        var result = client.checkUpdates(new SuplaUpdatesClient.Request(4, 6000, "Unknown", "23.12.01"));
+        var result = client.checkUpdates(new SuplaUpdatesClient.Request(4, 6000, "Unknown", "23.12.01"))
+                .join();
 
         assertThat(result.status()).isEqualTo(SuplaUpdatesClient.Status.UNKNOWN_PRODUCT);
         assertThat(result.updateAvailable()).isFalse();
@@ -123,21 +131,22 @@ class SuplaUpdatesClientTest {
 
     @Test
     void shouldDiscoverUpdateFilterBeforeCheckingUpdates() throws Exception {
-        givenResponses(response(200, """
-                        [
-                          {
-                            "version": "23.12.02",
-                            "platform": 2,
-                            "param1": 0,
-                            "param2": 0,
-                            "param3": 0,
-                            "param4": 0,
-                            "updateUrl": "https://updates.example/thw"
-                          }
-                        ]
-                        """), response(200, "{\"status\":\"Update not available\"}"));
-
-        var result = client.checkUpdates(new SuplaUpdatesClient.Request(4, 6000, "ZAMEL THW-01", "23.12.02"));
+        givenResponses(listResponse(200, """
+            [
+              {
+                "version": "23.12.02",
+                "platform": 2,
+                "param1": 0,
+                "param2": 0,
+                "param3": 0,
+                "param4": 0,
+                "updateUrl": "https://updates.example/thw"
+              }
+            ]
+            """), response(200, "{\"status\":\"Update not available\"}"));
+
+        var result = client.checkUpdates(new SuplaUpdatesClient.Request(4, 6000, "ZAMEL THW-01", "23.12.02"))
+                .join();
 
         assertThat(result.status()).isEqualTo(SuplaUpdatesClient.Status.UPDATE_NOT_AVAILABLE);
         assertThat(sentRequests().get(0).uri().toString())
@@ -150,28 +159,29 @@ class SuplaUpdatesClientTest {
 
     @Test
     void shouldInferResultFromListedUpdatesWhenCheckUpdatesRejectsAmbiguousFilters() throws Exception {
-        givenResponses(response(200, """
-                        [
-                          {
-                            "version": "2.8.61",
-                            "releasedAt": "2024-07-23T09:52:50+00:00",
-                            "platform": 1,
-                            "param1": 5,
-                            "param2": 1,
-                            "updateUrl": "https://updates.example/user1"
-                          },
-                          {
-                            "version": "2.8.61",
-                            "releasedAt": "2024-07-23T09:52:50+00:00",
-                            "platform": 1,
-                            "param1": 5,
-                            "param2": 0,
-                            "updateUrl": "https://updates.example/user2"
-                          }
-                        ]
-                        """), response(404, "{\"status\":\"Unknown product\"}"));
-
-        var result = client.checkUpdates(new SuplaUpdatesClient.Request(0, 0, "ZAMEL MEW-01", "2.8.60"));
+        givenResponses(listResponse(200, """
+            [
+              {
+                "version": "2.8.61",
+                "releasedAt": "2024-07-23T09:52:50+00:00",
+                "platform": 1,
+                "param1": 5,
+                "param2": 1,
+                "updateUrl": "https://updates.example/user1"
+              },
+              {
+                "version": "2.8.61",
+                "releasedAt": "2024-07-23T09:52:50+00:00",
+                "platform": 1,
+                "param1": 5,
+                "param2": 0,
+                "updateUrl": "https://updates.example/user2"
+              }
+            ]
+            """), response(404, "{\"status\":\"Unknown product\"}"));
+
+        var result = client.checkUpdates(new SuplaUpdatesClient.Request(0, 0, "ZAMEL MEW-01", "2.8.60"))
+                .join();
 
         assertThat(result.status()).isEqualTo(SuplaUpdatesClient.Status.UPDATE_AVAILABLE);
         assertThat(result.latestVersion()).isEqualTo("2.8.61");
@@ -180,22 +190,23 @@ class SuplaUpdatesClientTest {
 
     @Test
     void shouldInferNewestListedUpdateWhenUpdatesAreNotOrdered() throws Exception {
-        givenResponses(response(200, """
-                        [
-                          {
-                            "version": "2.8.61",
-                            "releasedAt": "2024-07-23T09:52:50+00:00",
-                            "updateUrl": "https://updates.example/older"
-                          },
-                          {
-                            "version": "2.8.62",
-                            "releasedAt": "2025-03-03T16:35:59+00:00",
-                            "updateUrl": "https://updates.example/newer"
-                          }
-                        ]
-                        """), response(404, "{\"status\":\"Unknown product\"}"));
-
-        var result = client.checkUpdates(new SuplaUpdatesClient.Request(0, 0, "ZAMEL mSRW-01", "2.8.61"));
+        givenResponses(listResponse(200, """
+            [
+              {
+                "version": "2.8.61",
+                "releasedAt": "2024-07-23T09:52:50+00:00",
+                "updateUrl": "https://updates.example/older"
+              },
+              {
+                "version": "2.8.62",
+                "releasedAt": "2025-03-03T16:35:59+00:00",
+                "updateUrl": "https://updates.example/newer"
+              }
+            ]
+            """), response(404, "{\"status\":\"Unknown product\"}"));
+
+        var result = client.checkUpdates(new SuplaUpdatesClient.Request(0, 0, "ZAMEL mSRW-01", "2.8.61"))
+                .join();
 
         assertThat(result.status()).isEqualTo(SuplaUpdatesClient.Status.UPDATE_AVAILABLE);
         assertThat(result.latestVersion()).isEqualTo("2.8.62");
@@ -204,17 +215,18 @@ class SuplaUpdatesClientTest {
 
     @Test
     void shouldNotInferDowngradeFromListedUpdates() throws Exception {
-        givenResponses(response(200, """
-                        [
-                          {
-                            "version": "2.8.61",
-                            "releasedAt": "2024-07-23T09:52:50+00:00",
-                            "updateUrl": "https://updates.example/older"
-                          }
-                        ]
-                        """), response(404, "{\"status\":\"Unknown product\"}"));
-
-        var result = client.checkUpdates(new SuplaUpdatesClient.Request(0, 0, "ZAMEL MEW-01", "2.8.62"));
+        givenResponses(listResponse(200, """
+            [
+              {
+                "version": "2.8.61",
+                "releasedAt": "2024-07-23T09:52:50+00:00",
+                "updateUrl": "https://updates.example/older"
+              }
+            ]
+            """), response(404, "{\"status\":\"Unknown product\"}"));
+
+        var result = client.checkUpdates(new SuplaUpdatesClient.Request(0, 0, "ZAMEL MEW-01", "2.8.62"))
+                .join();
 
         assertThat(result.status()).isEqualTo(SuplaUpdatesClient.Status.UPDATE_NOT_AVAILABLE);
         assertThat(result.updateAvailable()).isFalse();
@@ -222,14 +234,87 @@ class SuplaUpdatesClientTest {
         assertThat(result.updateUrl()).isNull();
     }
 
-    private void givenResponses(HttpResponse<String> first, HttpResponse<String>... rest)
-            throws IOException, InterruptedException {
-        when(httpClient.send(any(HttpRequest.class), anyStringBodyHandler())).thenReturn(first, rest);
+    @Test
+    void shouldSkipListedUpdateFieldsThatAreNotNeeded() {
+        givenResponses(listResponse(200, """
+            [
+              null,
+              {
+                "id": 17,
+                "description": {"en": "Fixes", "pl": ["Poprawki"]},
+                "checksums": [{"md5": "abc"}],
+                "version": "2.8.62",
+                "releasedAt": "2025-03-03T16:35:59+00:00",
+                "isBeta": "false",
+                "hiddenInFrontend": null,
+                "updateUrl": "https://updates.example/newer"
+              },
+              {
+                "version": "2.8.63",
+                "isBeta": true,
+                "updateUrl": "https://updates.example/beta"
+              }
+            ]
+            """), response(404, "{\"status\":\"Unknown product\"}"));
+
+        var result = client.checkUpdates(new SuplaUpdatesClient.Request(0, 0, "ZAMEL mSRW-01", "2.8.61"))
+                .join();
+
+        assertThat(result.status()).isEqualTo(SuplaUpdatesClient.Status.UPDATE_AVAILABLE);
+        assertThat(result.latestVersion()).isEqualTo("2.8.62");
+        assertThat(result.updateUrl()).isEqualTo("https://updates.example/newer");
+    }
+
+    @Test
+    void shouldCheckUpdatesWhenUpdateListIsMalformed() {
+        givenResponses(listResponse(200, "[{\"version\": "), response(200, "{\"status\":\"Update not available\"}"));
+
+        var result = client.checkUpdates(new SuplaUpdatesClient.Request(4, 6000, "ZAMEL THW-01", "23.12.02"))
+                .join();
+
+        assertThat(result.status()).isEqualTo(SuplaUpdatesClient.Status.UPDATE_NOT_AVAILABLE);
+    }
+
+    @Test
+    void shouldAbortHttpRequestWhenCheckIsCancelled() {
+        var httpFuture = new CompletableFuture<HttpResponse<Object>>();
+        when(httpClient.sendAsync(any(HttpRequest.class), any())).thenReturn(httpFuture);
+
+        var check = client.checkUpdates(new SuplaUpdatesClient.Request(4, 6000, "ZAMEL THW-01", "23.12.02"));
+        check.cancel(true);
+
+        assertThat(httpFuture).isCancelled();
+        assertThat(check).isCancelled();
     }
 
-    private List<HttpRequest> sentRequests() throws IOException, InterruptedException {
+    @Test
+    void shouldAbortHttpRequestWhenResponseIsNotReceivedInTime() {
+        client = new SuplaUpdatesClient(
+                httpClient,
+                URI.create("https://updates.supla.org/check-updates"),
+                URI.create("https://updates.supla.org/list-updates"),
+                Duration.ofMillis(50));
+        var httpFuture = new CompletableFuture<HttpResponse<Object>>();
+        when(httpClient.sendAsync(any(HttpRequest.class), any())).thenReturn(httpFuture);
+
+        var check = client.checkUpdates(new SuplaUpdatesClient.Request(4, 6000, "ZAMEL THW-01", "23.12.02"));
+
+        assertThatThrownBy(() -> check.get(5, SECONDS)).isInstanceOf(ExecutionException.class);
+        assertThat(httpFuture).isCancelled();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void givenResponses(HttpResponse<?> first, HttpResponse<?>... rest) {
+        OngoingStubbing stubbing = when(httpClient.sendAsync(any(HttpRequest.class), any()));
+        stubbing = stubbing.thenReturn(completedFuture(first));
+        for (var response : rest) {
+            stubbing = stubbing.thenReturn(completedFuture(response));
+        }
+    }
+
+    private List<HttpRequest> sentRequests() {
         var requests = ArgumentCaptor.forClass(HttpRequest.class);
-        verify(httpClient, times(2)).send(requests.capture(), anyStringBodyHandler());
+        verify(httpClient, times(2)).sendAsync(requests.capture(), anyStringBodyHandler());
         return requests.getAllValues();
     }
 
@@ -238,6 +323,13 @@ class SuplaUpdatesClientTest {
     }
 
     @SuppressWarnings("unchecked")
+    private static HttpResponse<byte[]> listResponse(int statusCode, String body) {
+        var response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(statusCode);
+        when(response.body()).thenReturn(body.getBytes(UTF_8));
+        return response;
+    }
+
     private static HttpResponse<String> response(int statusCode, String body) {
         var response = mock(HttpResponse.class);
         when(response.statusCode()).thenReturn(statusCode);